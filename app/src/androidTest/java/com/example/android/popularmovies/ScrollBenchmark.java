@@ -0,0 +1,139 @@
+package com.example.android.popularmovies;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.example.android.popularmovies.utils.GridStats;
+import com.example.android.popularmovies.utils.LatencyHistogram;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls the movie grid down and back up several times, and fails when the bind times or
+ * the share of slow frames recorded by the {@link GridStats} go over their budgets.
+ * <p>
+ * The grid is scrolled smoothly by the same distance on every run, so that two builds are
+ * compared on the same work. The first launch may load the list from the server,
+ * the scroll only starts once the first poster is shown. The results are logged and sent as
+ * instrumentation status, e.g. with
+ * {@code adb shell am instrument -r -w -e class com.example.android.popularmovies.ScrollBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScrollBenchmark {
+
+    private static final String LOG_TAG = ScrollBenchmark.class.getSimpleName();
+
+    private static final int PASSES = 3;
+
+    /**
+     * Scrolled in each direction, a few screens of the first page
+     */
+    private static final int SCROLL_DP = 2000;
+
+    private static final long IDLE_POLL_MILLIS = 50;
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * 95% of the binds must fit in this, a bind is a fraction of the 16 ms of a frame
+     */
+    private static final long BIND_P95_BUDGET_MICROS = 2000;
+
+    /**
+     * Inflating a row is allowed more, the recycled rows are only bound
+     */
+    private static final long CREATE_P95_BUDGET_MICROS = 8000;
+
+    /**
+     * Share of the frames drawn while scrolling that can miss their vsync
+     */
+    private static final double SLOW_FRAME_BUDGET = 0.05;
+
+    @Test
+    public void scrollWithinBudgets() throws InterruptedException {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Intent intent = new Intent(instrumentation.getTargetContext(), MovieListActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        StartupTiming.reset();
+        Activity activity = instrumentation.startActivitySync(intent);
+        try {
+            assertTrue("No poster shown, is the device online?",
+                    StartupTiming.awaitFirstPoster(TIMEOUT_SECONDS, TimeUnit.SECONDS) >= 0);
+            RecyclerView recyclerView = activity.findViewById(R.id.movie_list);
+            int distance = (int) (SCROLL_DP * activity.getResources().getDisplayMetrics().density);
+
+            // Only the scroll is measured, not the first screen
+            instrumentation.waitForIdleSync();
+            GridStats.getInstance().clear();
+            for (int i = 0; i < PASSES; i++) {
+                scroll(instrumentation, recyclerView, distance);
+                scroll(instrumentation, recyclerView, -distance);
+            }
+        } finally {
+            activity.finish();
+            instrumentation.waitForIdleSync();
+        }
+
+        GridStats stats = GridStats.getInstance();
+        LatencyHistogram binds = stats.getBindHistogram();
+        LatencyHistogram creates = stats.getCreateHistogram();
+        long frames = stats.getFrameCount();
+        double slowShare = frames == 0 ? 0 : (double) stats.getSlowFrameCount() / frames;
+        Log.i(LOG_TAG, stats.getReport());
+
+        Bundle results = new Bundle();
+        results.putLong("bind_p95_us", binds.getPercentile(0.95));
+        results.putLong("create_p95_us", creates.getPercentile(0.95));
+        results.putLong("frames", frames);
+        results.putLong("slow_frames", stats.getSlowFrameCount());
+        results.putLong("dropped_frames", stats.getDroppedFrameCount());
+        instrumentation.sendStatus(Activity.RESULT_OK, results);
+
+        assertTrue("No row bound while scrolling", binds.getCount() > 0);
+        assertTrue("No frame recorded while scrolling", frames > 0);
+        assertTrue("Bind p95 " + binds.getPercentile(0.95) + " us over " + BIND_P95_BUDGET_MICROS,
+                binds.getPercentile(0.95) <= BIND_P95_BUDGET_MICROS);
+        assertTrue("Create p95 " + creates.getPercentile(0.95) + " us over " + CREATE_P95_BUDGET_MICROS,
+                creates.getPercentile(0.95) <= CREATE_P95_BUDGET_MICROS);
+        assertTrue(String.format(Locale.US, "%.1f%% of the frames slow, over %.1f%%",
+                        100 * slowShare, 100 * SLOW_FRAME_BUDGET),
+                slowShare <= SLOW_FRAME_BUDGET);
+    }
+
+    /**
+     * Scrolls the grid smoothly by the given distance, as a fling would, then waits for it
+     * to settle.
+     */
+    private static void scroll(Instrumentation instrumentation, final RecyclerView recyclerView,
+                               final int dy) {
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recyclerView.smoothScrollBy(0, dy);
+            }
+        });
+        final boolean[] idle = new boolean[1];
+        while (!idle[0]) {
+            SystemClock.sleep(IDLE_POLL_MILLIS);
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    idle[0] = recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.android.popularmovies;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ComponentCallbacks2;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the time from the launch of {@link MovieListActivity} to the first poster shown,
+ * as recorded by {@link StartupTiming}, over several launches in the same process.
+ * <p>
+ * The first launch is a warm-up that stores the list and writes its snapshot. The decoded
+ * posters are evicted before every launch, so each one decodes its posters from the disk
+ * cache as after a cold start. The process itself is warm: the cold start, including the
+ * process fork, is measured with {@code adb shell am start -S -W}, see the README.
+ * <p>
+ * The percentiles are logged and sent as instrumentation status, e.g. with
+ * {@code adb shell am instrument -r -w -e class com.example.android.popularmovies.StartupBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String LOG_TAG = StartupBenchmark.class.getSimpleName();
+
+    private static final int LAUNCHES = 15;
+
+    /**
+     * The warm-up launch may wait for the server, the next ones shouldn't
+     */
+    private static final long WARMUP_TIMEOUT_SECONDS = 30;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void timeToFirstPoster() throws InterruptedException {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+
+        long warmup = launch(instrumentation, WARMUP_TIMEOUT_SECONDS);
+        assertTrue("No poster shown on the warm-up launch, is the device online?", warmup >= 0);
+
+        long[] millis = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            millis[i] = launch(instrumentation, TIMEOUT_SECONDS);
+            assertTrue("No poster shown on launch " + i, millis[i] >= 0);
+        }
+        Arrays.sort(millis);
+
+        long median = millis[LAUNCHES / 2];
+        long p90 = millis[(int) Math.ceil(0.9 * LAUNCHES) - 1];
+        long max = millis[LAUNCHES - 1];
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Time to first poster over %d launches: min=%dms median=%dms p90=%dms max=%dms",
+                LAUNCHES, millis[0], median, p90, max));
+
+        Bundle results = new Bundle();
+        results.putLong("time_to_first_poster_median_ms", median);
+        results.putLong("time_to_first_poster_p90_ms", p90);
+        results.putLong("time_to_first_poster_max_ms", max);
+        instrumentation.sendStatus(Activity.RESULT_OK, results);
+    }
+
+    /**
+     * Launches the movie list and returns the time to its first poster in milliseconds,
+     * or -1 if none was shown in time.
+     */
+    private static long launch(Instrumentation instrumentation, long timeoutSeconds)
+            throws InterruptedException {
+        // Decode the posters again instead of showing the ones kept by the last launch
+        ((ApplicationClass) instrumentation.getTargetContext().getApplicationContext())
+                .onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        Intent intent = new Intent(instrumentation.getTargetContext(), MovieListActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        StartupTiming.reset();
+        Activity activity = instrumentation.startActivitySync(intent);
+        long millis = StartupTiming.awaitFirstPoster(timeoutSeconds, TimeUnit.SECONDS);
+
+        activity.finish();
+        instrumentation.waitForIdleSync();
+        return millis;
+    }
+}
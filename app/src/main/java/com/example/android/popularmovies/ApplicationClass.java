@@ -1,10 +1,28 @@
 package com.example.android.popularmovies;
 
 import android.app.Application;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.app.AppCompatDelegate;
 
+import com.example.android.popularmovies.sync.MovieSyncJobService;
+import com.example.android.popularmovies.utils.MovieResponseCache;
+import com.example.android.popularmovies.utils.PosterCache;
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
+
 public class ApplicationClass extends Application {
 
+    /**
+     * Maximum size of the on-disk cache of TMDB responses, in bytes
+     */
+    private static final long RESPONSE_CACHE_SIZE = 2 * 1024 * 1024;
+
+    /**
+     * Memory cache of the decoded posters, trimmed when the system runs low on memory
+     */
+    private PosterCache mPosterCache;
+
     // This flag should be set to true to enable VectorDrawable support for API < 21
     static {
         AppCompatDelegate.setCompatVectorFromResourcesEnabled(true);
@@ -12,6 +30,33 @@ public class ApplicationClass extends Application {
 
     @Override
     public void onCreate() {
+        StartupTiming.onProcessStart();
+        TraceCompat.beginSection("ApplicationClass.onCreate");
         super.onCreate();
+
+        // Cache TMDB responses so that reloads can be served from disk or revalidated cheaply
+        MovieResponseCache.install(new File(getCacheDir(), "movie-responses"), RESPONSE_CACHE_SIZE);
+
+        // Every Picasso.with() returns this instance, with a memory cache sized for the device
+        mPosterCache = PosterCache.create(this);
+        Picasso.setSingletonInstance(new Picasso.Builder(this)
+                .memoryCache(mPosterCache)
+                .build());
+
+        // Refresh the lists and the first posters in the background while the device charges
+        MovieSyncJobService.schedule(this);
+        TraceCompat.endSection();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mPosterCache.trimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mPosterCache.clear();
     }
 }
@@ -3,37 +3,111 @@ package com.example.android.popularmovies;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.content.res.ResourcesCompat;
+import android.support.v7.recyclerview.extensions.AsyncListDiffer;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import com.example.android.popularmovies.data.MovieLists;
+import com.example.android.popularmovies.data.MovieSnapshot;
+import com.example.android.popularmovies.data.PosterColors;
 import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.DominantColor;
+import com.example.android.popularmovies.utils.GridStats;
+import com.example.android.popularmovies.utils.PosterBinder;
+import com.example.android.popularmovies.utils.PosterUrlResolver;
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.NetworkPolicy;
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
 
-import org.parceler.Parcels;
-
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A {@link MovieAdapter} knows how to create a list item layout for each movie
  * in the data source (a list of {@link Movie} objects).
  * These list item layouts will be provided to an adapter view like RecyclerView
  * to be displayed to the user.
+ * <p>
+ * Every new list is compared with the one shown on a background thread, and only the
+ * movies inserted, moved or changed are notified, so unchanged rows keep their views.
+ * <p>
+ * A cell shows the dominant color of its poster, when it was seen before, until the poster
+ * is in. On slow connections a poster that isn't cached is loaded in the smallest size
+ * first, then in the size of the cell, so the cell fills in long before the poster is
+ * downloaded. On other connections the poster is requested once, without extra bytes.
  */
 
 public class MovieAdapter
         extends RecyclerView.Adapter<MovieAdapter.ViewHolder> {
 
+    /**
+     * Two movies are the same item if they have the same TMDB id,
+     * their row is bound again only if what it shows changed.
+     */
+    private static final DiffUtil.ItemCallback<Movie> MOVIE_DIFF = new DiffUtil.ItemCallback<Movie>() {
+        @Override
+        public boolean areItemsTheSame(Movie oldMovie, Movie newMovie) {
+            return oldMovie.getId() == newMovie.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(Movie oldMovie, Movie newMovie) {
+            return oldMovie.hasSameContent(newMovie);
+        }
+    };
+
+    /**
+     * Posters have no transparency, so the grid decodes them with 2 bytes per pixel instead
+     * of 4. The prefetched posters are decoded the same way, Picasso's memory cache doesn't
+     * tell configs apart.
+     */
+    static final Bitmap.Config POSTER_CONFIG = Bitmap.Config.RGB_565;
+
+    /**
+     * Steps of the poster of a row: from the caches only, then the preview, then the poster
+     */
+    private static final int POSTER_CACHED = 0;
+    private static final int POSTER_PREVIEW = 1;
+    private static final int POSTER_FULL = 2;
+
     private final MovieListActivity mParentActivity;
-    private List<Movie> mMovies;
+    private final AsyncListDiffer<Movie> mDiffer;
+
+    /**
+     * Last list handed to the differ, which can still be computing its differences
+     * with the list shown, so that pages are always appended to the latest list
+     */
+    private List<Movie> mSubmittedMovies = new ArrayList<>();
     private Context mContext;
     private final boolean mTwoPane;
+    private PosterPrefetcher mPosterPrefetcher;
+    private final PosterUrlResolver mPosterUrlResolver;
+    private final PosterBinder mPosterBinder;
+    private RecyclerView mRecyclerView;
+
+    private final MovieLists mMovieLists;
+    private final PosterColors mPosterColors;
+
+    /**
+     * Finds the color of the posters shown for the first time, on the main thread only
+     */
+    private final DominantColor mDominantColor = new DominantColor();
+
     //private Movie mMovie;
     //private CollapsingToolbarLayout appBarLayout;
     //public static final String MOVIE_KEY = "movie_label";
@@ -41,80 +115,305 @@ public class MovieAdapter
 
     // Adapter constructor
     MovieAdapter(MovieListActivity parent,
-                 List<Movie> movies,
                  boolean twoPane, @NonNull Activity context) {
         mParentActivity = parent;
-        mMovies = movies;
+        mDiffer = new AsyncListDiffer<>(this, MOVIE_DIFF);
         mTwoPane = twoPane;
         mContext = context;
+        mPosterUrlResolver = PosterUrlResolver.getInstance(context);
+        mPosterBinder = mPosterUrlResolver.getPosterBinder();
+        mMovieLists = MovieLists.getInstance(context);
+        mPosterColors = mMovieLists.getPosterColors();
         //this.mMovie = movie;
-        //setHasStableIds(true);
+        setHasStableIds(true);
+    }
+
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        mRecyclerView = recyclerView;
     }
 
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        mRecyclerView = null;
+    }
 
     @Override
     @NonNull
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        long start = System.nanoTime();
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.movie_list_item, parent, false);
-
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+        GridStats.getInstance().recordCreate(System.nanoTime() - start);
+        return holder;
     }
 
 
     @Override
     public void onBindViewHolder(@NonNull final ViewHolder holder, int position) {
-
-        // Get position
-        Movie movie = mMovies.get(position);
-
         /****************
          * Poster Image *
          ****************/
-        String imageBaseUrl = "https://image.tmdb.org/t/p/w185";
-        String imageFinalUrl = movie.getImage();
-        String finalImageUrl = imageBaseUrl + imageFinalUrl;
+        // A row bound again for another change, e.g. of its vote, already has its poster
+        mPosterBinder.bind(holder, getMovie(position).getImage(),
+                mPosterUrlResolver.getPosterSize(getPosterWidth()));
+    }
+
+    /**
+     * Requests the poster of the row. Nothing is allocated by the adapter itself, the only
+     * allocations left are Picasso's requests.
+     */
+    private void bindPoster(ViewHolder holder, String posterPath, String posterUrl) {
+        holder.mPosterPath = posterPath;
+        holder.mPosterUrl = posterUrl;
+        if (mPosterPrefetcher != null) {
+            mPosterPrefetcher.onPosterBound(posterUrl);
+        }
 
-        // Initialize placeholder drawable once
-        Drawable mPlaceholderDrawable = ResourcesCompat.getDrawable(
-                mContext.getResources(),
-                R.drawable.ic_placeholder_black, null);
+        int color = mPosterColors.get(posterPath);
+        if (color != PosterColors.NO_COLOR) {
+            holder.mColorPlaceholder.setColor(color);
+            holder.mPosterPlaceholder = holder.mColorPlaceholder;
+        } else {
+            holder.mPosterPlaceholder = holder.mPlaceholder;
+        }
 
-        Picasso.with(mContext)
-                .load(finalImageUrl)
-                .placeholder(mPlaceholderDrawable)
-                .error(R.drawable.ic_error_black)
-                .into(holder.mImageMovie);
+        if (mPosterUrlResolver.isSlowConnection()
+                && !posterUrl.equals(mPosterUrlResolver.getPreviewUrl(posterPath))) {
+            // A poster downloaded before doesn't need a preview, look for it without the network
+            holder.mPosterStep = POSTER_CACHED;
+            requestPoster(posterUrl, holder.mPosterPlaceholder)
+                    .networkPolicy(NetworkPolicy.OFFLINE)
+                    .into(holder.mImageMovie, holder);
+        } else {
+            holder.mPosterStep = POSTER_FULL;
+            requestPoster(posterUrl, holder.mPosterPlaceholder)
+                    .error(R.drawable.ic_error_black)
+                    .into(holder.mImageMovie, holder);
+        }
+    }
+
+    private RequestCreator requestPoster(String url, Drawable placeholder) {
+        return Picasso.with(mContext)
+                .load(url)
+                .config(POSTER_CONFIG)
+                .placeholder(placeholder);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        super.onViewRecycled(holder);
+        // Don't decode a poster for a row that went off screen, and let the cache
+        // evict the bitmap the row was holding
+        Picasso.with(mContext).cancelRequest(holder.mImageMovie);
+        holder.mImageMovie.setImageDrawable(null);
+        holder.mPosterUrl = null;
+        holder.mPosterPath = null;
     }
 
     @Override
     public int getItemCount() {
-        if (null == mMovies) return 0;
-        return mMovies.size();
+        return mDiffer.getCurrentList().size();
+    }
+
+    /**
+     * Returns the URL of the poster shown at the given position, in the smallest size
+     * that covers a grid cell.
+     */
+    String getPosterUrl(int position) {
+        return mPosterUrlResolver.getPosterUrl(getMovie(position).getImage(), getPosterWidth());
+    }
+
+    /**
+     * Returns the pixel width of a grid cell, or 0 if the grid hasn't been laid out yet.
+     */
+    private int getPosterWidth() {
+        if (mRecyclerView == null || mRecyclerView.getWidth() == 0) {
+            return 0;
+        }
+        RecyclerView.LayoutManager layoutManager = mRecyclerView.getLayoutManager();
+        int spanCount = layoutManager instanceof GridLayoutManager
+                ? ((GridLayoutManager) layoutManager).getSpanCount() : 1;
+        int width = mRecyclerView.getWidth()
+                - mRecyclerView.getPaddingLeft() - mRecyclerView.getPaddingRight();
+        return width / spanCount;
+    }
+
+    /**
+     * Sets the prefetcher that is told about every bound poster, to measure its hit rate.
+     */
+    void setPosterPrefetcher(PosterPrefetcher posterPrefetcher) {
+        mPosterPrefetcher = posterPrefetcher;
+    }
+
+    /**
+     * Returns the movie shown at the given position.
+     */
+    Movie getMovie(int position) {
+        return mDiffer.getCurrentList().get(position);
+    }
+
+    /**
+     * Returns the last list of movies handed to the adapter, which may not be shown yet.
+     */
+    List<Movie> getSubmittedMovies() {
+        return mSubmittedMovies;
+    }
+
+    /**
+     * Replaces the movies shown by the adapter. The differences with the movies
+     * shown now are computed in the background, then notified on the main thread.
+     */
+    void replaceMovies(List<Movie> movies) {
+        List<Movie> newMovies;
+        if (movies instanceof MovieSnapshot) {
+            // Its ids are unique already. Shown as it is, its movies are decoded as their
+            // rows are bound instead of all at once on the main thread at launch.
+            newMovies = movies;
+        } else {
+            newMovies = new ArrayList<>();
+            if (movies != null) {
+                addNewMovies(newMovies, new HashSet<Integer>(), movies);
+            }
+        }
+        mSubmittedMovies = newMovies;
+        mDiffer.submitList(newMovies);
+    }
+
+    /**
+     * Adds the movies of a new page at the end of the list. Only the new rows are bound.
+     */
+    void appendMovies(List<Movie> movies) {
+        List<Movie> newMovies = new ArrayList<>(mSubmittedMovies.size() + movies.size());
+        Set<Integer> ids = new HashSet<>();
+        addNewMovies(newMovies, ids, mSubmittedMovies);
+        addNewMovies(newMovies, ids, movies);
+        mSubmittedMovies = newMovies;
+        mDiffer.submitList(newMovies);
+    }
+
+    /**
+     * Adds the movies whose id isn't in the given set yet. A movie can come again in the next
+     * page when the ranking changes between two requests, and stable ids must be unique.
+     */
+    private static void addNewMovies(List<Movie> newMovies, Set<Integer> ids, List<Movie> movies) {
+        for (int i = 0; i < movies.size(); i++) {
+            Movie movie = movies.get(i);
+            if (ids.add(movie.getId())) {
+                newMovies.add(movie);
+            }
+        }
     }
 
     @Override
     public long getItemId(int position) {
-        return position;
+        return getMovie(position).getId();
     }
 
 
-    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    class ViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, Callback, PosterBinder.Row {
 
         ImageView mImageMovie;
 
+        /**
+         * Resolved once per row instead of once per bind, only this row draws it
+         */
+        final Drawable mPlaceholder;
+
+        /**
+         * Filled with the dominant color of the poster, when it is known
+         */
+        final ColorDrawable mColorPlaceholder = new ColorDrawable();
+
+        /**
+         * The placeholder shown for the poster requested, one of the two above
+         */
+        Drawable mPosterPlaceholder;
+
+        /**
+         * Path and URL of the poster requested for the row, null once the row is recycled
+         */
+        String mPosterPath;
+        String mPosterUrl;
+
+        /**
+         * Step of the poster request, see {@link MovieAdapter#POSTER_CACHED}
+         */
+        int mPosterStep;
+
         ViewHolder(View view) {
             super(view);
             mImageMovie = view.findViewById(R.id.movie_image);
+            mPlaceholder = ResourcesCompat.getDrawable(view.getResources(),
+                    R.drawable.ic_placeholder_black, null);
             view.setOnClickListener(this);
         }
 
+        @Override
+        public String getPosterUrl() {
+            return mPosterUrl;
+        }
+
+        @Override
+        public void loadPoster(String posterPath, String posterUrl) {
+            bindPoster(this, posterPath, posterUrl);
+        }
+
+        @Override
+        public void onSuccess() {
+            if (!StartupTiming.isFirstPosterShown()) {
+                StartupTiming.onFirstPoster(mParentActivity);
+            }
+
+            Drawable shown = mImageMovie.getDrawable();
+            if (shown instanceof BitmapDrawable
+                    && mPosterColors.get(mPosterPath) == PosterColors.NO_COLOR) {
+                // Only once per poster, the preview has the same colors
+                mMovieLists.putPosterColor(mPosterPath,
+                        mDominantColor.of(((BitmapDrawable) shown).getBitmap()));
+            }
+
+            if (mPosterStep == POSTER_PREVIEW) {
+                // The preview stays shown while the poster loads, and if it fails
+                mPosterStep = POSTER_FULL;
+                requestPoster(mPosterUrl, shown)
+                        .error(shown)
+                        .into(mImageMovie, this);
+            }
+        }
+
+        @Override
+        public void onError() {
+            if (mPosterStep == POSTER_CACHED) {
+                mPosterStep = POSTER_PREVIEW;
+                requestPoster(mPosterUrlResolver.getPreviewUrl(mPosterPath), mPosterPlaceholder)
+                        .into(mImageMovie, this);
+            } else if (mPosterStep == POSTER_PREVIEW) {
+                mPosterStep = POSTER_FULL;
+                requestPoster(mPosterUrl, mPosterPlaceholder)
+                        .error(R.drawable.ic_error_black)
+                        .into(mImageMovie, this);
+            }
+        }
+
         @Override
         public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                // The row is being removed
+                return;
+            }
 
+            // Only the id is passed, the detail screen finds the movie in the MovieRepository
+            int movieId = getMovie(position).getId();
             if (mTwoPane) {
                 Bundle args = new Bundle();
                 MovieDetailFragment fragment = new MovieDetailFragment();
-                args.putParcelable(MovieDetailFragment.MOVIE_OBJ, Parcels.wrap(mMovies.get(getAdapterPosition())));
+                args.putInt(MovieDetailFragment.ARG_ITEM_ID, movieId);
                 fragment.setArguments(args);
                 mParentActivity.getSupportFragmentManager().beginTransaction()
                         .replace(R.id.movie_detail_container, fragment)
@@ -122,7 +421,7 @@ public class MovieAdapter
             } else {
                 Context context = view.getContext();
                 Intent intent = new Intent(context, MovieDetailActivity.class);
-                intent.putExtra(MovieDetailFragment.MOVIE_OBJ, Parcels.wrap(mMovies.get(getAdapterPosition())));
+                intent.putExtra(MovieDetailFragment.ARG_ITEM_ID, movieId);
                 context.startActivity(intent);
             }
         }
@@ -2,29 +2,32 @@ package com.example.android.popularmovies;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.Intent;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.design.widget.CollapsingToolbarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.content.res.ResourcesCompat;
+import android.text.TextUtils;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import com.example.android.popularmovies.data.MovieRepository;
 import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.model.MovieDetails;
+import com.example.android.popularmovies.utils.MovieDetailsFetcher;
+import com.example.android.popularmovies.utils.PosterUrlResolver;
+import com.example.android.popularmovies.utils.ReleaseDates;
 import com.squareup.picasso.Picasso;
 
-import org.parceler.Parcels;
-
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-
 /**
  * A fragment representing a single Movie detail screen.
  * This fragment is either contained in a {@link MovieListActivity}
@@ -32,20 +35,37 @@ import java.util.Locale;
  * on handsets.
  */
 public class MovieDetailFragment extends Fragment {
+    private static final String LOG_TAG = MovieDetailFragment.class.getSimpleName();
+
     /**
-     * The fragment argument representing the item ID that this fragment
-     * represents.
+     * The fragment argument representing the TMDB id of the movie that this fragment
+     * represents. The movie itself is found in the {@link MovieRepository}.
      */
     public static final String ARG_ITEM_ID = "MovieDetailFragment";
 
-    public static final String MOVIE_OBJ = "MovieObj";
-    public static final String MOVIES_LIST = "MoviesList";
-
     private Movie movie;
     Context mContext = getContext();
 
     private CollapsingToolbarLayout appBarLayout;
 
+    /**
+     * Reads the movie from the store when it isn't in memory, e.g. after the process was killed
+     */
+    private LoadMovieTask mLoadMovieTask;
+
+    /**
+     * Runtime, genres, credits, trailers and reviews, shown below the movie once loaded
+     */
+    private MovieDetails mDetails;
+
+    private LoadDetailsTask mLoadDetailsTask;
+
+    /**
+     * Shown while the poster loads, resolved once per view instead of on every bind
+     */
+    private Drawable mPlaceholderDrawable;
+
+    private static final String YOUTUBE_WATCH_URL = "https://www.youtube.com/watch?v=";
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -63,10 +83,21 @@ public class MovieDetailFragment extends Fragment {
         Activity activity = this.getActivity();
         if (activity != null) {
             appBarLayout = activity.findViewById(R.id.toolbar_layout);
-            movie = Parcels.unwrap(activity.getIntent().getParcelableExtra(MovieDetailFragment.MOVIE_OBJ));
-            if (appBarLayout != null) {
-                appBarLayout.setTitle(movie.getTitle());
-            }
+        }
+
+        int movieId = getArguments().getInt(ARG_ITEM_ID);
+        MovieRepository movieRepository = MovieRepository.getInstance(getContext());
+        movie = movieRepository.getMovie(movieId);
+        if (movie == null) {
+            mLoadMovieTask = new LoadMovieTask(movieRepository, movieId);
+            mLoadMovieTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+
+        // The details have a request of their own, the movie is shown without waiting for it
+        mDetails = MovieDetailsFetcher.getInstance().getCachedDetails(movieId);
+        if (mDetails == null) {
+            mLoadDetailsTask = new LoadDetailsTask(movieId);
+            mLoadDetailsTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         }
     }
 
@@ -74,6 +105,38 @@ public class MovieDetailFragment extends Fragment {
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         View rootView = inflater.inflate(R.layout.fragment_movie_detail, container, false);
+        mPlaceholderDrawable = ResourcesCompat.getDrawable(getResources(), R.drawable.ic_placeholder_black, null);
+        if (movie != null) {
+            bindMovie(rootView);
+        }
+        if (mDetails != null) {
+            bindDetails(rootView);
+        } else if (mLoadDetailsTask != null) {
+            rootView.findViewById(R.id.details_loading_indicator).setVisibility(View.VISIBLE);
+        }
+        return rootView;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mLoadMovieTask != null) {
+            mLoadMovieTask.cancel(true);
+            mLoadMovieTask = null;
+        }
+        if (mLoadDetailsTask != null) {
+            mLoadDetailsTask.cancel(true);
+            mLoadDetailsTask = null;
+        }
+    }
+
+    /**
+     * Shows the movie in the views of the fragment.
+     */
+    private void bindMovie(View rootView) {
+        if (appBarLayout != null) {
+            appBarLayout.setTitle(movie.getTitle());
+        }
 
         // Display title in details
         ((TextView) rootView.findViewById(R.id.movie_title)).setText(movie.getTitle());
@@ -81,15 +144,8 @@ public class MovieDetailFragment extends Fragment {
         // Display average vote in details
         ((TextView) rootView.findViewById(R.id.vote_average)).setText(String.valueOf(movie.getVote()));
 
-        // Display released date in details
-        try {
-            Date releaseDate = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).parse(movie.getDate());
-            DateFormat formatter = DateFormat.getDateInstance(DateFormat.LONG, Locale.getDefault());
-            String formattedDate = formatter.format(releaseDate);
-            ((TextView) rootView.findViewById(R.id.release_date)).setText(formattedDate);
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
+        // Display released date in details, the date was already parsed with the movie
+        ((TextView) rootView.findViewById(R.id.release_date)).setText(ReleaseDates.format(movie.getReleaseDay()));
 
         // Display poster image in details
         ImageView posterImage;
@@ -98,12 +154,10 @@ public class MovieDetailFragment extends Fragment {
         /****************
          * Poster Image *
          ****************/
-        String imageBaseUrl = "https://image.tmdb.org/t/p/w300";
-        String imageFinalUrl = movie.getImage();
-        String finalImageUrl = imageBaseUrl + imageFinalUrl;
-
-        // Initialize placeholder drawable once
-        Drawable mPlaceholderDrawable = ResourcesCompat.getDrawable(getResources(),R.drawable.ic_placeholder_black, null);
+        // Pick the smallest poster size that covers the poster view
+        int posterWidth = getResources().getDimensionPixelSize(R.dimen.detail_poster_width);
+        String finalImageUrl = PosterUrlResolver.getInstance(rootView.getContext())
+                .getPosterUrl(movie.getImage(), posterWidth);
 
         Picasso.with(mContext)
                 .load(finalImageUrl)
@@ -113,7 +167,162 @@ public class MovieDetailFragment extends Fragment {
 
         // Display plot in details
         ((TextView) rootView.findViewById(R.id.overview)).setText(movie.getPlot());
+    }
 
-        return rootView;
+    /**
+     * Shows the sections of the details that the movie has, the others stay hidden.
+     */
+    private void bindDetails(View rootView) {
+        rootView.findViewById(R.id.details_loading_indicator).setVisibility(View.GONE);
+
+        if (mDetails.getRuntime() > 0) {
+            showSection(rootView, R.id.runtime_label, R.id.runtime,
+                    getString(R.string.runtime_minutes, mDetails.getRuntime()));
+        }
+
+        if (!mDetails.getGenres().isEmpty()) {
+            showSection(rootView, R.id.genres_label, R.id.genres,
+                    TextUtils.join(", ", mDetails.getGenres()));
+        }
+
+        // Directors first, then one actor per line
+        StringBuilder credits = new StringBuilder();
+        if (!mDetails.getDirectors().isEmpty()) {
+            credits.append(getString(R.string.directed_by, TextUtils.join(", ", mDetails.getDirectors())));
+        }
+        for (MovieDetails.CastMember castMember : mDetails.getCast()) {
+            if (credits.length() > 0) {
+                credits.append('\n');
+            }
+            if (TextUtils.isEmpty(castMember.getCharacter())) {
+                credits.append(castMember.getName());
+            } else {
+                credits.append(getString(R.string.cast_member, castMember.getName(), castMember.getCharacter()));
+            }
+        }
+        if (credits.length() > 0) {
+            showSection(rootView, R.id.credits_label, R.id.credits, credits);
+        }
+
+        LayoutInflater inflater = LayoutInflater.from(rootView.getContext());
+
+        LinearLayout videos = rootView.findViewById(R.id.videos);
+        videos.removeAllViews();
+        for (MovieDetails.Video video : mDetails.getVideos()) {
+            addLink(inflater, videos, video.getName(), YOUTUBE_WATCH_URL + video.getKey());
+        }
+        if (videos.getChildCount() > 0) {
+            showSection(rootView, R.id.videos_label, R.id.videos, null);
+        }
+
+        LinearLayout reviews = rootView.findViewById(R.id.reviews);
+        reviews.removeAllViews();
+        for (MovieDetails.Review review : mDetails.getReviews()) {
+            addLink(inflater, reviews,
+                    getString(R.string.review_item, review.getAuthor(), review.getContent()), review.getUrl());
+        }
+        if (reviews.getChildCount() > 0) {
+            showSection(rootView, R.id.reviews_label, R.id.reviews, null);
+        }
+    }
+
+    /**
+     * Makes a section of the details visible, with the given text if it is a text section.
+     */
+    private static void showSection(View rootView, int labelId, int valueId, CharSequence text) {
+        View value = rootView.findViewById(valueId);
+        if (text != null) {
+            ((TextView) value).setText(text);
+        }
+        rootView.findViewById(labelId).setVisibility(View.VISIBLE);
+        value.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Adds a line that opens the given URL in another app, e.g. the YouTube app for a trailer.
+     */
+    private static void addLink(LayoutInflater inflater, LinearLayout container, CharSequence text,
+                                final String url) {
+        TextView link = (TextView) inflater.inflate(R.layout.detail_link_item, container, false);
+        link.setText(text);
+        if (url != null) {
+            link.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+                    if (intent.resolveActivity(view.getContext().getPackageManager()) != null) {
+                        view.getContext().startActivity(intent);
+                    }
+                }
+            });
+        }
+        container.addView(link);
+    }
+
+    /**
+     * Resolves the movie id on a background thread, the store may have to be read.
+     */
+    private class LoadMovieTask extends AsyncTask<Void, Void, Movie> {
+
+        private final MovieRepository mMovieRepository;
+        private final int mMovieId;
+
+        LoadMovieTask(MovieRepository movieRepository, int movieId) {
+            mMovieRepository = movieRepository;
+            mMovieId = movieId;
+        }
+
+        @Override
+        protected Movie doInBackground(Void... voids) {
+            return mMovieRepository.loadMovie(mMovieId);
+        }
+
+        @Override
+        protected void onPostExecute(Movie loadedMovie) {
+            mLoadMovieTask = null;
+            if (loadedMovie == null) {
+                Log.w(LOG_TAG, "Movie " + mMovieId + " isn't stored");
+                return;
+            }
+            movie = loadedMovie;
+            View rootView = getView();
+            if (rootView != null) {
+                bindMovie(rootView);
+            }
+        }
+    }
+
+    /**
+     * Loads the details on a background thread, from the network unless they were loaded recently.
+     */
+    private class LoadDetailsTask extends AsyncTask<Void, Void, MovieDetails> {
+
+        private final int mMovieId;
+
+        LoadDetailsTask(int movieId) {
+            mMovieId = movieId;
+        }
+
+        @Override
+        protected MovieDetails doInBackground(Void... voids) {
+            return MovieDetailsFetcher.getInstance().fetchDetails(mMovieId);
+        }
+
+        @Override
+        protected void onPostExecute(MovieDetails details) {
+            mLoadDetailsTask = null;
+            View rootView = getView();
+            if (details == null) {
+                Log.w(LOG_TAG, "No details for movie " + mMovieId);
+                if (rootView != null) {
+                    rootView.findViewById(R.id.details_loading_indicator).setVisibility(View.GONE);
+                }
+                return;
+            }
+            mDetails = details;
+            if (rootView != null) {
+                bindDetails(rootView);
+            }
+        }
     }
 }
\ No newline at end of file
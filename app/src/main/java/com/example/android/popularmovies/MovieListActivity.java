@@ -7,25 +7,27 @@ import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
 
+import com.example.android.popularmovies.data.MovieLists;
+import com.example.android.popularmovies.data.MovieSearchIndex;
 import com.example.android.popularmovies.model.Movie;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.example.android.popularmovies.utils.QueryUtils.API_KEY_VARIABLE;
-import static com.example.android.popularmovies.utils.QueryUtils.MOVIE_BASE_URL;
 import static com.example.android.popularmovies.utils.QueryUtils.MOVIE_POPULAR_ENDPOINT;
 import static com.example.android.popularmovies.utils.QueryUtils.MOVIE_TOP_RATED_ENDPOINT;
 
@@ -37,7 +39,8 @@ import static com.example.android.popularmovies.utils.QueryUtils.MOVIE_TOP_RATED
  * item details. On tablets, the activity presents the list of items and
  * item details side-by-side using two vertical panes.
  */
-public class MovieListActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<Movie>> {
+public class MovieListActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<Movie>>,
+        MoviePageSource.Listener {
 
     public static final String LOG_TAG = MovieListActivity.class.getName();
 
@@ -58,14 +61,34 @@ public class MovieListActivity extends AppCompatActivity implements LoaderManage
      */
     private static final int MOVIE_LOADER_ID = 1;
 
-    private List<Movie> mMovies = new ArrayList<>();
     private MovieAdapter mMovieAdapter;
     private RecyclerView mRecyclerView;
     //private Movie mMovie;
 
+    /**
+     * Loads the pages after the first one while the user scrolls
+     */
+    private MoviePageSource mPageSource;
+
+    /**
+     * Downloads the posters of the next rows before they are bound
+     */
+    private PosterPrefetcher mPosterPrefetcher;
+
+    /**
+     * Endpoint of the movie list currently shown, for the sort order in the settings
+     */
+    private String mEndpoint;
+
+    /**
+     * Movie list hidden by the search results while the search is open, null otherwise
+     */
+    private List<Movie> mListMovies;
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        TraceCompat.beginSection("MovieListActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_movie_list);
 
@@ -106,41 +129,121 @@ public class MovieListActivity extends AppCompatActivity implements LoaderManage
          * The MovieAdapter is responsible for linking our movies data with the View that
          * will end up displaying our movie data.
          */
-        mMovieAdapter = new MovieAdapter(this, mMovies, mTwoPane, this);
+        mMovieAdapter = new MovieAdapter(this, mTwoPane, this);
 
         /* Setting the adapter attaches it to the RecyclerView in our layout. */
         mRecyclerView.setAdapter(mMovieAdapter);
 
-        // Clear the adapter of previous movies data
-        mMovies.clear();
-        // Notify the adapter
-        mMovieAdapter.notifyItemRangeRemoved(0, mMovieAdapter.getItemCount());
+        /*
+         * Load the next page of movies in the background when the user scrolls
+         * close to the end of the grid.
+         */
+        mPageSource = new MoviePageSource(this, MovieLists.getInstance(this));
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0 || isSearching()) {
+                    // The search results aren't paged
+                    return;
+                }
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                mPageSource.onScrolled(layoutManager.findLastVisibleItemPosition(),
+                        mMovieAdapter.getItemCount());
+            }
+        });
+        mEndpoint = getSortEndpoint();
 
-        // If there is a network connection, fetch data
-        if (isConnected()) {
+        /* Download the posters ahead of the scroll, in the direction the user is scrolling. */
+        mPosterPrefetcher = new PosterPrefetcher(this, mMovieAdapter);
+        mMovieAdapter.setPosterPrefetcher(mPosterPrefetcher);
+        mRecyclerView.addOnScrollListener(mPosterPrefetcher);
 
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
+        /* Time the frames drawn while the grid scrolls, see the network stats screen. */
+        mRecyclerView.addOnScrollListener(
+                new ScrollFrameMonitor(getWindowManager().getDefaultDisplay().getRefreshRate()));
 
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
-            loaderManager.initLoader(MOVIE_LOADER_ID, null, this);
+        /* Read the colors of the posters seen before, shown in the cells while the posters load. */
+        MovieLists.getInstance(this).loadPosterColors();
 
-        } else {
+        // Get a reference to the LoaderManager, in order to interact with loaders.
+        LoaderManager loaderManager = getLoaderManager();
 
+        // A retained loader delivers its movies right away, e.g. after a rotation
+        if (loaderManager.getLoader(MOVIE_LOADER_ID) == null) {
+            showSnapshot();
+        }
 
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
+        // Initialize the loader. Pass in the int ID constant defined above and pass in null for
+        // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
+        // because this activity implements the LoaderCallbacks interface).
+        // The loader shows the stored movies first, so it runs even without a connection.
+        loaderManager.initLoader(MOVIE_LOADER_ID, null, this);
+        TraceCompat.endSection();
+    }
 
-            // Update empty state with no connection error message
-            mEmptyStateTextView.setText(R.string.no_internet_connection);
+    /**
+     * Binds the first movies of the last launch, so that the grid has posters in its first
+     * frame instead of a loading indicator. The loader then replaces them with the stored
+     * list and refreshes it from the server in the background.
+     */
+    private void showSnapshot() {
+        TraceCompat.beginSection("MovieListActivity.showSnapshot");
+        List<Movie> snapshot = MovieLists.getInstance(this).getSnapshot(mEndpoint);
+        TraceCompat.endSection();
+        if (snapshot == null || snapshot.isEmpty()) {
+            // First launch, or the cache was cleared
+            return;
+        }
+        StartupTiming.onFirstList("snapshot");
+        findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+        mPageSource.reset(mEndpoint, snapshot.size());
+        // The first list submitted to the adapter is bound without computing any difference
+        mMovieAdapter.replaceMovies(snapshot);
+    }
+
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        // The sort order may have been changed in the settings, load the other list
+        String endpoint = getSortEndpoint();
+        if (!endpoint.equals(mEndpoint)) {
+            mEndpoint = endpoint;
+            mPageSource.cancel();
+            getLoaderManager().restartLoader(MOVIE_LOADER_ID, null, this);
+        }
 
+        // Keep the other lists warm, so that switching the sort order doesn't wait for the server
+        if (isConnected()) {
+            MovieLists movieLists = MovieLists.getInstance(this);
+            for (String otherEndpoint : MovieLists.ENDPOINTS) {
+                if (!otherEndpoint.equals(mEndpoint)) {
+                    movieLists.prefetch(otherEndpoint);
+                }
+            }
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPageSource.cancel();
+    }
+
+    /**
+     * Returns the endpoint of the movie list for the sort order specified in the settings menu.
+     */
+    private String getSortEndpoint() {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        String key = sharedPrefs.getString(getString(R.string.pref_order_by_key), "0");
+
+        String topRated = getResources().getStringArray(R.array.pref_order_by_values)[1];
+        if (key.equals(topRated)) {
+            return MOVIE_TOP_RATED_ENDPOINT;
+        }
+        return MOVIE_POPULAR_ENDPOINT;
+    }
 
     // Helper method to check network connection
     public boolean isConnected() {
@@ -165,6 +268,43 @@ public class MovieListActivity extends AppCompatActivity implements LoaderManage
         menu.clear();
         /* Use the inflater's inflate method to inflate our menu layout to this menu */
         getMenuInflater().inflate(R.menu.movie_list, menu);
+        menu.findItem(R.id.action_network_stats).setVisible(BuildConfig.DEBUG);
+
+        // Search the movies downloaded so far as the user types, without waiting for the server
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                showSearchResults(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                showSearchResults(query);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                mListMovies = mMovieAdapter.getSubmittedMovies();
+                MovieLists.getInstance(MovieListActivity.this).loadSearchIndex();
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                // Show the movie list again, with the pages loaded meanwhile
+                List<Movie> movies = mListMovies;
+                mListMovies = null;
+                mMovieAdapter.replaceMovies(movies);
+                mEmptyStateTextView.setText(null);
+                return true;
+            }
+        });
         /* Return true so that the menu is displayed in the Toolbar */
         return true;
     }
@@ -182,30 +322,44 @@ public class MovieListActivity extends AppCompatActivity implements LoaderManage
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
         }
+        if (id == R.id.action_network_stats) {
+            startActivity(new Intent(this, NetworkStatsActivity.class));
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    public Loader<List<Movie>> onCreateLoader(int i, Bundle bundle) {
+    private boolean isSearching() {
+        return mListMovies != null;
+    }
 
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-        String key = sharedPrefs.getString(getString(R.string.pref_order_by_key), "0");
+    /**
+     * Shows the movies matching the given query in place of the list, the list itself
+     * while the query is empty.
+     */
+    private void showSearchResults(String query) {
+        if (!isSearching()) {
+            return;
+        }
+        if (query.trim().isEmpty()) {
+            mMovieAdapter.replaceMovies(mListMovies);
+            mEmptyStateTextView.setText(null);
+            return;
+        }
+        MovieSearchIndex searchIndex = MovieLists.getInstance(this).getSearchIndex();
+        List<Movie> results = searchIndex.search(query);
+        mMovieAdapter.replaceMovies(results);
+        mEmptyStateTextView.setText(results.isEmpty() ? getString(R.string.no_search_results) : null);
+    }
 
-        // Network API implementation to retrieve popular or top rated movies
-        // for the sort criteria specified in the settings menu.
-        Uri baseUri = Uri.parse(MOVIE_BASE_URL);
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+    @Override
+    public Loader<List<Movie>> onCreateLoader(int i, Bundle bundle) {
 
-        String mostPopular = getResources().getStringArray(R.array.pref_order_by_values)[0];
-        if (key.equals(mostPopular)) {
-            uriBuilder.appendEncodedPath(MOVIE_POPULAR_ENDPOINT + API_KEY_VARIABLE).build();
-        } else {
-            String topRated = getResources().getStringArray(R.array.pref_order_by_values)[1];
-            if (key.equals(topRated)) {
-                uriBuilder.appendEncodedPath(MOVIE_TOP_RATED_ENDPOINT + API_KEY_VARIABLE).build();
-            }
-        }
-        return new MovieLoader(this, uriBuilder.toString());
+        // Network API implementation to retrieve the first page of popular or top rated
+        // movies for the sort criteria specified in the settings menu.
+        // The following pages are loaded by the MoviePageSource.
+        mPageSource.cancel();
+        return new MovieLoader(this, mEndpoint);
     }
 
     // Called when a Loader has finished loading its data.
@@ -221,28 +375,52 @@ public class MovieListActivity extends AppCompatActivity implements LoaderManage
 //        }
 
 
-        if (movies != null || !movies.isEmpty()) {
-            // Hide loading indicator because the data has been loaded
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
+        StartupTiming.onFirstList("loader");
+
+        // Hide loading indicator because the data has been loaded
+        View loadingIndicator = findViewById(R.id.loading_indicator);
+        loadingIndicator.setVisibility(View.GONE);
+
+        // Page the list again after the movies loaded. The adapter is only updated
+        // once the differences have been computed, so its count can't be used yet.
+        mPageSource.reset(mEndpoint, movies == null ? 0 : movies.size());
+        mPosterPrefetcher.clearQueue();
+
+        if (isSearching()) {
+            // Keep the search results, the list is shown when the search is closed
+            mListMovies = movies == null ? new ArrayList<Movie>() : movies;
+            return;
+        }
+
+        if (movies == null || movies.isEmpty()) {
+            // Set empty state text to display "No movies found.", or the missing
+            // connection if nothing was stored for this list yet
+            mEmptyStateTextView.setText(isConnected() ? R.string.no_movies : R.string.no_internet_connection);
         } else {
-            // Set empty state text to display "No movies found."
-            mEmptyStateTextView.setText(R.string.no_movies);
+            mEmptyStateTextView.setText(null);
         }
 
-        // Clear the adapter of previous movies data
-        mMovies.clear();
-        // Add movies into a list
-        mMovies.addAll(movies);
-        // Notify the adapter
-        mMovieAdapter.notifyItemRangeInserted(mMovieAdapter.getItemCount() + 1, mMovieAdapter.getItemCount());
+        // Replace the movies shown by the adapter, only the rows that changed are bound again
+        mMovieAdapter.replaceMovies(movies);
+    }
+
+    @Override
+    public void onPageLoaded(List<Movie> movies) {
+        if (isSearching()) {
+            // A page requested before the search was opened
+            List<Movie> listMovies = new ArrayList<>(mListMovies);
+            listMovies.addAll(movies);
+            mListMovies = listMovies;
+            return;
+        }
+        mMovieAdapter.appendMovies(movies);
     }
 
     @Override
     public void onLoaderReset(Loader<List<Movie>> loader) {
+        // Drop the page in flight, it belongs to the list being cleared
+        mPageSource.cancel();
         // Clear the adapter of previous movies data
-        mMovies.clear();
-        // Notify the adapter
-        mMovieAdapter.notifyItemRangeRemoved(0, mMovieAdapter.getItemCount());
+        mMovieAdapter.replaceMovies(null);
     }
 }
\ No newline at end of file
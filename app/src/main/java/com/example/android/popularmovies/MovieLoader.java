@@ -2,7 +2,10 @@ package com.example.android.popularmovies;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.support.v4.os.TraceCompat;
 
+import com.example.android.popularmovies.data.MovieLists;
+import com.example.android.popularmovies.data.MovieRepository;
 import com.example.android.popularmovies.model.Movie;
 import com.example.android.popularmovies.utils.QueryUtils;
 
@@ -11,6 +14,11 @@ import java.util.List;
 /**
  * Loads a list of movies by using an AsyncTask to perform the
  * network request to the given URL.
+ * <p>
+ * The movies stored by the last load, or a stale cached response, are delivered first so
+ * that the grid shows content right away, even without a connection. The loader then
+ * refreshes the list from the network and stores the result.
+ * A list prefetched by {@link MovieLists} is delivered right away, without any request.
  */
 public class MovieLoader extends AsyncTaskLoader<List<Movie>> {
 
@@ -19,25 +27,57 @@ public class MovieLoader extends AsyncTaskLoader<List<Movie>> {
      */
     private static final String LOG_TAG = MovieLoader.class.getName();
 
+    /**
+     * Endpoint of the movie list
+     */
+    private final String mEndpoint;
+
     /**
      * Query URL
      */
-    private String mUrl;
+    private final String mUrl;
+
+    /**
+     * Last delivered list of movies
+     */
+    private volatile List<Movie> mMovies;
+
+    /**
+     * True when the last delivered result came from the local store or a stale
+     * cached response, and still has to be refreshed from the server
+     */
+    private boolean mRefresh;
 
     /**
      * Constructs a new {@link MovieLoader}.
      *
-     * @param context of the activity
-     * @param url     to load data from
+     * @param context  of the activity
+     * @param endpoint of the movie list to load, e.g. {@link QueryUtils#MOVIE_POPULAR_ENDPOINT}
      */
-    public MovieLoader(Context context, String url) {
+    public MovieLoader(Context context, String endpoint) {
         super(context);
-        mUrl = url;
+        mEndpoint = endpoint;
+        mUrl = QueryUtils.buildMoviesUrl(endpoint, QueryUtils.FIRST_PAGE);
     }
 
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        if (mMovies == null) {
+            // Switching to a list prefetched in the background is a memory lookup
+            mMovies = MovieLists.getInstance(getContext()).getWarmList(mEndpoint);
+        }
+        if (mMovies != null) {
+            // Deliver the movies loaded before, e.g. when coming back from the detail screen
+            deliverResult(mMovies);
+        }
+        if (mMovies == null || takeContentChanged()) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
     }
 
     /**
@@ -45,12 +85,52 @@ public class MovieLoader extends AsyncTaskLoader<List<Movie>> {
      */
     @Override
     public List<Movie> loadInBackground() {
-        if (mUrl == null) {
-            return null;
+        TraceCompat.beginSection("MovieLoader.loadInBackground");
+        try {
+            return load();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private List<Movie> load() {
+        MovieLists movieLists = MovieLists.getInstance(getContext());
+
+        if (!mRefresh) {
+            // Show the movies seen last time straight away, they are refreshed in a second pass
+            List<Movie> storedMovies = movieLists.getStoredMovies(mEndpoint);
+            if (!storedMovies.isEmpty()) {
+                mRefresh = true;
+                return storedMovies;
+            }
+            List<Movie> staleMovies = QueryUtils.fetchStaleMovieData(mUrl);
+            if (staleMovies != null) {
+                mRefresh = true;
+                // Known to the repository, so that the detail screen can find them by id
+                return MovieRepository.getInstance(getContext()).putOlderMovies(staleMovies);
+            }
         }
+        mRefresh = false;
 
         // Perform the network request, parse the response, and extract a list of movies.
-        return QueryUtils.fetchMovieData(mUrl);
+        List<Movie> movies = QueryUtils.fetchMovieData(mUrl);
+        if (movies == null || movies.isEmpty()) {
+            // Keep showing the movies we have if the server couldn't be reached
+            return mMovies;
+        }
+
+        // Reconcile the local copy with the server, keeping the pages scrolled in since
+        return movieLists.refreshFirstPage(mEndpoint, movies);
+    }
 
+    @Override
+    public void deliverResult(List<Movie> movies) {
+        mMovies = movies;
+        super.deliverResult(movies);
+
+        // Refresh the stored movies that were just delivered
+        if (mRefresh && isStarted()) {
+            forceLoad();
+        }
     }
-}
\ No newline at end of file
+}
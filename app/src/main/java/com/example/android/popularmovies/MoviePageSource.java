@@ -0,0 +1,212 @@
+package com.example.android.popularmovies;
+
+import android.os.AsyncTask;
+import android.os.SystemClock;
+
+import com.example.android.popularmovies.data.MovieLists;
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import java.util.List;
+
+/**
+ * A {@link MoviePageSource} loads the pages that follow the first one of a movie list,
+ * one at a time, when the user scrolls close to the end of the grid.
+ * The first page is still loaded by the {@link MovieLoader}.
+ * Every loaded page is also added to the {@link MovieLists}.
+ */
+class MoviePageSource {
+
+    /**
+     * Start loading the next page when the last visible movie is
+     * this close to the end of the list.
+     */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    /**
+     * Time before a page that failed is requested again, doubled after every failure
+     * in a row up to {@link #MAX_RETRY_DELAY_MILLIS}
+     */
+    private static final long FIRST_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+
+    /**
+     * Receives the movies of every page loaded by a {@link MoviePageSource}.
+     */
+    interface Listener {
+        void onPageLoaded(List<Movie> movies);
+    }
+
+    private final Listener mListener;
+    private final MovieLists mMovieLists;
+
+    /**
+     * Endpoint of the movie list being paged, null until {@link #reset} is called
+     */
+    private String mEndpoint;
+
+    /**
+     * Last page whose movies have been handed to the listener
+     */
+    private int mLastLoadedPage;
+
+    /**
+     * True once the server returned an empty page, or said there is no such page
+     */
+    private boolean mEndReached;
+
+    /**
+     * Number of requests of the next page that failed in a row
+     */
+    private int mFailures;
+
+    /**
+     * Time before which the next page isn't requested again, in the
+     * {@link SystemClock#elapsedRealtime()} time base
+     */
+    private long mRetryAt;
+
+    /**
+     * Page request currently in flight, null if there is none
+     */
+    private PageTask mPageTask;
+
+    /**
+     * Constructs a new {@link MoviePageSource}.
+     *
+     * @param listener   receiving the movies of every page
+     * @param movieLists where the loaded pages are stored
+     */
+    MoviePageSource(Listener listener, MovieLists movieLists) {
+        mListener = listener;
+        mMovieLists = movieLists;
+    }
+
+    /**
+     * Starts paging the given endpoint after the movies already shown.
+     * A page still in flight for the previous list is cancelled.
+     *
+     * @param endpoint  of the movie list
+     * @param itemCount number of movies of the list already shown, e.g. restored from the store
+     */
+    void reset(String endpoint, int itemCount) {
+        cancel();
+        mEndpoint = endpoint;
+        int loadedPages = (itemCount + QueryUtils.RESULTS_PER_PAGE - 1) / QueryUtils.RESULTS_PER_PAGE;
+        mLastLoadedPage = Math.max(QueryUtils.FIRST_PAGE, loadedPages);
+        mEndReached = false;
+        mFailures = 0;
+        mRetryAt = 0;
+    }
+
+    /**
+     * Called when the grid scrolls, loads the next page if the last visible movie
+     * is close enough to the end of the list.
+     *
+     * @param lastVisiblePosition adapter position of the last visible movie
+     * @param itemCount           number of movies in the adapter
+     */
+    void onScrolled(int lastVisiblePosition, int itemCount) {
+        if (itemCount - 1 - lastVisiblePosition <= PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
+    }
+
+    /**
+     * Loads the page after the last loaded one. Does nothing if a page is already
+     * in flight, so repeated scroll events never request the same page twice,
+     * or while waiting to request a page that failed again.
+     */
+    void loadNextPage() {
+        if (mEndpoint == null || mEndReached || mPageTask != null
+                || SystemClock.elapsedRealtime() < mRetryAt) {
+            return;
+        }
+        mPageTask = new PageTask(mEndpoint, mLastLoadedPage + 1);
+        mPageTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Cancels the page in flight, if any. Its movies will never be delivered.
+     * If it was already stored, it isn't requested again, see {@link #onPageTaskCancelled}.
+     */
+    void cancel() {
+        if (mPageTask != null) {
+            mPageTask.cancel(true);
+            mPageTask = null;
+        }
+    }
+
+    private void onPageTaskFinished(PageTask task, List<Movie> movies) {
+        if (task != mPageTask) {
+            // The list changed while the page was loading
+            return;
+        }
+        mPageTask = null;
+
+        if (movies == null) {
+            // The request failed, the same page is requested again on a scroll after a while
+            long delay = FIRST_RETRY_DELAY_MILLIS << Math.min(mFailures, 6);
+            mRetryAt = SystemClock.elapsedRealtime() + Math.min(MAX_RETRY_DELAY_MILLIS, delay);
+            mFailures++;
+            return;
+        }
+        mFailures = 0;
+        mRetryAt = 0;
+        if (movies.isEmpty()) {
+            mEndReached = true;
+            return;
+        }
+        mLastLoadedPage = task.mPage;
+        mListener.onPageLoaded(movies);
+    }
+
+    /**
+     * Called when a cancelled page request is over. If the page was stored before the
+     * cancellation, the list is still paged after it, so that it isn't stored twice.
+     */
+    private void onPageTaskCancelled(PageTask task) {
+        if (task.mStored && task.mPageEndpoint.equals(mEndpoint)) {
+            mLastLoadedPage = Math.max(mLastLoadedPage, task.mPage);
+        }
+    }
+
+    /**
+     * Loads a single page on a background thread.
+     */
+    private class PageTask extends AsyncTask<Void, Void, List<Movie>> {
+
+        private final String mPageEndpoint;
+        private final int mPage;
+
+        /**
+         * True once the movies of the page have been added to the {@link MovieLists}
+         */
+        private volatile boolean mStored;
+
+        PageTask(String endpoint, int page) {
+            mPageEndpoint = endpoint;
+            mPage = page;
+        }
+
+        @Override
+        protected List<Movie> doInBackground(Void... voids) {
+            List<Movie> movies = QueryUtils.fetchMovieData(QueryUtils.buildMoviesUrl(mPageEndpoint, mPage));
+            if (movies != null && !movies.isEmpty() && !isCancelled()) {
+                movies = mMovieLists.appendMovies(mPageEndpoint, movies);
+                mStored = true;
+            }
+            return movies;
+        }
+
+        @Override
+        protected void onPostExecute(List<Movie> movies) {
+            onPageTaskFinished(this, movies);
+        }
+
+        @Override
+        protected void onCancelled(List<Movie> movies) {
+            onPageTaskCancelled(this);
+        }
+    }
+}
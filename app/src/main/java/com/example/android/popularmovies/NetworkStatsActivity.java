@@ -0,0 +1,172 @@
+package com.example.android.popularmovies;
+
+import android.os.Bundle;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.android.popularmovies.utils.FetchPolicy;
+import com.example.android.popularmovies.utils.GridStats;
+import com.example.android.popularmovies.utils.MovieHttpClient;
+import com.example.android.popularmovies.utils.NetworkStats;
+import com.example.android.popularmovies.utils.PrefetchStats;
+import com.example.android.popularmovies.utils.QueryUtils;
+import com.example.android.popularmovies.utils.RequestGate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Debug screen showing the latency percentiles of the requests to The Movie Database,
+ * by endpoint and by phase, as recorded by the {@link NetworkStats} since the app started,
+ * the queues of the {@link RequestGate}, the connections opened and reused by the
+ * {@link MovieHttpClient}, the bind and frame times of the movie grid recorded by the
+ * {@link GridStats} and the poster prefetch hit rate recorded by the {@link PrefetchStats}.
+ * <p>
+ * The statistics can be exported as CSV to the external files directory of the app, e.g.
+ * to pull them with adb and compare the percentiles of two builds.
+ */
+public class NetworkStatsActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = NetworkStatsActivity.class.getSimpleName();
+
+    /**
+     * The statistics exported to each CSV file
+     */
+    private static final int EXPORT_REQUESTS = 0;
+    private static final int EXPORT_REQUEST_GATE = 1;
+    private static final int EXPORT_CONNECTIONS = 2;
+
+    private TextView mStatsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_network_stats);
+        mStatsTextView = findViewById(R.id.network_stats);
+
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showStats();
+    }
+
+    private void showStats() {
+        String report = NetworkStats.getInstance().getReport();
+        StringBuilder text = new StringBuilder();
+        if (report.isEmpty()) {
+            text.append(getString(R.string.network_stats_empty));
+        } else {
+            text.append("Durations in ms\n\n").append(report);
+        }
+        text.append("\n").append(QueryUtils.getRequests());
+        text.append("\n").append(FetchPolicy.getInstance());
+        text.append("\n\n").append(RequestGate.getInstance().getReport());
+        text.append("\n").append(MovieHttpClient.getInstance().getReport());
+        text.append("\n\n").append(GridStats.getInstance().getReport());
+        text.append("\n").append(PrefetchStats.getInstance().getReport());
+        mStatsTextView.setText(text);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.network_stats, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_export) {
+            export();
+            return true;
+        }
+        if (id == R.id.action_clear) {
+            NetworkStats.getInstance().clear();
+            GridStats.getInstance().clear();
+            PrefetchStats.getInstance().clear();
+            showStats();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Writes the statistics to CSV files named after the build and the time: the requests
+     * by endpoint and phase, the queues of the request gate and the connections by host.
+     */
+    private void export() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            // No external storage mounted
+            directory = getFilesDir();
+        }
+        String build = BuildConfig.VERSION_NAME + "-" + BuildConfig.VERSION_CODE + "-" + BuildConfig.BUILD_TYPE;
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "network-stats-" + build + "-" + time + ".csv");
+        File gateFile = new File(directory, "request-gate-" + build + "-" + time + ".csv");
+        File connectionsFile = new File(directory, "connections-" + build + "-" + time + ".csv");
+
+        if (exportCsv(file, build, EXPORT_REQUESTS)
+                && exportCsv(gateFile, build, EXPORT_REQUEST_GATE)
+                && exportCsv(connectionsFile, build, EXPORT_CONNECTIONS)) {
+            Toast.makeText(this, getString(R.string.network_stats_exported, file.getAbsolutePath()),
+                    Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(this, R.string.network_stats_export_failed, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Writes the network stats, the request gate stats or the connection stats to the given
+     * file. Returns false if it failed.
+     *
+     * @param stats one of {@link #EXPORT_REQUESTS}, {@link #EXPORT_REQUEST_GATE} or
+     *              {@link #EXPORT_CONNECTIONS}
+     */
+    private boolean exportCsv(File file, String build, int stats) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            switch (stats) {
+                case EXPORT_REQUEST_GATE:
+                    RequestGate.getInstance().exportCsv(writer, build);
+                    break;
+                case EXPORT_CONNECTIONS:
+                    MovieHttpClient.getInstance().exportCsv(writer, build);
+                    break;
+                default:
+                    NetworkStats.getInstance().exportCsv(writer, build);
+                    break;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem exporting the stats to " + file, e);
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing " + file, e);
+                }
+            }
+        }
+    }
+}
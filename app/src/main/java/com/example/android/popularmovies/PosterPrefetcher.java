@@ -0,0 +1,254 @@
+package com.example.android.popularmovies;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.example.android.popularmovies.utils.PrefetchStats;
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link PosterPrefetcher} watches the direction and the velocity of the scroll of the
+ * movie grid, and downloads the posters of the next rows at low priority before they are
+ * bound. Posters of rows that scroll out of the prefetch range before their download
+ * started are dropped from the queue. The hit rate is recorded in the {@link PrefetchStats}.
+ * <p>
+ * Every call happens on the main thread, Picasso delivers its callbacks there too.
+ */
+class PosterPrefetcher extends RecyclerView.OnScrollListener {
+
+    /**
+     * Number of rows prefetched ahead of the scroll when scrolling slowly
+     */
+    private static final int MIN_ROWS_AHEAD = 2;
+
+    /**
+     * Maximum number of rows prefetched ahead of the scroll during a fling
+     */
+    private static final int MAX_ROWS_AHEAD = 8;
+
+    /**
+     * Rows ahead are added to cover this much time at the current scroll velocity
+     */
+    private static final long LOOKAHEAD_MILLIS = 500;
+
+    /**
+     * Scroll events further apart than this don't measure a velocity
+     */
+    private static final long MAX_VELOCITY_SAMPLE_MILLIS = 100;
+
+    /**
+     * Number of posters downloaded at the same time by the prefetcher,
+     * the rest of the queue waits so that it can still be cancelled
+     */
+    private static final int MAX_IN_FLIGHT = 2;
+
+    /**
+     * Number of prefetched posters remembered to count the hits, far more than the rows
+     * prefetched ahead of the scroll. A poster still not bound after that is forgotten,
+     * like a poster counted as a hit once.
+     */
+    private static final int MAX_PREFETCHED = 200;
+
+    private final Context mContext;
+    private final MovieAdapter mAdapter;
+
+    /**
+     * Posters waiting to be downloaded, in the order they'll be bound, with their position
+     */
+    private final LinkedHashMap<String, Integer> mQueue = new LinkedHashMap<>();
+    private final Set<String> mInFlight = new HashSet<>();
+    private final Set<String> mPrefetched = Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_PREFETCHED;
+                }
+            });
+
+    private int mScrollState = RecyclerView.SCROLL_STATE_IDLE;
+    private long mLastScrollTime;
+
+    /**
+     * Smoothed scroll velocity, in pixels per millisecond
+     */
+    private float mVelocity;
+
+    private final PrefetchStats mStats = PrefetchStats.getInstance();
+
+    /**
+     * Constructs a new {@link PosterPrefetcher}.
+     *
+     * @param context used to get the {@link Picasso} instance
+     * @param adapter providing the poster URL of every position
+     */
+    PosterPrefetcher(Context context, MovieAdapter adapter) {
+        mContext = context.getApplicationContext();
+        mAdapter = adapter;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        mScrollState = newState;
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            mVelocity = 0;
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) {
+            return;
+        }
+        updateVelocity(dy);
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION || lastVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int spanCount = layoutManager instanceof GridLayoutManager
+                ? ((GridLayoutManager) layoutManager).getSpanCount() : 1;
+        View firstChild = recyclerView.getChildAt(0);
+        int rowHeight = firstChild != null ? firstChild.getHeight() : 0;
+
+        int itemsAhead = getRowsAhead(rowHeight) * spanCount;
+        int itemCount = mAdapter.getItemCount();
+        if (dy > 0) {
+            int start = lastVisible + 1;
+            int end = Math.min(itemCount - 1, lastVisible + itemsAhead);
+            cancelOutOfRange(start, end);
+            for (int position = start; position <= end; position++) {
+                enqueue(position);
+            }
+        } else {
+            int start = Math.max(0, firstVisible - itemsAhead);
+            int end = firstVisible - 1;
+            cancelOutOfRange(start, end);
+            for (int position = end; position >= start; position--) {
+                enqueue(position);
+            }
+        }
+        startDownloads();
+    }
+
+    /**
+     * Called by the adapter when a poster is bound, to measure the prefetch hit rate.
+     * Posters bound while the grid isn't scrolling, e.g. on the first layout,
+     * couldn't have been prefetched and aren't counted.
+     */
+    void onPosterBound(String url) {
+        // The bind loads the poster itself from now on
+        mQueue.remove(url);
+
+        if (mScrollState == RecyclerView.SCROLL_STATE_IDLE) {
+            return;
+        }
+        // A poster bound again, e.g. after scrolling back, is only a hit the first time
+        if (mPrefetched.remove(url)) {
+            mStats.recordHit();
+        } else if (mInFlight.contains(url)) {
+            mStats.recordLate();
+        } else {
+            mStats.recordMiss();
+        }
+    }
+
+    /**
+     * Drops the posters waiting to be downloaded, e.g. when the list is replaced.
+     */
+    void clearQueue() {
+        mStats.recordCancelled(mQueue.size());
+        mQueue.clear();
+    }
+
+    /**
+     * Returns the number of rows to prefetch: enough to cover {@link #LOOKAHEAD_MILLIS}
+     * at the current velocity, between {@link #MIN_ROWS_AHEAD} and {@link #MAX_ROWS_AHEAD}.
+     */
+    private int getRowsAhead(int rowHeight) {
+        if (rowHeight <= 0) {
+            return MIN_ROWS_AHEAD;
+        }
+        int rows = MIN_ROWS_AHEAD + (int) (mVelocity * LOOKAHEAD_MILLIS / rowHeight);
+        return Math.min(MAX_ROWS_AHEAD, rows);
+    }
+
+    private void updateVelocity(int dy) {
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - mLastScrollTime;
+        mLastScrollTime = now;
+        if (elapsed <= 0 || elapsed > MAX_VELOCITY_SAMPLE_MILLIS) {
+            return;
+        }
+        float velocity = (float) Math.abs(dy) / elapsed;
+        mVelocity = mVelocity == 0 ? velocity : (mVelocity + velocity) / 2;
+    }
+
+    private void enqueue(int position) {
+        String url = mAdapter.getPosterUrl(position);
+        if (url == null || mQueue.containsKey(url) || mInFlight.contains(url)
+                || mPrefetched.contains(url)) {
+            return;
+        }
+        mQueue.put(url, position);
+        mStats.recordQueued();
+    }
+
+    /**
+     * Removes the queued posters that are no longer in the prefetch range.
+     */
+    private void cancelOutOfRange(int start, int end) {
+        Iterator<Map.Entry<String, Integer>> iterator = mQueue.entrySet().iterator();
+        while (iterator.hasNext()) {
+            int position = iterator.next().getValue();
+            if (position < start || position > end) {
+                iterator.remove();
+                mStats.recordCancelled(1);
+            }
+        }
+    }
+
+    private void startDownloads() {
+        // Picasso calls back synchronously for posters already in memory,
+        // so don't hold an iterator on the queue while fetching
+        while (mInFlight.size() < MAX_IN_FLIGHT && !mQueue.isEmpty()) {
+            final String url = mQueue.keySet().iterator().next();
+            mQueue.remove(url);
+            mInFlight.add(url);
+
+            Picasso.with(mContext)
+                    .load(url)
+                    .config(MovieAdapter.POSTER_CONFIG)
+                    .priority(Picasso.Priority.LOW)
+                    .fetch(new Callback() {
+                        @Override
+                        public void onSuccess() {
+                            mInFlight.remove(url);
+                            mPrefetched.add(url);
+                            mStats.recordCompleted();
+                            startDownloads();
+                        }
+
+                        @Override
+                        public void onError() {
+                            mInFlight.remove(url);
+                            mStats.recordFailed();
+                            startDownloads();
+                        }
+                    });
+        }
+    }
+}
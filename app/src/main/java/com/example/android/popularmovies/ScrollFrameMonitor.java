@@ -0,0 +1,61 @@
+package com.example.android.popularmovies;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+import com.example.android.popularmovies.utils.GridStats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScrollFrameMonitor} records in the {@link GridStats} the time between the frames
+ * drawn while the movie grid scrolls. The Choreographer gives every frame the time of its
+ * vsync, so two frames more than one vsync apart mean that the grid missed a frame.
+ * <p>
+ * Frames are only watched while the grid moves, an idle grid draws no frames and must
+ * not be counted as janky. Every call happens on the main thread.
+ */
+class ScrollFrameMonitor extends RecyclerView.OnScrollListener implements Choreographer.FrameCallback {
+
+    private final long mFrameIntervalNanos;
+
+    private boolean mScrolling;
+
+    /**
+     * Vsync time of the last frame, 0 until the first frame of a scroll
+     */
+    private long mLastFrameNanos;
+
+    /**
+     * @param refreshRate of the display the grid is shown on, in frames per second
+     */
+    ScrollFrameMonitor(float refreshRate) {
+        // Some devices report 0 for a virtual display
+        float rate = refreshRate >= 1 ? refreshRate : 60;
+        mFrameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        boolean scrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+        if (scrolling && !mScrolling) {
+            mLastFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        } else if (!scrolling && mScrolling) {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        mScrolling = scrolling;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mScrolling) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            GridStats.getInstance().recordFrame(frameTimeNanos - mLastFrameNanos, mFrameIntervalNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
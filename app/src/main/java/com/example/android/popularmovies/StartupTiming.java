@@ -0,0 +1,107 @@
+package com.example.android.popularmovies;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from the start of the process to the first poster drawn in the grid,
+ * the moment the user sees content. It is logged, reported to the system with
+ * {@link Activity#reportFullyDrawn()} so that it shows as "Fully drawn" in logcat, and can
+ * be awaited by the startup benchmark.
+ * <p>
+ * Only called from the main thread, except {@link #awaitFirstPoster}.
+ */
+public final class StartupTiming {
+
+    private static final String LOG_TAG = StartupTiming.class.getSimpleName();
+
+    /**
+     * Start of the measure, in {@link SystemClock#uptimeMillis()}
+     */
+    private static long sStartMillis;
+
+    /**
+     * Where the first list shown came from, e.g. "snapshot", null until then
+     */
+    private static String sFirstListSource;
+
+    private static volatile long sFirstPosterMillis = -1;
+    private static volatile CountDownLatch sFirstPoster = new CountDownLatch(1);
+
+    /**
+     * Create a private constructor because no one should ever create a {@link StartupTiming} object.
+     */
+    private StartupTiming() {
+    }
+
+    /**
+     * Starts the measure, called first thing in {@link ApplicationClass#onCreate()}.
+     * Since Nougat the measure starts when the process was forked instead.
+     */
+    static void onProcessStart() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            sStartMillis = Process.getStartUptimeMillis();
+        } else {
+            sStartMillis = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Records where the first list shown came from, the later lists are ignored.
+     */
+    static void onFirstList(String source) {
+        if (sFirstListSource == null) {
+            sFirstListSource = source;
+        }
+    }
+
+    static boolean isFirstPosterShown() {
+        return sFirstPosterMillis >= 0;
+    }
+
+    /**
+     * Ends the measure when the first poster is drawn, the later posters are ignored.
+     */
+    static void onFirstPoster(Activity activity) {
+        if (isFirstPosterShown()) {
+            return;
+        }
+        sFirstPosterMillis = SystemClock.uptimeMillis() - sStartMillis;
+        Log.i(LOG_TAG, "Time to first poster: " + sFirstPosterMillis + " ms, first list from "
+                + sFirstListSource);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            activity.reportFullyDrawn();
+        }
+        sFirstPoster.countDown();
+    }
+
+    /**
+     * Starts a new measure now, for a launch of the activity in a running process.
+     */
+    @VisibleForTesting
+    public static void reset() {
+        sStartMillis = SystemClock.uptimeMillis();
+        sFirstListSource = null;
+        sFirstPosterMillis = -1;
+        sFirstPoster = new CountDownLatch(1);
+    }
+
+    /**
+     * Waits for the first poster and returns the time it took in milliseconds,
+     * or -1 if it wasn't drawn in time.
+     */
+    @VisibleForTesting
+    public static long awaitFirstPoster(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!sFirstPoster.await(timeout, unit)) {
+            return -1;
+        }
+        return sFirstPosterMillis;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.popularmovies.data;
+
+import android.provider.BaseColumns;
+
+/**
+ * Defines the table and column names of the local movie database.
+ */
+public final class MovieContract {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link MovieContract} object.
+     */
+    private MovieContract() {
+    }
+
+    /**
+     * Inner class that defines the table contents of the movies table.
+     * Every row is a movie at a given rank of a given movie list.
+     */
+    public static final class MovieEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "movies";
+
+        /**
+         * Endpoint of the movie list the row belongs to, e.g. "movie/popular"
+         */
+        public static final String COLUMN_LIST = "list";
+
+        /**
+         * Position of the movie in its list, starting from 0
+         */
+        public static final String COLUMN_RANK = "rank";
+
+        /**
+         * Id of the movie on The Movie Database
+         */
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+
+        public static final String COLUMN_TITLE = "title";
+
+        /**
+         * Release date of the movie in days since 1970-01-01, null if it is unknown
+         */
+        public static final String COLUMN_RELEASE_DATE = "release_date";
+        public static final String COLUMN_POSTER_PATH = "poster_path";
+        public static final String COLUMN_VOTE_AVERAGE = "vote_average";
+        public static final String COLUMN_OVERVIEW = "overview";
+
+        /**
+         * Name of the index on the list and rank columns
+         */
+        public static final String INDEX_LIST_RANK = "movies_list_rank";
+
+        /**
+         * Name of the index on the movie id column
+         */
+        public static final String INDEX_MOVIE_ID = "movies_movie_id";
+    }
+
+    /**
+     * Inner class that defines the table contents of the poster colors table.
+     * Every row is the dominant color of a poster, shown while the poster loads.
+     */
+    public static final class PosterColorEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "poster_colors";
+
+        /**
+         * Path of the poster on The Movie Database, the same in every list and every size
+         */
+        public static final String COLUMN_POSTER_PATH = "poster_path";
+
+        /**
+         * Opaque ARGB color
+         */
+        public static final String COLUMN_COLOR = "color";
+    }
+}
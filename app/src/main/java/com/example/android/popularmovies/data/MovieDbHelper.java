@@ -0,0 +1,77 @@
+package com.example.android.popularmovies.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.popularmovies.data.MovieContract.MovieEntry;
+import com.example.android.popularmovies.data.MovieContract.PosterColorEntry;
+
+/**
+ * Manages the local movie database.
+ */
+public class MovieDbHelper extends SQLiteOpenHelper {
+
+    /**
+     * Name of the database file
+     */
+    private static final String DATABASE_NAME = "movies.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database version.
+     */
+    private static final int DATABASE_VERSION = 5;
+
+    /**
+     * Constructs a new instance of {@link MovieDbHelper}.
+     *
+     * @param context of the app
+     */
+    public MovieDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * This is called when the database is created for the first time.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + MovieEntry.TABLE_NAME + " ("
+                + MovieEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + MovieEntry.COLUMN_LIST + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_RANK + " INTEGER NOT NULL, "
+                + MovieEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL, "
+                + MovieEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_RELEASE_DATE + " INTEGER, "
+                + MovieEntry.COLUMN_POSTER_PATH + " TEXT, "
+                + MovieEntry.COLUMN_VOTE_AVERAGE + " REAL, "
+                + MovieEntry.COLUMN_OVERVIEW + " TEXT);");
+
+        // Lists are always read in rank order, and a rank is only used once per list
+        db.execSQL("CREATE UNIQUE INDEX " + MovieEntry.INDEX_LIST_RANK + " ON "
+                + MovieEntry.TABLE_NAME + " ("
+                + MovieEntry.COLUMN_LIST + ", " + MovieEntry.COLUMN_RANK + ");");
+
+        // The details screen looks a movie up by its TMDB id, whichever list it is in
+        db.execSQL("CREATE INDEX " + MovieEntry.INDEX_MOVIE_ID + " ON "
+                + MovieEntry.TABLE_NAME + " (" + MovieEntry.COLUMN_MOVIE_ID + ");");
+
+        // Kept apart from the movies, so that the colors survive the lists being replaced
+        db.execSQL("CREATE TABLE " + PosterColorEntry.TABLE_NAME + " ("
+                + PosterColorEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + PosterColorEntry.COLUMN_POSTER_PATH + " TEXT NOT NULL UNIQUE, "
+                + PosterColorEntry.COLUMN_COLOR + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * This is called when the database needs to be upgraded. The stored movies are only
+     * a copy of the server's lists, so they are dropped and loaded again, and the poster
+     * colors are extracted again as the posters are shown.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + MovieEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + PosterColorEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.android.popularmovies.data;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.QueryUtils;
+import com.example.android.popularmovies.utils.RequestGate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.android.popularmovies.utils.QueryUtils.MOVIE_POPULAR_ENDPOINT;
+import static com.example.android.popularmovies.utils.QueryUtils.MOVIE_TOP_RATED_ENDPOINT;
+
+/**
+ * Keeps the movie lists the user can switch between warm in memory, so that changing the
+ * sort order in the settings is a lookup instead of a round trip to the server.
+ * <p>
+ * The lists are prefetched in parallel on a small executor, and every list loaded or paged
+ * is written both to memory and to the {@link MovieStore}. Their titles and plots are added
+ * to a {@link MovieSearchIndex}, so that every movie seen can be searched offline.
+ * The first page of every list is also kept as a {@link MovieSnapshot}, shown in the first
+ * frame at the next launch, and the dominant colors of the posters as {@link PosterColors}.
+ */
+public class MovieLists {
+
+    private static final String LOG_TAG = MovieLists.class.getSimpleName();
+
+    /**
+     * Endpoints of the lists that can be picked in the settings
+     */
+    public static final String[] ENDPOINTS = {MOVIE_POPULAR_ENDPOINT, MOVIE_TOP_RATED_ENDPOINT};
+
+    /**
+     * Number of lists fetched at the same time
+     */
+    private static final int MAX_PARALLEL_REQUESTS = 2;
+
+    /**
+     * A list loaded longer ago than this is loaded again from the server before it is shown
+     */
+    private static final long WARM_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Number of movies in a snapshot, enough to fill the first screen of the grid
+     */
+    private static final int SNAPSHOT_MOVIES = QueryUtils.RESULTS_PER_PAGE;
+
+    private static MovieLists sInstance;
+
+    private final File mSnapshotDir;
+    private final MovieStore mMovieStore;
+    private final MovieRepository mMovieRepository;
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * Lists loaded from the server by endpoint, and the endpoints being prefetched
+     */
+    private final Map<String, WarmList> mLists = new HashMap<>();
+    private final Set<String> mPrefetching = new HashSet<>();
+
+    private final MovieSearchIndex mSearchIndex = new MovieSearchIndex();
+
+    private final PosterColors mPosterColors = new PosterColors();
+
+    /**
+     * True once the stored lists have been queued for the search index
+     */
+    private boolean mSearchIndexLoading;
+
+    /**
+     * True once the stored poster colors have been queued for loading
+     */
+    private boolean mPosterColorsLoading;
+
+    private MovieLists(Context context) {
+        mSnapshotDir = context.getApplicationContext().getCacheDir();
+        mMovieStore = MovieStore.getInstance(context);
+        mMovieRepository = MovieRepository.getInstance(context);
+        mExecutor = new ThreadPoolExecutor(MAX_PARALLEL_REQUESTS, MAX_PARALLEL_REQUESTS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new PrefetchThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the lists shared by the whole application.
+     */
+    public static synchronized MovieLists getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MovieLists(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the list of the given endpoint if it was loaded from the server recently,
+     * null otherwise. The returned list can't be modified.
+     */
+    public synchronized List<Movie> getWarmList(String endpoint) {
+        WarmList list = mLists.get(endpoint);
+        if (list == null || SystemClock.elapsedRealtime() - list.mLoadedAt > WARM_MILLIS) {
+            return null;
+        }
+        return list.mMovies;
+    }
+
+    /**
+     * Returns the movies of the given list stored on the device, in rank order.
+     * The movies already in the {@link MovieRepository} are returned instead of their copies.
+     * Must be called from a background thread.
+     */
+    public List<Movie> getStoredMovies(String endpoint) {
+        return mMovieRepository.putOlderMovies(mMovieStore.getMovies(endpoint));
+    }
+
+    /**
+     * Returns the first movies of the given list as they were last loaded from the server,
+     * or null if there is no snapshot. No movie is decoded yet, this is called
+     * on the main thread at launch so that the grid isn't empty in its first frame.
+     * The movies are decoded as they are asked for, they aren't in the {@link MovieRepository}.
+     */
+    public List<Movie> getSnapshot(String endpoint) {
+        return MovieSnapshot.open(getSnapshotFile(endpoint));
+    }
+
+    /**
+     * Puts the first page just loaded from the server in place of the first page of the
+     * given list, and keeps the pages stored after it, e.g. paged in while the stored list
+     * was shown, so that the grid doesn't shrink under the user.
+     * Must be called from a background thread.
+     *
+     * @return the whole list as kept in memory, see {@link MovieRepository#putMovies}
+     */
+    public List<Movie> refreshFirstPage(String endpoint, List<Movie> firstPage) {
+        List<Movie> stored = mMovieStore.getMovies(endpoint);
+        List<Movie> movies = new ArrayList<>(mMovieRepository.putMovies(firstPage));
+        movies.addAll(mMovieRepository.putOlderMovies(getFollowingPages(firstPage, stored)));
+        return storeList(endpoint, movies);
+    }
+
+    /**
+     * Returns the stored movies after the first page, except those that moved up to the
+     * new first page, so that no movie is listed twice.
+     */
+    static List<Movie> getFollowingPages(List<Movie> firstPage, List<Movie> stored) {
+        Set<Integer> firstIds = new HashSet<>(firstPage.size() * 2);
+        for (Movie movie : firstPage) {
+            firstIds.add(movie.getId());
+        }
+        List<Movie> following = new ArrayList<>(Math.max(0, stored.size() - QueryUtils.RESULTS_PER_PAGE));
+        for (int i = QueryUtils.RESULTS_PER_PAGE; i < stored.size(); i++) {
+            Movie movie = stored.get(i);
+            if (!firstIds.contains(movie.getId())) {
+                following.add(movie);
+            }
+        }
+        return following;
+    }
+
+    /**
+     * Writes a whole list to the store, its snapshot and the search index, and keeps it warm.
+     */
+    private List<Movie> storeList(String endpoint, List<Movie> movies) {
+        mMovieStore.replaceMovies(endpoint, movies);
+        try {
+            MovieSnapshot.write(getSnapshotFile(endpoint), movies, SNAPSHOT_MOVIES);
+        } catch (IOException e) {
+            // The store is still read at launch, only later
+            Log.w(LOG_TAG, "Problem writing the snapshot of " + endpoint, e);
+        }
+        mSearchIndex.addAll(movies);
+        synchronized (this) {
+            mLists.put(endpoint, new WarmList(movies, SystemClock.elapsedRealtime()));
+        }
+        return movies;
+    }
+
+    /**
+     * Adds a page just loaded from the server at the end of the given list.
+     * Must be called from a background thread.
+     *
+     * @return the movies as kept in memory, see {@link MovieRepository#putMovies}
+     */
+    public List<Movie> appendMovies(String endpoint, List<Movie> movies) {
+        movies = mMovieRepository.putMovies(movies);
+        mMovieStore.appendMovies(endpoint, movies);
+        mSearchIndex.addAll(movies);
+        synchronized (this) {
+            WarmList list = mLists.get(endpoint);
+            if (list != null) {
+                List<Movie> appended = new ArrayList<>(list.mMovies.size() + movies.size());
+                appended.addAll(list.mMovies);
+                appended.addAll(movies);
+                // The list is as old as its first page
+                mLists.put(endpoint, new WarmList(appended, list.mLoadedAt));
+            }
+        }
+        return movies;
+    }
+
+    /**
+     * Returns the index of the movies loaded so far, see {@link #loadSearchIndex()}.
+     */
+    public MovieSearchIndex getSearchIndex() {
+        return mSearchIndex;
+    }
+
+    /**
+     * Adds the movies stored on the device to the search index in the background, the first
+     * time only. The movies loaded since then are already indexed as they are stored.
+     */
+    public void loadSearchIndex() {
+        synchronized (this) {
+            if (mSearchIndexLoading) {
+                return;
+            }
+            mSearchIndexLoading = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String endpoint : ENDPOINTS) {
+                    // A movie loaded from the server meanwhile is more recent than the stored one
+                    mSearchIndex.addAbsent(getStoredMovies(endpoint));
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the dominant colors of the posters shown so far, see {@link #loadPosterColors()}.
+     */
+    public PosterColors getPosterColors() {
+        return mPosterColors;
+    }
+
+    /**
+     * Reads the stored poster colors in the background, the first time only.
+     */
+    public void loadPosterColors() {
+        synchronized (this) {
+            if (mPosterColorsLoading) {
+                return;
+            }
+            mPosterColorsLoading = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mPosterColors.putAbsent(mMovieStore.getPosterColors());
+            }
+        });
+    }
+
+    /**
+     * Keeps the dominant color of a poster, in memory at once and in the store in the
+     * background, together with the other colors found meanwhile.
+     */
+    public void putPosterColor(String posterPath, int color) {
+        if (posterPath == null || !mPosterColors.put(posterPath, color)) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mMovieStore.putPosterColors(mPosterColors.takeUnsaved());
+            }
+        });
+    }
+
+    /**
+     * Loads the first page of the given list in the background, unless it is warm
+     * or already being loaded.
+     */
+    public void prefetch(final String endpoint) {
+        synchronized (this) {
+            if (getWarmList(endpoint) != null || !mPrefetching.add(endpoint)) {
+                return;
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    List<Movie> movies = QueryUtils.fetchMovieData(
+                            QueryUtils.buildMoviesUrl(endpoint, QueryUtils.FIRST_PAGE),
+                            RequestGate.Priority.PREFETCH);
+                    if (movies != null && !movies.isEmpty()) {
+                        refreshFirstPage(endpoint, movies);
+                    } else {
+                        Log.w(LOG_TAG, "Prefetch of " + endpoint + " failed");
+                    }
+                } finally {
+                    synchronized (MovieLists.this) {
+                        mPrefetching.remove(endpoint);
+                    }
+                }
+            }
+        });
+    }
+
+    private File getSnapshotFile(String endpoint) {
+        return new File(mSnapshotDir, "snapshot-" + endpoint.replace('/', '-'));
+    }
+
+    /**
+     * A list loaded from the server, and when its first page was loaded.
+     */
+    private static class WarmList {
+        final List<Movie> mMovies;
+        final long mLoadedAt;
+
+        WarmList(List<Movie> movies, long loadedAt) {
+            mMovies = Collections.unmodifiableList(movies);
+            mLoadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Runs the prefetches at background priority, so they never compete with the UI thread.
+     */
+    private static class PrefetchThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "MovieLists #" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.popularmovies.data;
+
+import android.content.Context;
+
+import com.example.android.popularmovies.model.Movie;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every movie loaded in the process, by TMDB id, so that the screens only pass the id of a
+ * movie to each other instead of parcelling the whole movie with its plot.
+ * <p>
+ * There is a single instance per id: a movie loaded again with the same content is replaced
+ * by the instance already known, so the lists, the search index and the detail screen share
+ * it. A movie that isn't in memory anymore, e.g. after the process was killed or once it
+ * was dropped as the least recently used, is read back from the {@link MovieStore}.
+ */
+public class MovieRepository {
+
+    /**
+     * Movies kept in memory, a few lists scrolled far down. The lists shown keep their own
+     * movies, only the sharing of the instances is lost for the movies dropped.
+     */
+    private static final int MAX_MOVIES = 2000;
+
+    private static MovieRepository sInstance;
+
+    private final MovieStore mMovieStore;
+
+    /**
+     * Known movies by TMDB id, the least recently used first
+     */
+    private final Map<Integer, Movie> mMovies = new LinkedHashMap<Integer, Movie>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Movie> eldest) {
+            return size() > MAX_MOVIES;
+        }
+    };
+
+    private MovieRepository(Context context) {
+        mMovieStore = MovieStore.getInstance(context);
+    }
+
+    /**
+     * Returns the repository shared by the whole application.
+     */
+    public static synchronized MovieRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MovieRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the movie with the given id if it is in memory, null otherwise.
+     * Can be called from the main thread.
+     */
+    public synchronized Movie getMovie(int id) {
+        return mMovies.get(id);
+    }
+
+    /**
+     * Returns the movie with the given id, from memory or else from the store,
+     * null if it was never stored. Must be called from a background thread.
+     */
+    public Movie loadMovie(int id) {
+        Movie movie = getMovie(id);
+        if (movie != null) {
+            return movie;
+        }
+        movie = mMovieStore.getMovie(id);
+        if (movie == null) {
+            return null;
+        }
+        synchronized (this) {
+            // The movie may have been loaded from the server meanwhile
+            Movie known = mMovies.get(id);
+            if (known != null) {
+                return known;
+            }
+            mMovies.put(id, movie);
+            return movie;
+        }
+    }
+
+    /**
+     * Adds movies just loaded from the server, replacing the known ones whose content changed.
+     *
+     * @return the given movies, each replaced by the known instance if it has the same content
+     */
+    public synchronized List<Movie> putMovies(List<Movie> movies) {
+        List<Movie> known = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            Movie current = mMovies.get(movie.getId());
+            if (current != null && current.hasSameContent(movie)) {
+                known.add(current);
+            } else {
+                mMovies.put(movie.getId(), movie);
+                known.add(movie);
+            }
+        }
+        return known;
+    }
+
+    /**
+     * Adds older copies of movies, e.g. read from the store or a stale response:
+     * a movie already in memory is more recent and is kept.
+     *
+     * @return the given movies, each replaced by the known instance if there is one
+     */
+    public synchronized List<Movie> putOlderMovies(List<Movie> movies) {
+        List<Movie> known = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            Movie current = mMovies.get(movie.getId());
+            if (current != null) {
+                known.add(current);
+            } else {
+                mMovies.put(movie.getId(), movie);
+                known.add(movie);
+            }
+        }
+        return known;
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.android.popularmovies.data;
+
+import com.example.android.popularmovies.model.Movie;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An in-memory inverted index over the titles and the plots of the movies, so that the
+ * movies seen so far can be searched while typing without any request to the server.
+ * <p>
+ * Movies are added as they are loaded. A query matches the movies that contain all of its
+ * terms, the last term also matching as a prefix while it is being typed. Matches are ranked
+ * by a BM25-like score, where a term in the title weighs more than in the plot.
+ * <p>
+ * The methods are synchronized, movies can be added from a background thread while the
+ * main thread searches.
+ */
+public class MovieSearchIndex {
+
+    /**
+     * Maximum number of results of a search
+     */
+    public static final int MAX_RESULTS = 50;
+
+    /**
+     * The last term only matches as a prefix from this length, shorter prefixes match too
+     * many terms to be useful
+     */
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    /**
+     * An occurrence in the title counts as this many occurrences in the plot
+     */
+    private static final int TITLE_WEIGHT = 4;
+
+    /**
+     * Saturation of the term frequency: the more occurrences, the less each one adds
+     */
+    private static final float K1 = 1.2f;
+
+    /**
+     * Maximum weight of a term in a movie, weights are packed in the low byte of the postings
+     */
+    private static final int MAX_WEIGHT = 0xff;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "he",
+            "her", "his", "in", "is", "it", "its", "of", "on", "or", "she", "that", "the",
+            "their", "they", "this", "to", "was", "who", "with"));
+
+    /**
+     * Postings of every term, sorted so that the terms with a given prefix are contiguous
+     */
+    private final TreeMap<String, Postings> mTerms = new TreeMap<>();
+
+    /**
+     * Indexed movies by document number, null once replaced by a newer version. The postings
+     * of a replaced movie are removed, so that they don't count in the idf of its terms.
+     */
+    private final List<Movie> mDocuments = new ArrayList<>();
+
+    /**
+     * Document number of every indexed movie by TMDB id
+     */
+    private final Map<Integer, Integer> mDocumentIds = new HashMap<>();
+
+    private int mLiveDocuments;
+
+    /**
+     * Scratch arrays of the search, indexed by document number, reused between searches.
+     * A stamp tells whether the value was written by the current query or term.
+     */
+    private int[] mQueryStamps = new int[0];
+    private int[] mTermStamps = new int[0];
+    private int[] mMatchedTerms = new int[0];
+    private float[] mScores = new float[0];
+    private float[] mTermScores = new float[0];
+    private int[] mCandidates = new int[0];
+    private int mCandidateCount;
+    private int mQueryStamp;
+    private int mTermStamp;
+
+    /**
+     * Adds the given movies to the index. A movie that is already indexed is indexed again
+     * only if its title or plot changed.
+     */
+    public synchronized void addAll(Collection<Movie> movies) {
+        for (Movie movie : movies) {
+            add(movie);
+        }
+    }
+
+    /**
+     * Adds the given movies that aren't indexed yet, e.g. older copies read from the store.
+     */
+    public synchronized void addAbsent(Collection<Movie> movies) {
+        for (Movie movie : movies) {
+            if (!mDocumentIds.containsKey(movie.getId())) {
+                add(movie);
+            }
+        }
+    }
+
+    /**
+     * Adds the given movie to the index, see {@link #addAll(Collection)}.
+     */
+    public synchronized void add(Movie movie) {
+        Integer previous = mDocumentIds.get(movie.getId());
+        if (previous != null) {
+            Movie indexed = mDocuments.get(previous);
+            if (equal(indexed.getTitle(), movie.getTitle()) && equal(indexed.getPlot(), movie.getPlot())) {
+                // Keep the latest values of the other fields
+                mDocuments.set(previous, movie);
+                return;
+            }
+            remove(previous, indexed);
+        }
+
+        int document = mDocuments.size();
+        mDocuments.add(movie);
+        mDocumentIds.put(movie.getId(), document);
+        mLiveDocuments++;
+
+        for (Map.Entry<String, Integer> entry : weights(movie).entrySet()) {
+            Postings postings = mTerms.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings();
+                mTerms.put(entry.getKey(), postings);
+            }
+            postings.add(document, Math.min(MAX_WEIGHT, entry.getValue()));
+        }
+    }
+
+    /**
+     * Removes the postings of the given document, and the terms left without any.
+     */
+    private void remove(int document, Movie movie) {
+        mDocuments.set(document, null);
+        mLiveDocuments--;
+        for (String term : weights(movie).keySet()) {
+            Postings postings = mTerms.get(term);
+            postings.remove(document);
+            if (postings.mSize == 0) {
+                mTerms.remove(term);
+            }
+        }
+    }
+
+    /**
+     * Returns the weight of every term of the given movie.
+     */
+    private static Map<String, Integer> weights(Movie movie) {
+        Map<String, Integer> weights = new HashMap<>();
+        addWeights(weights, movie.getTitle(), TITLE_WEIGHT);
+        addWeights(weights, movie.getPlot(), 1);
+        return weights;
+    }
+
+    /**
+     * Returns the number of movies that can be found.
+     */
+    public synchronized int size() {
+        return mLiveDocuments;
+    }
+
+    /**
+     * Returns the number of distinct terms in the index.
+     */
+    public synchronized int getTermCount() {
+        return mTerms.size();
+    }
+
+    /**
+     * Returns the movies matching all the terms of the given query, best matches first.
+     * Unless the query ends with a space, its last term also matches the words it starts.
+     */
+    public synchronized List<Movie> search(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+        ensureScratchCapacity();
+
+        int queryStamp = ++mQueryStamp;
+        mCandidateCount = 0;
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            boolean prefix = lastIsPrefix && i == terms.size() - 1 && term.length() >= MIN_PREFIX_LENGTH;
+            boolean matched;
+            if (prefix) {
+                matched = false;
+                int termStamp = ++mTermStamp;
+                SortedMap<String, Postings> expansions = mTerms.subMap(term, term + Character.MAX_VALUE);
+                for (Postings postings : expansions.values()) {
+                    matched |= score(postings, i, queryStamp, termStamp);
+                }
+            } else {
+                Postings postings = mTerms.get(term);
+                matched = postings != null && score(postings, i, queryStamp, ++mTermStamp);
+            }
+            if (!matched) {
+                // Every term has to match
+                return Collections.emptyList();
+            }
+        }
+        return topResults(queryStamp, terms.size());
+    }
+
+    /**
+     * Scores the postings of one term, or of one of the expansions of a prefix, for the
+     * documents that matched all the previous terms of the query.
+     *
+     * @return true if at least one document matched
+     */
+    private boolean score(Postings postings, int termIndex, int queryStamp, int termStamp) {
+        float idf = idf(postings.mSize);
+        boolean matched = false;
+        int[] entries = postings.mEntries;
+        for (int j = 0; j < postings.mSize; j++) {
+            int document = entries[j] >>> 8;
+            int weight = entries[j] & MAX_WEIGHT;
+            float score = idf * weight * (K1 + 1) / (weight + K1);
+
+            if (mTermStamps[document] == termStamp) {
+                // Already matched by another expansion of the prefix, keep the best one
+                if (score > mTermScores[document]) {
+                    mScores[document] += score - mTermScores[document];
+                    mTermScores[document] = score;
+                }
+                continue;
+            }
+            if (termIndex == 0) {
+                mQueryStamps[document] = queryStamp;
+                mMatchedTerms[document] = 0;
+                mScores[document] = 0;
+                mCandidates[mCandidateCount++] = document;
+            } else if (mQueryStamps[document] != queryStamp || mMatchedTerms[document] != termIndex) {
+                // Didn't match one of the previous terms
+                continue;
+            }
+            mTermStamps[document] = termStamp;
+            mTermScores[document] = score;
+            mScores[document] += score;
+            mMatchedTerms[document] = termIndex + 1;
+            matched = true;
+        }
+        return matched;
+    }
+
+    /**
+     * Returns the {@link #MAX_RESULTS} best candidates that matched every term.
+     */
+    private List<Movie> topResults(int queryStamp, int termCount) {
+        int[] top = new int[MAX_RESULTS];
+        int topSize = 0;
+        for (int i = 0; i < mCandidateCount; i++) {
+            int document = mCandidates[i];
+            if (mQueryStamps[document] != queryStamp || mMatchedTerms[document] != termCount) {
+                continue;
+            }
+            float score = mScores[document];
+            if (topSize == MAX_RESULTS && score <= mScores[top[topSize - 1]]) {
+                continue;
+            }
+            // Insertion into the sorted top, ties keep the order the movies were added in
+            int position = topSize < MAX_RESULTS ? topSize++ : topSize - 1;
+            while (position > 0 && mScores[top[position - 1]] < score) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = document;
+        }
+
+        List<Movie> results = new ArrayList<>(topSize);
+        for (int i = 0; i < topSize; i++) {
+            results.add(mDocuments.get(top[i]));
+        }
+        return results;
+    }
+
+    private float idf(int documentFrequency) {
+        return (float) Math.log(1 + (mLiveDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private void ensureScratchCapacity() {
+        int documents = mDocuments.size();
+        if (mScores.length >= documents) {
+            return;
+        }
+        int capacity = Math.max(documents, mScores.length * 2);
+        mQueryStamps = Arrays.copyOf(mQueryStamps, capacity);
+        mTermStamps = Arrays.copyOf(mTermStamps, capacity);
+        mMatchedTerms = Arrays.copyOf(mMatchedTerms, capacity);
+        mScores = Arrays.copyOf(mScores, capacity);
+        mTermScores = Arrays.copyOf(mTermScores, capacity);
+        mCandidates = Arrays.copyOf(mCandidates, capacity);
+    }
+
+    private static void addWeights(Map<String, Integer> weights, String text, int weight) {
+        for (String term : tokenize(text)) {
+            Integer current = weights.get(term);
+            weights.put(term, current == null ? weight : current + weight);
+        }
+    }
+
+    /**
+     * Splits the given text into lower case terms without accents, dropping the stop words.
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < normalized.length(); i++) {
+            if (normalized.charAt(i) > 0x7f) {
+                // Strip the accents, so that a query typed without them still matches
+                normalized = Normalizer.normalize(normalized, Normalizer.Form.NFD)
+                        .replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
+                break;
+            }
+        }
+
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letterOrDigit = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letterOrDigit && start == -1) {
+                start = i;
+            } else if (!letterOrDigit && start != -1) {
+                String term = normalized.substring(start, i);
+                if (!STOP_WORDS.contains(term)) {
+                    terms.add(term);
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Documents containing a term, each packed in an int with the document number in the
+     * high 24 bits and the weight of the term in the low 8 bits, sorted by document number.
+     */
+    private static class Postings {
+        int[] mEntries = new int[2];
+        int mSize;
+
+        void add(int document, int weight) {
+            if (mSize == mEntries.length) {
+                mEntries = Arrays.copyOf(mEntries, mSize * 2);
+            }
+            mEntries[mSize++] = document << 8 | weight;
+        }
+
+        void remove(int document) {
+            int low = 0;
+            int high = mSize - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int current = mEntries[middle] >>> 8;
+                if (current < document) {
+                    low = middle + 1;
+                } else if (current > document) {
+                    high = middle - 1;
+                } else {
+                    System.arraycopy(mEntries, middle + 1, mEntries, middle, mSize - middle - 1);
+                    mSize--;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.android.popularmovies.data;
+
+import com.example.android.popularmovies.model.Movie;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A compact binary copy of the first movies of a list, read on the main thread at launch so
+ * that the grid shows posters in its first frame, before the {@link MovieStore} is opened.
+ * <p>
+ * The file has a versioned header, then one fixed-width column per numeric field, one column
+ * of string indexes per text field, and a string table: the offsets of the strings, then
+ * their UTF-8 bytes. Identical strings are stored once. All numbers are big-endian.
+ * <pre>
+ * magic, version, movie count, string count          4 x int
+ * id, release day                                    int[count] each
+ * vote                                               double[count]
+ * title, poster path, overview, -1 for null          int[count] each
+ * string offsets, from the start of the bytes        int[string count + 1]
+ * string bytes                                       UTF-8
+ * </pre>
+ * The file is memory-mapped instead of read, and the snapshot is a list that decodes a
+ * {@link Movie} the first time it is asked for, so only the rows bound pay for their strings.
+ * The ids are unique, so that the grid can show the snapshot as it is.
+ * <p>
+ * The file is written to a temporary file then renamed, so a snapshot is either complete
+ * or missing, and a mapped snapshot keeps reading the file it was opened on. A snapshot
+ * that can't be read is ignored, the store has the same movies.
+ */
+public class MovieSnapshot extends AbstractList<Movie> implements RandomAccess {
+
+    /**
+     * "PMSS", so that any other file is ignored
+     */
+    private static final int MAGIC = 0x504d5353;
+
+    /**
+     * A snapshot of another version of the format is ignored
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_BYTES = 4 * 4;
+    private static final int NO_STRING = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mStringCount;
+
+    /**
+     * Start of every column, in bytes from the start of the file
+     */
+    private final int mIds;
+    private final int mReleaseDays;
+    private final int mVotes;
+    private final int mTitles;
+    private final int mImages;
+    private final int mPlots;
+    private final int mStringOffsets;
+    private final int mStringBytes;
+
+    /**
+     * The movies decoded so far, so that every row is decoded once and keeps its instance
+     */
+    private final Movie[] mMovies;
+
+    private MovieSnapshot(ByteBuffer buffer, int count, int stringCount) {
+        mBuffer = buffer;
+        mCount = count;
+        mStringCount = stringCount;
+        mIds = HEADER_BYTES;
+        mReleaseDays = mIds + 4 * count;
+        mVotes = mReleaseDays + 4 * count;
+        mTitles = mVotes + 8 * count;
+        mImages = mTitles + 4 * count;
+        mPlots = mImages + 4 * count;
+        mStringOffsets = mPlots + 4 * count;
+        mStringBytes = mStringOffsets + 4 * (stringCount + 1);
+        mMovies = new Movie[count];
+    }
+
+    /**
+     * Writes the first movies of a list, replacing the previous snapshot. A movie that comes
+     * again in the list is only kept the first time.
+     *
+     * @param maxMovies number of movies kept, enough to fill the first screen
+     */
+    public static void write(File file, List<Movie> list, int maxMovies) throws IOException {
+        List<Movie> movies = new ArrayList<>(Math.min(maxMovies, list.size()));
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < list.size() && movies.size() < maxMovies; i++) {
+            if (ids.add(list.get(i).getId())) {
+                movies.add(list.get(i));
+            }
+        }
+        int count = movies.size();
+
+        // Build the string table first, the columns refer to it by index
+        List<byte[]> strings = new ArrayList<>();
+        Map<String, Integer> indexes = new HashMap<>();
+        int[] titles = new int[count];
+        int[] images = new int[count];
+        int[] plots = new int[count];
+        for (int i = 0; i < count; i++) {
+            Movie movie = movies.get(i);
+            titles[i] = indexOf(movie.getTitle(), strings, indexes);
+            images[i] = indexOf(movie.getImage(), strings, indexes);
+            plots[i] = indexOf(movie.getPlot(), strings, indexes);
+        }
+
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary), BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(count);
+            out.writeInt(strings.size());
+            for (int i = 0; i < count; i++) {
+                out.writeInt(movies.get(i).getId());
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeInt(movies.get(i).getReleaseDay());
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeDouble(movies.get(i).getVote());
+            }
+            writeInts(out, titles);
+            writeInts(out, images);
+            writeInts(out, plots);
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] string : strings) {
+                offset += string.length;
+                out.writeInt(offset);
+            }
+            for (byte[] string : strings) {
+                out.write(string);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Can't rename " + temporary + " to " + file);
+        }
+    }
+
+    /**
+     * Maps the given snapshot, or returns null if there is none or it can't be read.
+     * Only the header and the tables are read, the movies are decoded by {@link #get(int)}.
+     */
+    public static MovieSnapshot open(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid once the file is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                return null;
+            }
+            int count = buffer.getInt(8);
+            int stringCount = buffer.getInt(12);
+            // The columns take 28 bytes per movie
+            long stringBytes = HEADER_BYTES + 28L * count + 4L * (stringCount + 1L);
+            if (count < 0 || stringCount < 0 || stringBytes > size) {
+                return null;
+            }
+            // A snapshot cut short is missing the end of its string table
+            if (stringBytes + buffer.getInt((int) stringBytes - 4) != size) {
+                return null;
+            }
+            MovieSnapshot snapshot = new MovieSnapshot(buffer, count, stringCount);
+            return snapshot.isValid() ? snapshot : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Nothing was written, nothing can be lost
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the ids are unique and every string index and offset points into the
+     * file, so that {@link #get(int)} can't fail on the main thread. No string is decoded.
+     */
+    private boolean isValid() {
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < mCount; i++) {
+            if (!ids.add(getId(i))
+                    || !isStringIndex(mBuffer.getInt(mTitles + 4 * i))
+                    || !isStringIndex(mBuffer.getInt(mImages + 4 * i))
+                    || !isStringIndex(mBuffer.getInt(mPlots + 4 * i))) {
+                return false;
+            }
+        }
+        // The last offset was checked against the size of the file
+        int previous = 0;
+        for (int i = 0; i <= mStringCount; i++) {
+            int offset = mBuffer.getInt(mStringOffsets + 4 * i);
+            if (offset < previous || (i == 0 && offset != 0)) {
+                return false;
+            }
+            previous = offset;
+        }
+        return true;
+    }
+
+    private boolean isStringIndex(int stringIndex) {
+        return stringIndex == NO_STRING || (stringIndex >= 0 && stringIndex < mStringCount);
+    }
+
+    @Override
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the movie at the given position, decoded the first time it is asked for.
+     */
+    @Override
+    public Movie get(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mCount);
+        }
+        synchronized (mMovies) {
+            Movie movie = mMovies[index];
+            if (movie == null) {
+                movie = new Movie(getId(index),
+                        getString(mBuffer.getInt(mTitles + 4 * index)),
+                        mBuffer.getInt(mReleaseDays + 4 * index),
+                        getString(mBuffer.getInt(mImages + 4 * index)),
+                        mBuffer.getDouble(mVotes + 8 * index),
+                        getString(mBuffer.getInt(mPlots + 4 * index)));
+                mMovies[index] = movie;
+            }
+            return movie;
+        }
+    }
+
+    /**
+     * Returns the TMDB id of the movie at the given position, without decoding the movie.
+     */
+    public int getId(int index) {
+        return mBuffer.getInt(mIds + 4 * index);
+    }
+
+    private String getString(int stringIndex) {
+        if (stringIndex == NO_STRING) {
+            return null;
+        }
+        if (stringIndex < 0 || stringIndex >= mStringCount) {
+            throw new IllegalStateException("No string " + stringIndex + " in the snapshot");
+        }
+        int start = mBuffer.getInt(mStringOffsets + 4 * stringIndex);
+        int end = mBuffer.getInt(mStringOffsets + 4 * (stringIndex + 1));
+        byte[] bytes = new byte[end - start];
+        // Absolute reads only, a duplicate has its own position
+        ByteBuffer string = mBuffer.duplicate();
+        string.position(mStringBytes + start);
+        string.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static int indexOf(String string, List<byte[]> strings, Map<String, Integer> indexes) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer index = indexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string.getBytes(UTF_8));
+            indexes.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+}
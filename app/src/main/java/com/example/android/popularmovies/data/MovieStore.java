@@ -0,0 +1,243 @@
+package com.example.android.popularmovies.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.popularmovies.data.MovieContract.MovieEntry;
+import com.example.android.popularmovies.data.MovieContract.PosterColorEntry;
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.ReleaseDates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The local copy of the movie lists loaded from The Movie Database, so that the grid can
+ * be shown straight away on launch and without a connection.
+ * <p>
+ * Every method does disk I/O and must be called from a background thread.
+ */
+public class MovieStore {
+
+    private static final String INSERT_MOVIE = "INSERT OR REPLACE INTO " + MovieEntry.TABLE_NAME + " ("
+            + MovieEntry.COLUMN_LIST + ", "
+            + MovieEntry.COLUMN_RANK + ", "
+            + MovieEntry.COLUMN_MOVIE_ID + ", "
+            + MovieEntry.COLUMN_TITLE + ", "
+            + MovieEntry.COLUMN_RELEASE_DATE + ", "
+            + MovieEntry.COLUMN_POSTER_PATH + ", "
+            + MovieEntry.COLUMN_VOTE_AVERAGE + ", "
+            + MovieEntry.COLUMN_OVERVIEW + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String[] MOVIE_COLUMNS = {
+            MovieEntry.COLUMN_MOVIE_ID,
+            MovieEntry.COLUMN_TITLE,
+            MovieEntry.COLUMN_RELEASE_DATE,
+            MovieEntry.COLUMN_POSTER_PATH,
+            MovieEntry.COLUMN_VOTE_AVERAGE,
+            MovieEntry.COLUMN_OVERVIEW
+    };
+
+    private static final String INSERT_POSTER_COLOR = "INSERT OR REPLACE INTO " + PosterColorEntry.TABLE_NAME
+            + " (" + PosterColorEntry.COLUMN_POSTER_PATH + ", " + PosterColorEntry.COLUMN_COLOR + ") VALUES (?, ?)";
+
+    /**
+     * Poster colors kept, the ones stored the longest ago are deleted first
+     */
+    private static final int MAX_POSTER_COLORS = 2000;
+
+    /**
+     * A replaced row gets a new id, so the oldest ids are the colors stored the longest ago
+     */
+    private static final String DELETE_OLD_POSTER_COLORS = "DELETE FROM " + PosterColorEntry.TABLE_NAME
+            + " WHERE " + PosterColorEntry._ID + " <= (SELECT MAX(" + PosterColorEntry._ID + ") - "
+            + MAX_POSTER_COLORS + " FROM " + PosterColorEntry.TABLE_NAME + ")";
+
+    private static MovieStore sInstance;
+
+    private final MovieDbHelper mDbHelper;
+
+    private MovieStore(Context context) {
+        mDbHelper = new MovieDbHelper(context.getApplicationContext());
+    }
+
+    /**
+     * Returns the store shared by the whole application.
+     */
+    public static synchronized MovieStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MovieStore(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the stored movies of the given list in rank order,
+     * or an empty list if the list was never stored.
+     *
+     * @param list endpoint of the movie list, e.g. "movie/popular"
+     */
+    public List<Movie> getMovies(String list) {
+        List<Movie> movies = new ArrayList<>();
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(MovieEntry.TABLE_NAME, MOVIE_COLUMNS,
+                MovieEntry.COLUMN_LIST + " = ?", new String[]{list},
+                null, null, MovieEntry.COLUMN_RANK);
+        try {
+            readMovies(cursor, movies);
+        } finally {
+            cursor.close();
+        }
+        return movies;
+    }
+
+    /**
+     * Returns the stored movie with the given TMDB id, from whichever list it is in,
+     * or null if it isn't stored.
+     */
+    public Movie getMovie(int id) {
+        List<Movie> movies = new ArrayList<>(1);
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(MovieEntry.TABLE_NAME, MOVIE_COLUMNS,
+                MovieEntry.COLUMN_MOVIE_ID + " = ?", new String[]{String.valueOf(id)},
+                null, null, null, "1");
+        try {
+            readMovies(cursor, movies);
+        } finally {
+            cursor.close();
+        }
+        return movies.isEmpty() ? null : movies.get(0);
+    }
+
+    private static void readMovies(Cursor cursor, List<Movie> movies) {
+        int idIndex = cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_MOVIE_ID);
+        int titleIndex = cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_TITLE);
+        int dateIndex = cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_RELEASE_DATE);
+        int posterIndex = cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_POSTER_PATH);
+        int voteIndex = cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_VOTE_AVERAGE);
+        int overviewIndex = cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_OVERVIEW);
+        while (cursor.moveToNext()) {
+            movies.add(new Movie(
+                    cursor.getInt(idIndex),
+                    cursor.getString(titleIndex),
+                    cursor.isNull(dateIndex) ? ReleaseDates.UNKNOWN : cursor.getInt(dateIndex),
+                    cursor.getString(posterIndex),
+                    cursor.isNull(voteIndex) ? Double.NaN : cursor.getDouble(voteIndex),
+                    cursor.getString(overviewIndex)));
+        }
+    }
+
+    /**
+     * Replaces the stored movies of the given list, in a single transaction.
+     */
+    public void replaceMovies(String list, List<Movie> movies) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(MovieEntry.TABLE_NAME, MovieEntry.COLUMN_LIST + " = ?", new String[]{list});
+            insertMovies(db, list, 0, movies);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Adds movies at the end of the given list, in a single transaction.
+     */
+    public void appendMovies(String list, List<Movie> movies) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int firstRank = (int) DatabaseUtils.queryNumEntries(db, MovieEntry.TABLE_NAME,
+                    MovieEntry.COLUMN_LIST + " = ?", new String[]{list});
+            insertMovies(db, list, firstRank, movies);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Inserts the movies with consecutive ranks, reusing one compiled statement.
+     */
+    private static void insertMovies(SQLiteDatabase db, String list, int firstRank, List<Movie> movies) {
+        SQLiteStatement insert = db.compileStatement(INSERT_MOVIE);
+        try {
+            for (int i = 0; i < movies.size(); i++) {
+                Movie movie = movies.get(i);
+                insert.clearBindings();
+                insert.bindString(1, list);
+                insert.bindLong(2, firstRank + i);
+                insert.bindLong(3, movie.getId());
+                insert.bindString(4, movie.getTitle());
+                if (movie.getReleaseDay() == ReleaseDates.UNKNOWN) {
+                    insert.bindNull(5);
+                } else {
+                    insert.bindLong(5, movie.getReleaseDay());
+                }
+                bindStringOrNull(insert, 6, movie.getImage());
+                insert.bindDouble(7, movie.getVote());
+                bindStringOrNull(insert, 8, movie.getPlot());
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Returns the stored dominant colors of the posters, by poster path.
+     */
+    public Map<String, Integer> getPosterColors() {
+        Map<String, Integer> colors = new HashMap<>();
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(PosterColorEntry.TABLE_NAME,
+                new String[]{PosterColorEntry.COLUMN_POSTER_PATH, PosterColorEntry.COLUMN_COLOR},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                colors.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return colors;
+    }
+
+    /**
+     * Stores the dominant colors of the given posters, and deletes the oldest colors
+     * beyond {@link #MAX_POSTER_COLORS}, in a single transaction.
+     */
+    public void putPosterColors(Map<String, Integer> colors) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement(INSERT_POSTER_COLOR);
+        try {
+            for (Map.Entry<String, Integer> color : colors.entrySet()) {
+                insert.clearBindings();
+                insert.bindString(1, color.getKey());
+                insert.bindLong(2, color.getValue());
+                insert.executeInsert();
+            }
+            db.execSQL(DELETE_OLD_POSTER_COLORS);
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+    }
+}
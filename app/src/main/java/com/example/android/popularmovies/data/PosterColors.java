@@ -0,0 +1,71 @@
+package com.example.android.popularmovies.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The dominant colors of the posters shown so far, by poster path, so that the grid can fill
+ * a cell with the color of its poster while the poster loads. They are read from the
+ * {@link MovieStore} once, and the new ones are written back in batches by {@link MovieLists}.
+ * <p>
+ * Thread-safe. Looking a color up doesn't allocate, it is done on every bind.
+ */
+public class PosterColors {
+
+    /**
+     * Returned for a poster whose color isn't known, no poster color is transparent
+     */
+    public static final int NO_COLOR = 0;
+
+    private final Map<String, Integer> mColors = new HashMap<>();
+
+    /**
+     * Colors added since the last time they were written to the store
+     */
+    private Map<String, Integer> mUnsaved = new HashMap<>();
+
+    /**
+     * Returns the dominant color of the given poster, or {@link #NO_COLOR}.
+     */
+    public synchronized int get(String posterPath) {
+        Integer color = mColors.get(posterPath);
+        return color != null ? color : NO_COLOR;
+    }
+
+    /**
+     * Adds the color of a poster. Returns true if it is the first color waiting to be
+     * written, so that a single write is scheduled for the whole batch.
+     */
+    synchronized boolean put(String posterPath, int color) {
+        Integer previous = mColors.put(posterPath, color);
+        if (previous != null && previous == color) {
+            return false;
+        }
+        mUnsaved.put(posterPath, color);
+        return mUnsaved.size() == 1;
+    }
+
+    /**
+     * Returns the colors waiting to be written, and forgets them.
+     */
+    synchronized Map<String, Integer> takeUnsaved() {
+        Map<String, Integer> unsaved = mUnsaved;
+        mUnsaved = new HashMap<>();
+        return unsaved;
+    }
+
+    /**
+     * Adds the stored colors, except for the posters whose color was found meanwhile.
+     */
+    synchronized void putAbsent(Map<String, Integer> colors) {
+        for (Map.Entry<String, Integer> color : colors.entrySet()) {
+            if (!mColors.containsKey(color.getKey())) {
+                mColors.put(color.getKey(), color.getValue());
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return mColors.size();
+    }
+}
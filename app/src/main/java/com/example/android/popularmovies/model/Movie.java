@@ -1,28 +1,38 @@
 package com.example.android.popularmovies.model;
 
+import com.example.android.popularmovies.utils.ReleaseDates;
+
 import org.parceler.Parcel;
 
 /**
  * A {@link Movie} object contains information related to a single movie.
+ * <p>
+ * Thousands of movies can be held at once, so the fields are kept compact:
+ * the vote is a primitive, the release date is a day number and poster paths are interned.
  */
 @Parcel
 public class Movie {
 
+    /**
+     * Id of the movie on The Movie Database
+     */
+    int mId;
+
     //Title of the movie
     String mTitle;
 
     /**
-     * Date of the movie
+     * Release date of the movie, in days since 1970-01-01, or {@link ReleaseDates#UNKNOWN}
      */
-    String mDate;
+    int mReleaseDay;
 
     //Image of the movie
     String mImage;
 
     /**
-     * Vote of the movie
+     * Vote of the movie, {@link Double#NaN} if it is unknown
      */
-    Double mVote;
+    double mVote;
 
     /**
      * Plot of the movie
@@ -38,19 +48,43 @@ public class Movie {
     /**
      * Constructs a new {@link Movie} object.
      *
+     * @param id  is the TMDB id of the movie
      * @param title  is the title of the movie
-     * @param date  is the date of the movie
+     * @param date  is the release date of the movie, as "yyyy-MM-dd"
      * @param image  is the image of the movie
      * @param vote  is the vote of the movie
      * @param plot is the plot of the movie
      */
-    public Movie(String title, String date, String image, Double vote, String plot) {
+    public Movie(int id, String title, String date, String image, double vote, String plot) {
+        this(id, title, ReleaseDates.parse(date), image, vote, plot);
+    }
+
+    /**
+     * Constructs a new {@link Movie} object.
+     *
+     * @param id         is the TMDB id of the movie
+     * @param title      is the title of the movie
+     * @param releaseDay is the release date of the movie, in days since 1970-01-01
+     * @param image      is the image of the movie
+     * @param vote       is the vote of the movie
+     * @param plot       is the plot of the movie
+     */
+    public Movie(int id, String title, int releaseDay, String image, double vote, String plot) {
+        mId = id;
         mTitle = title;
-        mDate = date;
-        mImage = image;
+        mReleaseDay = releaseDay;
+        // The same poster path is parsed again on every reload and for every list the movie
+        // is in, interned strings are shared and still collected once no movie uses them
+        mImage = image != null ? image.intern() : null;
         mVote = vote;
         mPlot = plot;
+    }
 
+    /**
+     * Returns the TMDB id of the movie
+     */
+    public int getId() {
+        return mId;
     }
 
     /**
@@ -61,10 +95,18 @@ public class Movie {
     }
 
     /**
-     * Returns the date of the movie.
+     * Returns the release date of the movie as "yyyy-MM-dd", or null if it is unknown.
      */
     public String getDate() {
-        return mDate;
+        return ReleaseDates.toIsoString(mReleaseDay);
+    }
+
+    /**
+     * Returns the release date of the movie in days since 1970-01-01,
+     * or {@link ReleaseDates#UNKNOWN}.
+     */
+    public int getReleaseDay() {
+        return mReleaseDay;
     }
 
     /**
@@ -77,7 +119,7 @@ public class Movie {
     /**
      * Returns the vote of the movie
      */
-    public Double getVote() {
+    public double getVote() {
         return mVote;
     }
 
@@ -88,5 +130,20 @@ public class Movie {
         return mPlot;
     }
 
+    /**
+     * Returns true if the given movie has the same values as this one,
+     * i.e. it would be displayed the same way.
+     */
+    public boolean hasSameContent(Movie other) {
+        return mId == other.mId
+                && mReleaseDay == other.mReleaseDay
+                && Double.compare(mVote, other.mVote) == 0
+                && equal(mTitle, other.mTitle)
+                && equal(mImage, other.mImage)
+                && equal(mPlot, other.mPlot);
+    }
 
-}
\ No newline at end of file
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.popularmovies.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The details of a movie that the list endpoints don't return: runtime, genres, videos,
+ * reviews and credits. They are only loaded for the detail screen, see
+ * {@link com.example.android.popularmovies.utils.MovieDetailsFetcher}.
+ */
+public class MovieDetails {
+
+    /**
+     * Id of the movie on The Movie Database
+     */
+    private final int mId;
+
+    /**
+     * Runtime in minutes, 0 if it is unknown
+     */
+    private final int mRuntime;
+
+    private final List<String> mGenres;
+    private final List<String> mDirectors;
+    private final List<CastMember> mCast;
+    private final List<Video> mVideos;
+    private final List<Review> mReviews;
+
+    /**
+     * Constructs a new {@link MovieDetails} object, the lists are kept as they are.
+     */
+    public MovieDetails(int id, int runtime, List<String> genres, List<String> directors,
+                        List<CastMember> cast, List<Video> videos, List<Review> reviews) {
+        mId = id;
+        mRuntime = runtime;
+        mGenres = Collections.unmodifiableList(genres);
+        mDirectors = Collections.unmodifiableList(directors);
+        mCast = Collections.unmodifiableList(cast);
+        mVideos = Collections.unmodifiableList(videos);
+        mReviews = Collections.unmodifiableList(reviews);
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public int getRuntime() {
+        return mRuntime;
+    }
+
+    public List<String> getGenres() {
+        return mGenres;
+    }
+
+    public List<String> getDirectors() {
+        return mDirectors;
+    }
+
+    /**
+     * Returns the top billed actors, in billing order.
+     */
+    public List<CastMember> getCast() {
+        return mCast;
+    }
+
+    /**
+     * Returns the trailers and other clips hosted on YouTube.
+     */
+    public List<Video> getVideos() {
+        return mVideos;
+    }
+
+    public List<Review> getReviews() {
+        return mReviews;
+    }
+
+    /**
+     * An actor and the character they play.
+     */
+    public static class CastMember {
+        private final String mName;
+        private final String mCharacter;
+
+        public CastMember(String name, String character) {
+            mName = name;
+            mCharacter = character;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getCharacter() {
+            return mCharacter;
+        }
+    }
+
+    /**
+     * A video hosted on YouTube, e.g. a trailer.
+     */
+    public static class Video {
+        private final String mName;
+        private final String mKey;
+        private final String mType;
+
+        public Video(String name, String key, String type) {
+            mName = name;
+            mKey = key;
+            mType = type;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Returns the YouTube id of the video.
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Returns the kind of video, e.g. "Trailer" or "Teaser".
+         */
+        public String getType() {
+            return mType;
+        }
+    }
+
+    /**
+     * A review written by a TMDB user.
+     */
+    public static class Review {
+        private final String mAuthor;
+        private final String mContent;
+        private final String mUrl;
+
+        public Review(String author, String content, String url) {
+            mAuthor = author;
+            mContent = content;
+            mUrl = url;
+        }
+
+        public String getAuthor() {
+            return mAuthor;
+        }
+
+        public String getContent() {
+            return mContent;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+    }
+}
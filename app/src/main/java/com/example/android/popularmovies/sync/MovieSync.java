@@ -0,0 +1,226 @@
+package com.example.android.popularmovies.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.net.TrafficStats;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.example.android.popularmovies.R;
+import com.example.android.popularmovies.data.MovieLists;
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.PosterUrlResolver;
+import com.example.android.popularmovies.utils.QueryUtils;
+import com.example.android.popularmovies.utils.RequestGate;
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.MemoryPolicy;
+import com.squareup.picasso.Picasso;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Refreshes the movie lists and downloads the posters at the top of every list, so that the
+ * first screen after launch is already fresh. The work stops as soon as it has used up its
+ * byte or time budget, both set in integers.xml.
+ * <p>
+ * The duration and the bytes of every run are kept in the "movie_sync" preferences.
+ */
+public class MovieSync {
+
+    private static final String LOG_TAG = MovieSync.class.getSimpleName();
+
+    private static final String PREFS_NAME = "movie_sync";
+    private static final String PREF_RUN_COUNT = "run_count";
+    private static final String PREF_LAST_RUN_AT = "last_run_at";
+    private static final String PREF_LAST_DURATION_MILLIS = "last_duration_millis";
+    private static final String PREF_LAST_BYTES = "last_bytes";
+    private static final String PREF_LAST_LISTS = "last_lists";
+    private static final String PREF_LAST_POSTERS = "last_posters";
+    private static final String PREF_LAST_COMPLETE = "last_complete";
+    private static final String PREF_TOTAL_BYTES = "total_bytes";
+
+    /**
+     * Columns of the movie grid, see {@link com.example.android.popularmovies.MovieListActivity}
+     */
+    private static final int GRID_COLUMNS = 2;
+
+    private final Context mContext;
+    private final long mByteBudget;
+    private final long mTimeBudgetMillis;
+    private final int mPostersPerList;
+
+    private long mStartTime;
+    private long mStartBytes;
+    private int mLists;
+    private int mPosters;
+
+    public MovieSync(Context context) {
+        mContext = context.getApplicationContext();
+        Resources resources = mContext.getResources();
+        mByteBudget = resources.getInteger(R.integer.sync_byte_budget_kb) * 1024L;
+        mTimeBudgetMillis = resources.getInteger(R.integer.sync_time_budget_seconds) * 1000L;
+        mPostersPerList = resources.getInteger(R.integer.sync_posters_per_list);
+    }
+
+    /**
+     * Runs the sync on the calling thread, which must be a background thread.
+     *
+     * @return true if everything was refreshed within the budget
+     */
+    public boolean run() {
+        mStartTime = SystemClock.elapsedRealtime();
+        mStartBytes = getTrafficBytes();
+        mLists = 0;
+        mPosters = 0;
+
+        boolean complete = refreshLists() && downloadPosters();
+
+        recordRun(complete);
+        return complete;
+    }
+
+    /**
+     * Loads the first page of every list, fresh cached responses are used as they are.
+     */
+    private boolean refreshLists() {
+        MovieLists movieLists = MovieLists.getInstance(mContext);
+        for (String endpoint : MovieLists.ENDPOINTS) {
+            if (isOverBudget()) {
+                return false;
+            }
+            List<Movie> movies = QueryUtils.fetchMovieData(
+                    QueryUtils.buildMoviesUrl(endpoint, QueryUtils.FIRST_PAGE),
+                    RequestGate.Priority.SYNC);
+            if (movies != null && !movies.isEmpty()) {
+                movieLists.refreshFirstPage(endpoint, movies);
+                mLists++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Downloads the posters of the first rows of every list, in the size shown in the grid,
+     * so that they are in the HTTP cache when the app is launched.
+     */
+    private boolean downloadPosters() {
+        MovieLists movieLists = MovieLists.getInstance(mContext);
+        PosterUrlResolver posterUrlResolver = PosterUrlResolver.getInstance(mContext);
+        int posterWidth = getGridPosterWidth();
+        Picasso picasso = Picasso.with(mContext);
+
+        for (String endpoint : MovieLists.ENDPOINTS) {
+            List<Movie> movies = movieLists.getWarmList(endpoint);
+            if (movies == null) {
+                continue;
+            }
+            int count = Math.min(mPostersPerList, movies.size());
+            for (int i = 0; i < count; i++) {
+                if (isOverBudget()) {
+                    return false;
+                }
+                String url = posterUrlResolver.getPosterUrl(movies.get(i).getImage(), posterWidth);
+                if (fetchPoster(picasso, url)) {
+                    mPosters++;
+                } else {
+                    Log.w(LOG_TAG, "Problem downloading the poster " + url);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Downloads the given poster into the HTTP cache and waits for it, within the time budget.
+     * The bitmap itself isn't needed: Picasso can't download without decoding, so the poster
+     * is decoded at the smallest sample size and isn't kept in the memory cache.
+     *
+     * @return true if the poster was downloaded
+     */
+    private boolean fetchPoster(Picasso picasso, String url) {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean success = new AtomicBoolean();
+        picasso.load(url)
+                .resize(1, 1)
+                .memoryPolicy(MemoryPolicy.NO_CACHE, MemoryPolicy.NO_STORE)
+                .priority(Picasso.Priority.LOW)
+                .fetch(new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        success.set(true);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError() {
+                        done.countDown();
+                    }
+                });
+        try {
+            long remaining = mTimeBudgetMillis - (SystemClock.elapsedRealtime() - mStartTime);
+            done.await(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // The job was stopped, isOverBudget() tells the loop
+            Thread.currentThread().interrupt();
+        }
+        return success.get();
+    }
+
+    /**
+     * Returns the width of a poster in the grid in portrait, the grid isn't laid out here.
+     */
+    private int getGridPosterWidth() {
+        DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+        return Math.min(metrics.widthPixels, metrics.heightPixels) / GRID_COLUMNS;
+    }
+
+    private boolean isOverBudget() {
+        if (Thread.currentThread().isInterrupted()) {
+            // The job was stopped
+            return true;
+        }
+        return SystemClock.elapsedRealtime() - mStartTime >= mTimeBudgetMillis
+                || getTrafficBytes() - mStartBytes >= mByteBudget;
+    }
+
+    /**
+     * Returns the bytes received and sent by the app so far, 0 if the device doesn't count them.
+     */
+    private static long getTrafficBytes() {
+        int uid = Process.myUid();
+        long received = TrafficStats.getUidRxBytes(uid);
+        long sent = TrafficStats.getUidTxBytes(uid);
+        if (received == TrafficStats.UNSUPPORTED || sent == TrafficStats.UNSUPPORTED) {
+            return 0;
+        }
+        return received + sent;
+    }
+
+    private void recordRun(boolean complete) {
+        long duration = SystemClock.elapsedRealtime() - mStartTime;
+        long bytes = getTrafficBytes() - mStartBytes;
+
+        SharedPreferences prefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putInt(PREF_RUN_COUNT, prefs.getInt(PREF_RUN_COUNT, 0) + 1)
+                .putLong(PREF_LAST_RUN_AT, System.currentTimeMillis())
+                .putLong(PREF_LAST_DURATION_MILLIS, duration)
+                .putLong(PREF_LAST_BYTES, bytes)
+                .putInt(PREF_LAST_LISTS, mLists)
+                .putInt(PREF_LAST_POSTERS, mPosters)
+                .putBoolean(PREF_LAST_COMPLETE, complete)
+                .putLong(PREF_TOTAL_BYTES, prefs.getLong(PREF_TOTAL_BYTES, 0) + bytes)
+                .apply();
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Sync %s in %d ms, %d bytes, %d lists, %d posters",
+                complete ? "complete" : "stopped", duration, bytes, mLists, mPosters));
+    }
+}
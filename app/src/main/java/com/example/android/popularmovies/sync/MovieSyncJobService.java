@@ -0,0 +1,96 @@
+package com.example.android.popularmovies.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link MovieSync} in the background while the device is charging on an unmetered
+ * network, so that the lists and the first posters are fresh when the app is launched.
+ * <p>
+ * JobScheduler is only available from Lollipop, older devices only load while the app is open.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MovieSyncJobService extends JobService {
+
+    private static final int JOB_ID = 1001;
+
+    /**
+     * How often the sync runs at most, the constraints decide when exactly
+     */
+    private static final long SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    private SyncTask mSyncTask;
+
+    /**
+     * Schedules the periodic sync, unless it is already scheduled or the device is too old.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, MovieSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(SYNC_INTERVAL_MILLIS)
+                .setPersisted(true)
+                .build();
+        jobScheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        mSyncTask = new SyncTask(params);
+        mSyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        // The sync goes on in the background
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints aren't met anymore, interrupt the sync and try again later
+        if (mSyncTask != null) {
+            mSyncTask.cancel(true);
+            mSyncTask = null;
+        }
+        return true;
+    }
+
+    private class SyncTask extends AsyncTask<Void, Void, Boolean> {
+
+        private final JobParameters mParams;
+
+        SyncTask(JobParameters params) {
+            mParams = params;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... voids) {
+            return new MovieSync(MovieSyncJobService.this).run();
+        }
+
+        @Override
+        protected void onPostExecute(Boolean complete) {
+            mSyncTask = null;
+            // A periodic job runs again at the next interval anyway
+            jobFinished(mParams, false);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android.popularmovies.utils;
+
+import android.graphics.Bitmap;
+
+/**
+ * Finds the dominant color of a poster from a grid of pixels sampled across it: the pixels
+ * are grouped by color, 16 levels per channel, and the average of the largest group wins.
+ * The average of every pixel would be a muddy color that isn't in the poster.
+ * <p>
+ * The buffers are reused, so an instance must only be used from one thread.
+ */
+public class DominantColor {
+
+    /**
+     * Pixels sampled along each side of the poster
+     */
+    private static final int GRID = 8;
+
+    /**
+     * Bits kept of each channel to group the pixels
+     */
+    private static final int LEVEL_BITS = 4;
+
+    private final int[] mPixels = new int[GRID * GRID];
+    private final int[] mCounts = new int[1 << (3 * LEVEL_BITS)];
+
+    /**
+     * Returns the dominant color of the given bitmap, opaque.
+     */
+    public int of(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int count = 0;
+        for (int row = 0; row < GRID; row++) {
+            int y = (2 * row + 1) * height / (2 * GRID);
+            for (int column = 0; column < GRID; column++) {
+                int x = (2 * column + 1) * width / (2 * GRID);
+                mPixels[count++] = bitmap.getPixel(x, y);
+            }
+        }
+        return of(mPixels, count, mCounts);
+    }
+
+    /**
+     * Returns the dominant color of the given ARGB pixels, opaque, or black if there are none.
+     *
+     * @param counts zeroed scratch array of 2^12 entries, zeroed again on return
+     */
+    static int of(int[] pixels, int count, int[] counts) {
+        int dominant = -1;
+        for (int i = 0; i < count; i++) {
+            int group = groupOf(pixels[i]);
+            counts[group]++;
+            if (dominant == -1 || counts[group] > counts[dominant]) {
+                dominant = group;
+            }
+        }
+
+        int red = 0;
+        int green = 0;
+        int blue = 0;
+        int members = 0;
+        for (int i = 0; i < count; i++) {
+            int pixel = pixels[i];
+            int group = groupOf(pixel);
+            counts[group] = 0;
+            if (group == dominant) {
+                red += (pixel >> 16) & 0xff;
+                green += (pixel >> 8) & 0xff;
+                blue += pixel & 0xff;
+                members++;
+            }
+        }
+        if (members == 0) {
+            return 0xff000000;
+        }
+        return 0xff000000 | (red / members) << 16 | (green / members) << 8 | blue / members;
+    }
+
+    private static int groupOf(int pixel) {
+        int shift = 8 - LEVEL_BITS;
+        int mask = (1 << LEVEL_BITS) - 1;
+        return ((pixel >> (16 + shift)) & mask) << (2 * LEVEL_BITS)
+                | ((pixel >> (8 + shift)) & mask) << LEVEL_BITS
+                | ((pixel >> shift) & mask);
+    }
+}
@@ -0,0 +1,481 @@
+package com.example.android.popularmovies.utils;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How the GET requests to The Movie Database are sent, so that one slow or failed connection
+ * doesn't stall the screen waiting for it.
+ * <p>
+ * Each attempt runs up to the response headers on a thread of the policy. If no headers
+ * arrived after the 95th percentile of the time to headers of the endpoint, a second hedged
+ * attempt is sent; the first response wins and the other attempt is disconnected. An
+ * attempt that fails, or gets a response worth retrying such as a 503, is retried after an
+ * exponential backoff with full jitter, so that clients failing together don't retry together.
+ * <p>
+ * Every attempt, hedges and retries included, first takes a token from the {@link RequestGate}
+ * for the priority of the request. A hedge is only sent if a token is free right away, and
+ * the Retry-After header of a 429 or 503 response holds the gate back for every request.
+ * <p>
+ * Only idempotent requests may go through the policy, since they can be sent more than once.
+ */
+public class FetchPolicy {
+
+    private static final String LOG_TAG = FetchPolicy.class.getSimpleName();
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_BASE_BACKOFF_MILLIS = 250;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 4000;
+
+    /**
+     * Hedge delay until enough requests of an endpoint have been timed
+     */
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 1500;
+
+    /**
+     * Requests of an endpoint timed before its own percentile is trusted
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * Floor of the hedge delay, so that a fast endpoint isn't hedged on every hiccup
+     */
+    private static final long MIN_HEDGE_DELAY_MILLIS = 100;
+
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    /**
+     * The policy installed for the whole application, created on first use
+     */
+    private static volatile FetchPolicy sInstance;
+
+    private final int mMaxAttempts;
+    private final long mBaseBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final long mDefaultHedgeDelayMillis;
+    private final Random mRandom = new Random();
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool(new AttemptThreadFactory());
+
+    /**
+     * Time to the response headers of the attempts that got one, in microseconds, by endpoint
+     */
+    private final Map<String, LatencyHistogram> mHeaderTimes = new HashMap<>();
+
+    private final AtomicInteger mAttempts = new AtomicInteger();
+    private final AtomicInteger mRetries = new AtomicInteger();
+    private final AtomicInteger mHedges = new AtomicInteger();
+    private final AtomicInteger mHedgeWins = new AtomicInteger();
+
+    /**
+     * Constructs a new {@link FetchPolicy}.
+     *
+     * @param maxAttempts             attempts made before giving up, hedges not included
+     * @param baseBackoffMillis       upper bound of the wait before the first retry, doubled
+     *                                at every retry
+     * @param maxBackoffMillis        upper bound of the wait before any retry
+     * @param defaultHedgeDelayMillis hedge delay of an endpoint with too few requests timed
+     *                                to trust its percentile
+     */
+    public FetchPolicy(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis,
+                       long defaultHedgeDelayMillis) {
+        mMaxAttempts = maxAttempts;
+        mBaseBackoffMillis = baseBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mDefaultHedgeDelayMillis = defaultHedgeDelayMillis;
+    }
+
+    /**
+     * Installs the policy used by {@link QueryUtils}.
+     */
+    public static void install(FetchPolicy policy) {
+        sInstance = policy;
+    }
+
+    /**
+     * Returns the installed policy, creating one with the default settings if none was installed.
+     */
+    public static FetchPolicy getInstance() {
+        if (sInstance == null) {
+            synchronized (FetchPolicy.class) {
+                if (sInstance == null) {
+                    sInstance = new FetchPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF_MILLIS,
+                            DEFAULT_MAX_BACKOFF_MILLIS, DEFAULT_HEDGE_DELAY_MILLIS);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Opens a connection for a single attempt of a request.
+     */
+    public interface Request {
+        /**
+         * Returns a new connection with its request headers set, not connected yet.
+         */
+        HttpURLConnection open() throws IOException;
+    }
+
+    /**
+     * Sends a request for the screen the user is looking at, see
+     * {@link #execute(MovieHttpClient, String, RequestGate.Priority, Request)}.
+     */
+    public Response execute(MovieHttpClient client, String endpoint, Request request)
+            throws IOException {
+        return execute(client, endpoint, RequestGate.Priority.VISIBLE, request);
+    }
+
+    /**
+     * Sends the request until the headers of a response not worth retrying arrive, and
+     * returns that response. The caller reads the body, and must hand the connection back
+     * to {@link MovieHttpClient#release}.
+     * <p>
+     * The attempts that failed are recorded into the {@link NetworkStats}, the returned one
+     * is recorded by the caller once its body has been read.
+     *
+     * @param endpoint timed separately from the other endpoints, e.g. "movie/popular"
+     * @param priority  why the request is made, the less important ones wait or are dropped
+     *                  when there are too many requests
+     * @throws IOException the failure of the last attempt, if none got a response, or the
+     *                     request was dropped by the {@link RequestGate}
+     */
+    public Response execute(MovieHttpClient client, String endpoint, RequestGate.Priority priority,
+                            Request request) throws IOException {
+        RequestGate gate = RequestGate.getInstance();
+        IOException failure = null;
+        for (int attempt = 0; attempt < mMaxAttempts; attempt++) {
+            if (attempt > 0) {
+                mRetries.incrementAndGet();
+                sleep(getBackoffMillis(attempt - 1));
+            }
+            if (!gate.acquire(priority)) {
+                throw new IOException("Too many requests, " + endpoint + " dropped");
+            }
+            try {
+                Response response = executeHedged(client, endpoint, gate, priority, request);
+                onRetryAfter(gate, response);
+                if (!isRetryable(response.mResponseCode) || attempt == mMaxAttempts - 1) {
+                    return response;
+                }
+                Log.w(LOG_TAG, "Retrying " + endpoint + " after response code " + response.mResponseCode);
+                response.mConnection.disconnect();
+                recordFailure(response.mTiming);
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // The caller gave up, e.g. a cancelled loader
+                    throw e;
+                }
+                Log.w(LOG_TAG, "Attempt " + (attempt + 1) + " of " + endpoint + " failed: " + e);
+                failure = e;
+            }
+        }
+        if (failure == null) {
+            failure = new IOException("No attempt made");
+        }
+        throw failure;
+    }
+
+    /**
+     * Sends a first attempt, then a hedged one if the first is slower than usual, and returns
+     * the first response. Throws the last failure if both attempts failed.
+     */
+    private Response executeHedged(MovieHttpClient client, String endpoint, RequestGate gate,
+                                   RequestGate.Priority priority, Request request)
+            throws IOException {
+        BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+        List<Attempt> started = new ArrayList<>(2);
+        started.add(start(client, endpoint, request, finished));
+
+        Attempt winner = null;
+        IOException failure = null;
+        try {
+            Attempt done = finished.poll(getHedgeDelayMillis(endpoint), TimeUnit.MILLISECONDS);
+            if (done == null && gate.tryAcquire(priority)) {
+                mHedges.incrementAndGet();
+                started.add(start(client, endpoint, request, finished));
+            }
+            int running = started.size();
+            while (winner == null && running > 0) {
+                if (done == null) {
+                    done = finished.take();
+                }
+                running--;
+                if (done.mFailure == null) {
+                    winner = done;
+                } else {
+                    failure = done.mFailure;
+                    recordFailure(done.mTiming);
+                }
+                done = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new InterruptedIOException("Interrupted while waiting for " + endpoint);
+        } finally {
+            for (Attempt attempt : started) {
+                if (attempt != winner) {
+                    attempt.cancel();
+                }
+            }
+        }
+
+        if (winner == null) {
+            throw failure;
+        }
+        if (started.size() > 1 && winner == started.get(1)) {
+            mHedgeWins.incrementAndGet();
+        }
+        return new Response(winner.mConnection, winner.mTiming, winner.mResponseCode);
+    }
+
+    private Attempt start(MovieHttpClient client, String endpoint, Request request,
+                          BlockingQueue<Attempt> finished) {
+        mAttempts.incrementAndGet();
+        Attempt attempt = new Attempt(client, request, new RequestTiming(endpoint), finished);
+        mExecutor.execute(attempt);
+        return attempt;
+    }
+
+    /**
+     * Holds the gate back for the delay asked by the server, if it is overloaded and said
+     * when to come back.
+     */
+    private static void onRetryAfter(RequestGate gate, Response response) {
+        if (response.mResponseCode != 429
+                && response.mResponseCode != HttpURLConnection.HTTP_UNAVAILABLE) {
+            return;
+        }
+        long delayMillis = RequestGate.parseRetryAfter(
+                response.mConnection.getHeaderField("Retry-After"), System.currentTimeMillis());
+        if (delayMillis >= 0) {
+            Log.w(LOG_TAG, "Server asked to retry after " + delayMillis + " ms");
+            gate.onRetryAfter(delayMillis);
+        }
+    }
+
+    /**
+     * Returns how long to wait for the response headers before sending a hedged request,
+     * the 95th percentile of the time to headers of the endpoint.
+     */
+    long getHedgeDelayMillis(String endpoint) {
+        synchronized (mHeaderTimes) {
+            LatencyHistogram histogram = mHeaderTimes.get(endpoint);
+            if (histogram == null || histogram.getCount() < MIN_SAMPLES) {
+                return mDefaultHedgeDelayMillis;
+            }
+            return Math.max(MIN_HEDGE_DELAY_MILLIS, histogram.getPercentile(HEDGE_PERCENTILE) / 1000);
+        }
+    }
+
+    /**
+     * Returns how long to wait before the given retry, counted from 0: a random duration
+     * between 0 and the base backoff doubled at every retry, capped.
+     */
+    long getBackoffMillis(int retry) {
+        long bound = mMaxBackoffMillis;
+        if (retry < 30) {
+            bound = Math.min(mMaxBackoffMillis, mBaseBackoffMillis << retry);
+        }
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * bound);
+        }
+    }
+
+    /**
+     * Returns true for the responses of an overloaded or failing server, which may succeed
+     * when sent again.
+     */
+    static boolean isRetryable(int responseCode) {
+        return responseCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                || responseCode == 429
+                || responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR
+                || responseCode == HttpURLConnection.HTTP_BAD_GATEWAY
+                || responseCode == HttpURLConnection.HTTP_UNAVAILABLE
+                || responseCode == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+    }
+
+    private void recordHeaderTime(String endpoint, long nanos) {
+        synchronized (mHeaderTimes) {
+            LatencyHistogram histogram = mHeaderTimes.get(endpoint);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                mHeaderTimes.put(endpoint, histogram);
+            }
+            histogram.record(nanos / 1000);
+        }
+    }
+
+    private static void recordFailure(RequestTiming timing) {
+        timing.markFinished();
+        NetworkStats.getInstance().record(timing);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during the backoff");
+        }
+    }
+
+    /**
+     * Number of attempts sent, hedges and retries included
+     */
+    public int getAttemptCount() {
+        return mAttempts.get();
+    }
+
+    /**
+     * Number of attempts sent again after a failure
+     */
+    public int getRetryCount() {
+        return mRetries.get();
+    }
+
+    /**
+     * Number of hedged attempts sent because the first one was slow
+     */
+    public int getHedgeCount() {
+        return mHedges.get();
+    }
+
+    /**
+     * Number of hedged attempts that got their response before the first one
+     */
+    public int getHedgeWinCount() {
+        return mHedgeWins.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "FetchPolicy: attempts=%d, retries=%d, hedges=%d, hedgeWins=%d",
+                getAttemptCount(), getRetryCount(), getHedgeCount(), getHedgeWinCount());
+    }
+
+    /**
+     * The response headers of the attempt that won, its body hasn't been read yet.
+     */
+    public static class Response {
+        private final HttpURLConnection mConnection;
+        private final RequestTiming mTiming;
+        private final int mResponseCode;
+
+        Response(HttpURLConnection connection, RequestTiming timing, int responseCode) {
+            mConnection = connection;
+            mTiming = timing;
+            mResponseCode = responseCode;
+        }
+
+        public HttpURLConnection getConnection() {
+            return mConnection;
+        }
+
+        /**
+         * Returns the timing of the attempt, up to the response headers so far.
+         */
+        public RequestTiming getTiming() {
+            return mTiming;
+        }
+
+        public int getResponseCode() {
+            return mResponseCode;
+        }
+    }
+
+    /**
+     * A single attempt, connecting and waiting for the response headers on a thread of the
+     * policy. It can be cancelled from the thread waiting for it, which disconnects it.
+     */
+    private class Attempt implements Runnable {
+        private final MovieHttpClient mClient;
+        private final Request mRequest;
+        private final RequestTiming mTiming;
+        private final BlockingQueue<Attempt> mFinished;
+
+        private HttpURLConnection mConnection;
+        private boolean mCancelled;
+        private int mResponseCode;
+        private IOException mFailure;
+
+        Attempt(MovieHttpClient client, Request request, RequestTiming timing,
+                BlockingQueue<Attempt> finished) {
+            mClient = client;
+            mRequest = request;
+            mTiming = timing;
+            mFinished = finished;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                HttpURLConnection connection = mRequest.open();
+                synchronized (this) {
+                    if (mCancelled) {
+                        return;
+                    }
+                    mConnection = connection;
+                }
+                mClient.connect(connection, mTiming);
+                mResponseCode = connection.getResponseCode();
+                mTiming.markFirstByte(mResponseCode);
+                recordHeaderTime(mTiming.getEndpoint(), System.nanoTime() - start);
+            } catch (IOException e) {
+                mFailure = e;
+            } catch (RuntimeException e) {
+                // Reported like a failed connection, or the caller would wait for it forever
+                mFailure = new IOException("Attempt of " + mTiming.getEndpoint() + " failed", e);
+            }
+            synchronized (this) {
+                if (mCancelled) {
+                    // Lost the race while connecting, nobody reads this response
+                    if (mConnection != null) {
+                        mConnection.disconnect();
+                    }
+                    return;
+                }
+            }
+            mFinished.add(this);
+        }
+
+        synchronized void cancel() {
+            mCancelled = true;
+            if (mConnection != null) {
+                // Aborts the connection even while it is blocked connecting or reading
+                mConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Names the threads of the attempts, and doesn't keep the process alive for them.
+     */
+    private static class AttemptThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FetchPolicy #" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
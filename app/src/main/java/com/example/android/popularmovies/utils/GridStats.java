@@ -0,0 +1,131 @@
+package com.example.android.popularmovies.utils;
+
+import java.util.Locale;
+
+/**
+ * Rendering costs of the movie grid, kept in memory for the life of the process: how long
+ * the adapter takes to create and to bind a row, and how far apart the frames drawn while
+ * the grid scrolls are. They are shown in the network stats debug screen, and checked
+ * against budgets by the scroll benchmark.
+ * <p>
+ * A frame is slow when it comes later than half a frame after its vsync, i.e. at least one
+ * vsync went by without a new frame, and every vsync missed counts as a dropped frame.
+ */
+public class GridStats {
+
+    private static final GridStats sInstance = new GridStats();
+
+    private final LatencyHistogram mCreates = new LatencyHistogram();
+    private final LatencyHistogram mBinds = new LatencyHistogram();
+    private final LatencyHistogram mFrames = new LatencyHistogram();
+    private long mSlowFrames;
+    private long mDroppedFrames;
+
+    /**
+     * Returns the statistics of the movie grid.
+     */
+    public static GridStats getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Adds the duration of an onCreateViewHolder call.
+     */
+    public synchronized void recordCreate(long nanos) {
+        mCreates.record(nanos / 1000);
+    }
+
+    /**
+     * Adds the duration of an onBindViewHolder call.
+     */
+    public synchronized void recordBind(long nanos) {
+        mBinds.record(nanos / 1000);
+    }
+
+    /**
+     * Adds the time between two frames drawn while scrolling.
+     *
+     * @param frameIntervalNanos time between two vsyncs of the display
+     */
+    public synchronized void recordFrame(long nanos, long frameIntervalNanos) {
+        mFrames.record(nanos / 1000);
+        // Rounded, a frame a little late because of the vsync jitter isn't slow
+        long vsyncs = (nanos + frameIntervalNanos / 2) / frameIntervalNanos;
+        if (vsyncs > 1) {
+            mSlowFrames++;
+            mDroppedFrames += vsyncs - 1;
+        }
+    }
+
+    /**
+     * Forgets everything recorded so far, e.g. before a measure.
+     */
+    public synchronized void clear() {
+        mCreates.clear();
+        mBinds.clear();
+        mFrames.clear();
+        mSlowFrames = 0;
+        mDroppedFrames = 0;
+    }
+
+    /**
+     * Returns a copy of the histogram of the onCreateViewHolder durations, in microseconds.
+     */
+    public synchronized LatencyHistogram getCreateHistogram() {
+        return copyOf(mCreates);
+    }
+
+    /**
+     * Returns a copy of the histogram of the onBindViewHolder durations, in microseconds.
+     */
+    public synchronized LatencyHistogram getBindHistogram() {
+        return copyOf(mBinds);
+    }
+
+    /**
+     * Returns a copy of the histogram of the times between frames, in microseconds.
+     */
+    public synchronized LatencyHistogram getFrameHistogram() {
+        return copyOf(mFrames);
+    }
+
+    public synchronized long getFrameCount() {
+        return mFrames.getCount();
+    }
+
+    public synchronized long getSlowFrameCount() {
+        return mSlowFrames;
+    }
+
+    public synchronized long getDroppedFrameCount() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Returns a human readable report, durations in milliseconds.
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder("movie grid\n");
+        report.append(String.format(Locale.US, "  %-10s %5s %8s %8s %8s %8s\n",
+                "", "n", "p50", "p95", "p99", "max"));
+        appendRow(report, "create", mCreates);
+        appendRow(report, "bind", mBinds);
+        appendRow(report, "frame", mFrames);
+        report.append(String.format(Locale.US, "  %d slow frames, %d dropped\n",
+                mSlowFrames, mDroppedFrames));
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String name, LatencyHistogram histogram) {
+        report.append(String.format(Locale.US, "  %-10s %5d %8.2f %8.2f %8.2f %8.2f\n",
+                name, histogram.getCount(), histogram.getPercentile(0.5) / 1000.0,
+                histogram.getPercentile(0.95) / 1000.0, histogram.getPercentile(0.99) / 1000.0,
+                histogram.getMax() / 1000.0));
+    }
+
+    private static LatencyHistogram copyOf(LatencyHistogram histogram) {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(histogram);
+        return copy;
+    }
+}
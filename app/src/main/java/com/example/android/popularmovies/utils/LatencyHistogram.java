@@ -0,0 +1,130 @@
+package com.example.android.popularmovies.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A histogram of durations in microseconds, with buckets whose width grows with the value
+ * so that any percentile is known within 1/8 of its value, from 1 microsecond to half an hour,
+ * in a fixed 2 KB of memory.
+ * <p>
+ * Not thread-safe, the owner synchronizes.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Every power of two is split into 2^SUB_BUCKET_BITS buckets
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values up to this one have a bucket of their own
+     */
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    /**
+     * Longer durations are counted in the last bucket
+     */
+    private static final long MAX_VALUE = (1L << 31) - 1;
+
+    private final long[] mCounts = new long[bucketOf(MAX_VALUE) + 1];
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    /**
+     * Adds a duration, in microseconds. Negative durations are counted as 0.
+     */
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(MAX_VALUE, micros));
+        mCounts[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Adds every duration of the given histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mCount += other.mCount;
+        mSum += other.mSum;
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    /**
+     * Forgets every duration recorded so far.
+     */
+    public void clear() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    public long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * Returns the duration that the given share of the durations don't exceed, e.g. 0.95
+     * for the 95th percentile, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * mCount));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                // The middle of the bucket, never more than the longest duration recorded
+                return Math.min(mMax, valueOf(i));
+            }
+        }
+        return mMax;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d p50=%d p95=%d p99=%d max=%d us",
+                mCount, getPercentile(0.5), getPercentile(0.95), getPercentile(0.99), mMax);
+    }
+
+    /**
+     * Returns the bucket of the given value: one per value below {@link #LINEAR_LIMIT}, then
+     * {@link #SUB_BUCKETS} per power of two.
+     */
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the value in the middle of the given bucket.
+     */
+    static long valueOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) / 2;
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.android.popularmovies.utils;
+
+import android.util.Log;
+
+import com.example.android.popularmovies.model.MovieDetails;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the {@link MovieDetails} of the detail screen: runtime, genres, videos, reviews and
+ * credits come in a single request, the videos, reviews and credits being appended to the
+ * movie with TMDB's append_to_response parameter. The response is parsed token by token
+ * while it is downloaded, and only the fields shown are kept.
+ * <p>
+ * The details are cached in memory by movie id for an hour, so that going back and forth
+ * between the list and a movie doesn't send the request again. Callers asking for the same
+ * movie at the same time share a single request.
+ */
+public class MovieDetailsFetcher {
+
+    private static final String LOG_TAG = MovieDetailsFetcher.class.getSimpleName();
+
+    /**
+     * Sub-resources appended to the movie, each would otherwise be a request of its own
+     */
+    static final String APPENDED_RESOURCES = "videos,reviews,credits";
+
+    /**
+     * The details requests of every movie are timed together in the {@link NetworkStats}
+     */
+    static final String DETAILS_ENDPOINT = "movie/{id}";
+
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Movies whose details are kept, the least recently shown are dropped first
+     */
+    private static final int MAX_CACHED_MOVIES = 50;
+
+    /**
+     * Actors kept for a movie, the top billed ones
+     */
+    private static final int MAX_CAST = 10;
+
+    private static final String YOUTUBE = "YouTube";
+    private static final String DIRECTOR = "Director";
+
+    private static MovieDetailsFetcher sInstance;
+
+    private final String mBaseUrl;
+    private final long mTtlNanos;
+
+    private final Map<Integer, CachedDetails> mCache =
+            new LinkedHashMap<Integer, CachedDetails>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, CachedDetails> eldest) {
+                    return size() > MAX_CACHED_MOVIES;
+                }
+            };
+
+    private final SingleFlight<MovieDetails> mRequests = new SingleFlight<>();
+
+    /**
+     * Constructs a new {@link MovieDetailsFetcher}.
+     *
+     * @param baseUrl   of the API, e.g. {@link QueryUtils#MOVIE_BASE_URL}
+     * @param ttlMillis how long the details of a movie are shown without asking the server again
+     */
+    MovieDetailsFetcher(String baseUrl, long ttlMillis) {
+        mBaseUrl = baseUrl;
+        mTtlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Returns the fetcher shared by the whole application.
+     */
+    public static synchronized MovieDetailsFetcher getInstance() {
+        if (sInstance == null) {
+            sInstance = new MovieDetailsFetcher(QueryUtils.MOVIE_BASE_URL, DEFAULT_TTL_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the details of the given movie if they were loaded recently, null otherwise.
+     * Doesn't do any I/O, so that the detail screen can show them in its first frame.
+     */
+    public MovieDetails getCachedDetails(int movieId) {
+        synchronized (mCache) {
+            CachedDetails cached = mCache.get(movieId);
+            return cached != null && cached.isFresh() ? cached.mDetails : null;
+        }
+    }
+
+    /**
+     * Returns the details of the given movie, from the cache if they were loaded recently,
+     * from the server otherwise. Details past their TTL are still returned if the server
+     * can't be reached. Returns null if there are none.
+     * Must be called from a background thread.
+     */
+    public MovieDetails fetchDetails(final int movieId) {
+        final CachedDetails cached;
+        synchronized (mCache) {
+            cached = mCache.get(movieId);
+        }
+        if (cached != null && cached.isFresh()) {
+            return cached.mDetails;
+        }
+
+        return mRequests.execute(String.valueOf(movieId), new SingleFlight.Call<MovieDetails>() {
+            @Override
+            public MovieDetails call() {
+                MovieDetails details = null;
+                try {
+                    details = makeHttpRequest(new URL(buildDetailsUrl(movieId)));
+                } catch (MalformedURLException e) {
+                    Log.e(LOG_TAG, "Problem building the URL ", e);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem making the HTTP request.", e);
+                }
+                if (details == null) {
+                    // Better old details than none
+                    return cached != null ? cached.mDetails : null;
+                }
+                synchronized (mCache) {
+                    mCache.put(movieId, new CachedDetails(details, System.nanoTime() + mTtlNanos));
+                }
+                return details;
+            }
+        });
+    }
+
+    /**
+     * Returns the request URL of the details of the given movie, with every sub-resource
+     * shown on the detail screen appended.
+     */
+    String buildDetailsUrl(int movieId) {
+        return mBaseUrl + "movie/" + movieId + QueryUtils.API_KEY_VARIABLE
+                + "&append_to_response=" + APPENDED_RESOURCES;
+    }
+
+    /**
+     * Sends the request through the {@link FetchPolicy}, after the requests of the grid, and
+     * parses the response as it is downloaded. Returns null if the server didn't answer with the details.
+     */
+    private static MovieDetails makeHttpRequest(final URL url) throws IOException {
+        final MovieHttpClient httpClient = MovieHttpClient.getInstance();
+        FetchPolicy.Response response = FetchPolicy.getInstance().execute(httpClient,
+                DETAILS_ENDPOINT, RequestGate.Priority.DETAIL, new FetchPolicy.Request() {
+                    @Override
+                    public HttpURLConnection open() throws IOException {
+                        return httpClient.open(url);
+                    }
+                });
+
+        HttpURLConnection urlConnection = response.getConnection();
+        RequestTiming timing = response.getTiming();
+        InputStream inputStream = null;
+        try {
+            if (response.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                inputStream = httpClient.getInputStream(urlConnection, timing);
+                return extractDetailsFromStream(inputStream);
+            }
+            Log.e(LOG_TAG, "Error response code: " + response.getResponseCode());
+            return null;
+        } finally {
+            timing.markFinished();
+            httpClient.release(urlConnection, inputStream);
+            NetworkStats.getInstance().record(timing);
+        }
+    }
+
+    /**
+     * Returns the details parsed token by token from a movie response with the videos,
+     * reviews and credits appended. Every field that isn't shown is skipped.
+     */
+    static MovieDetails extractDetailsFromStream(InputStream inputStream) throws IOException {
+        int id = 0;
+        int runtime = 0;
+        List<String> genres = new ArrayList<>();
+        List<String> directors = new ArrayList<>();
+        List<MovieDetails.CastMember> cast = new ArrayList<>();
+        List<MovieDetails.Video> videos = new ArrayList<>();
+        List<MovieDetails.Review> reviews = new ArrayList<>();
+
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        id = reader.nextInt();
+                        break;
+                    case "runtime":
+                        runtime = reader.nextInt();
+                        break;
+                    case "genres":
+                        readGenres(reader, genres);
+                        break;
+                    case "videos":
+                        readVideos(reader, videos);
+                        break;
+                    case "reviews":
+                        readReviews(reader, reviews);
+                        break;
+                    case "credits":
+                        readCredits(reader, cast, directors);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // The response doesn't have the expected structure
+            throw new IOException("Problem parsing the movie details", e);
+        }
+        return new MovieDetails(id, runtime, genres, directors, cast, videos, reviews);
+    }
+
+    private static void readGenres(JsonReader reader, List<String> genres) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String genre = readFields(reader, "name")[0];
+            if (genre != null) {
+                genres.add(genre);
+            }
+        }
+        reader.endArray();
+    }
+
+    private static void readVideos(JsonReader reader, List<MovieDetails.Video> videos) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"results".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String[] fields = readFields(reader, "name", "key", "site", "type");
+                // Only YouTube videos can be opened from the detail screen
+                if (fields[1] != null && YOUTUBE.equals(fields[2])) {
+                    videos.add(new MovieDetails.Video(fields[0], fields[1], fields[3]));
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private static void readReviews(JsonReader reader, List<MovieDetails.Review> reviews) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"results".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String[] fields = readFields(reader, "author", "content", "url");
+                if (fields[1] != null) {
+                    reviews.add(new MovieDetails.Review(fields[0], fields[1], fields[2]));
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private static void readCredits(JsonReader reader, List<MovieDetails.CastMember> cast,
+                                    List<String> directors) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("cast".equals(name)) {
+                // Already in billing order
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (cast.size() == MAX_CAST) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    String[] fields = readFields(reader, "name", "character");
+                    if (fields[0] != null) {
+                        cast.add(new MovieDetails.CastMember(fields[0], fields[1]));
+                    }
+                }
+                reader.endArray();
+            } else if ("crew".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String[] fields = readFields(reader, "name", "job");
+                    if (fields[0] != null && DIRECTOR.equals(fields[1])) {
+                        directors.add(fields[0]);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads an object and returns the string values of the given names, in the same order,
+     * null for the ones missing or null. Every other field is skipped.
+     */
+    private static String[] readFields(JsonReader reader, String... names) throws IOException {
+        String[] values = new String[names.length];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            int index = -1;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index == -1 || reader.peek() != JsonToken.STRING) {
+                reader.skipValue();
+            } else {
+                values[index] = reader.nextString();
+            }
+        }
+        reader.endObject();
+        return values;
+    }
+
+    /**
+     * Details loaded from the server, and until when they are shown without asking again.
+     */
+    private static class CachedDetails {
+        final MovieDetails mDetails;
+        final long mExpiresAtNanos;
+
+        CachedDetails(MovieDetails details, long expiresAtNanos) {
+            mDetails = details;
+            mExpiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isFresh() {
+            return System.nanoTime() - mExpiresAtNanos < 0;
+        }
+    }
+}
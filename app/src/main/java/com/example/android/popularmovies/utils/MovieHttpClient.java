@@ -0,0 +1,373 @@
+package com.example.android.popularmovies.utils;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The HTTP client shared by every request made to The Movie Database.
+ * <p>
+ * Connections are never disconnected: once a response body has been read to the end and
+ * closed, {@link HttpURLConnection} returns the socket to its keep-alive pool and the next
+ * request to the same host reuses it. All HTTPS connections are created by the same
+ * {@link SSLSocketFactory}, so they share one TLS session cache and a new socket can resume
+ * an earlier session instead of doing a full handshake. Responses are requested gzipped.
+ */
+public class MovieHttpClient {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = MovieHttpClient.class.getSimpleName();
+
+    /**
+     * Timeouts of every connection, in milliseconds
+     */
+    private static final int READ_TIMEOUT = 10000;
+    private static final int CONNECT_TIMEOUT = 15000;
+
+    /**
+     * Response bodies longer than this aren't read to the end on release,
+     * the connection is closed instead.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final String GZIP = "gzip";
+
+    /**
+     * The client installed for the whole application, created on first use
+     */
+    private static volatile MovieHttpClient sInstance;
+
+    private final SSLSocketFactory mSslSocketFactory;
+
+    private final ConcurrentHashMap<String, HostStats> mHostStats = new ConcurrentHashMap<>();
+
+    /**
+     * When the last TLS socket of the calling thread was created, which is when its handshake
+     * starts, so that {@link #connect} can tell the TCP connection and the handshake apart
+     */
+    private final ThreadLocal<Long> mHandshakeStart = new ThreadLocal<>();
+
+    /**
+     * Constructs a new {@link MovieHttpClient}.
+     *
+     * @param sslSocketFactory creating the sockets of HTTPS connections
+     */
+    public MovieHttpClient(SSLSocketFactory sslSocketFactory) {
+        mSslSocketFactory = new TrackingSSLSocketFactory(sslSocketFactory);
+    }
+
+    /**
+     * Installs the client used by {@link QueryUtils}.
+     */
+    public static void install(MovieHttpClient client) {
+        sInstance = client;
+    }
+
+    /**
+     * Returns the installed client, creating one on top of the platform's
+     * default {@link SSLSocketFactory} if none was installed.
+     */
+    public static MovieHttpClient getInstance() {
+        if (sInstance == null) {
+            synchronized (MovieHttpClient.class) {
+                if (sInstance == null) {
+                    sInstance = new MovieHttpClient(HttpsURLConnection.getDefaultSSLSocketFactory());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Opens a GET connection to the given URL. The caller may add request headers
+     * before connecting, and must hand the connection back to {@link #release}.
+     */
+    public HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        if (urlConnection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) urlConnection).setSSLSocketFactory(mSslSocketFactory);
+        }
+        urlConnection.setReadTimeout(READ_TIMEOUT);
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
+        urlConnection.setRequestMethod("GET");
+        // Asking for gzip explicitly turns off transparent decompression,
+        // getInputStream() takes care of it.
+        urlConnection.setRequestProperty("Accept-Encoding", GZIP);
+
+        statsFor(url.getHost()).mRequests.incrementAndGet();
+        return urlConnection;
+    }
+
+    /**
+     * Connects, reusing a pooled connection if there is one, and records how long the
+     * TCP connection and the TLS handshake took.
+     */
+    public void connect(HttpURLConnection urlConnection, RequestTiming timing) throws IOException {
+        mHandshakeStart.remove();
+        urlConnection.connect();
+        Long handshakeStart = mHandshakeStart.get();
+        mHandshakeStart.remove();
+        timing.markConnected(handshakeStart != null ? handshakeStart : 0);
+    }
+
+    /**
+     * Returns the response body of a connection, decompressed if it was gzipped.
+     * The bytes received and the time spent reading them are added to the given timing.
+     */
+    public InputStream getInputStream(HttpURLConnection urlConnection, RequestTiming timing)
+            throws IOException {
+        InputStream inputStream = timing.wrapWire(urlConnection.getInputStream());
+        if (GZIP.equalsIgnoreCase(urlConnection.getContentEncoding())) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        return timing.wrapBody(inputStream);
+    }
+
+    /**
+     * Reads what is left of the response body and closes it, so that the socket goes back
+     * to the keep-alive pool. The connection is only disconnected if that isn't possible.
+     *
+     * @param inputStream the stream returned by {@link #getInputStream}, or null if the
+     *                    body wasn't opened
+     */
+    public void release(HttpURLConnection urlConnection, InputStream inputStream) {
+        try {
+            if (inputStream == null) {
+                // Error responses have their body in the error stream
+                inputStream = urlConnection.getErrorStream();
+            }
+            if (inputStream != null) {
+                byte[] buffer = new byte[1024];
+                int drained = 0;
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    drained += read;
+                    if (drained > MAX_DRAIN_BYTES) {
+                        throw new IOException("Response body too long to drain");
+                    }
+                }
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Connection to " + urlConnection.getURL().getHost() + " not reused", e);
+            urlConnection.disconnect();
+        }
+    }
+
+    /**
+     * Returns the pool statistics of the given host, or null if no request was made to it.
+     */
+    public HostStats getHostStats(String host) {
+        return mHostStats.get(host.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Returns the pool statistics of every host requested so far.
+     */
+    public Map<String, HostStats> getAllHostStats() {
+        return Collections.unmodifiableMap(new HashMap<>(mHostStats));
+    }
+
+    /**
+     * Returns a human readable report of the connections to every host.
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder(String.format(Locale.US,
+                "connections\n  %-22s %8s %5s %6s %7s\n",
+                "host", "requests", "new", "reused", "resumed"));
+        for (Map.Entry<String, HostStats> entry : new TreeMap<>(mHostStats).entrySet()) {
+            HostStats stats = entry.getValue();
+            report.append(String.format(Locale.US, "  %-22s %8d %5d %6d %7d\n",
+                    entry.getKey(), stats.getRequestCount(), stats.getConnectionCount(),
+                    stats.getReusedCount(), stats.getResumedSessionCount()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes one CSV row per host.
+     *
+     * @param build identifies the build in the first column, e.g. the version name
+     */
+    public void exportCsv(Writer writer, String build) throws IOException {
+        writer.write("build,host,requests,new_connections,reused_connections,resumed_tls_sessions\n");
+        for (Map.Entry<String, HostStats> entry : new TreeMap<>(mHostStats).entrySet()) {
+            HostStats stats = entry.getValue();
+            writer.write(String.format(Locale.US, "%s,%s,%d,%d,%d,%d\n",
+                    build, entry.getKey(), stats.getRequestCount(), stats.getConnectionCount(),
+                    stats.getReusedCount(), stats.getResumedSessionCount()));
+        }
+        writer.flush();
+    }
+
+    private HostStats statsFor(String host) {
+        String key = host.toLowerCase(Locale.US);
+        HostStats stats = mHostStats.get(key);
+        if (stats == null) {
+            stats = new HostStats();
+            HostStats previous = mHostStats.putIfAbsent(key, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Connection statistics of a single host.
+     */
+    public static class HostStats {
+        private final AtomicInteger mRequests = new AtomicInteger();
+        private final AtomicInteger mConnections = new AtomicInteger();
+        private final AtomicInteger mResumedSessions = new AtomicInteger();
+        private final Map<String, Boolean> mSessionIds = new ConcurrentHashMap<>();
+
+        /**
+         * Number of requests made to the host
+         */
+        public int getRequestCount() {
+            return mRequests.get();
+        }
+
+        /**
+         * Number of new TLS connections opened to the host
+         */
+        public int getConnectionCount() {
+            return mConnections.get();
+        }
+
+        /**
+         * Number of requests that reused a pooled connection
+         */
+        public int getReusedCount() {
+            return Math.max(0, mRequests.get() - mConnections.get());
+        }
+
+        /**
+         * Number of new connections that resumed an earlier TLS session
+         */
+        public int getResumedSessionCount() {
+            return mResumedSessions.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "requests=%d, connections=%d, reused=%d, resumedTls=%d",
+                    getRequestCount(), getConnectionCount(), getReusedCount(), getResumedSessionCount());
+        }
+    }
+
+    /**
+     * Counts the TLS connections opened by the client, and the ones that resumed a session.
+     * Every new connection does exactly one handshake, so connections are counted when
+     * their handshake completes.
+     */
+    private class TrackingSSLSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory mDelegate;
+
+        private final HandshakeCompletedListener mHandshakeListener = new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                String host = event.getSession().getPeerHost();
+                if (host == null) {
+                    host = event.getSocket().getInetAddress().getHostName();
+                }
+                HostStats stats = statsFor(host);
+                stats.mConnections.incrementAndGet();
+
+                byte[] sessionId = event.getSession().getId();
+                if (sessionId != null && sessionId.length > 0
+                        && stats.mSessionIds.put(toHex(sessionId), Boolean.TRUE) != null) {
+                    stats.mResumedSessions.incrementAndGet();
+                }
+            }
+        };
+
+        TrackingSSLSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        private Socket track(Socket socket) {
+            if (socket instanceof SSLSocket) {
+                mHandshakeStart.set(System.nanoTime());
+                ((SSLSocket) socket).addHandshakeCompletedListener(mHandshakeListener);
+            }
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return track(mDelegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+                throws IOException {
+            return track(mDelegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return track(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            return track(mDelegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return track(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                                   int localPort) throws IOException {
+            return track(mDelegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
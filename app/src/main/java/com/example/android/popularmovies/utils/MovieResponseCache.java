@@ -0,0 +1,704 @@
+package com.example.android.popularmovies.utils;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A size bounded, on-disk cache of The Movie Database responses.
+ * <p>
+ * Entries are keyed by the normalized request URL, with the api_key parameter removed,
+ * so rotating the key doesn't throw the cache away and the key never ends up on disk.
+ * Every entry keeps the ETag, Last-Modified and max-age sent by the server, which lets
+ * {@link QueryUtils} send conditional requests and serve stale data while it revalidates.
+ * The least recently used entries are evicted once the cache grows over its maximum size.
+ */
+public class MovieResponseCache {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = MovieResponseCache.class.getSimpleName();
+
+    /**
+     * Version of the metadata file format
+     */
+    private static final int META_VERSION = 1;
+
+    /**
+     * File suffixes of the two files stored for every entry
+     */
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Query parameter that holds the API key
+     */
+    private static final String API_KEY_PARAMETER = "api_key";
+
+    /**
+     * The cache installed for the whole application, null until {@link #install} is called
+     */
+    private static volatile MovieResponseCache sInstance;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+
+    /**
+     * Entries in access order, the eldest entry is the least recently used one.
+     * Loaded lazily from disk so that {@link #install} doesn't touch the file system.
+     */
+    private LinkedHashMap<String, Entry> mEntries;
+    private long mSize;
+
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mStaleHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private final AtomicInteger mRevalidateCount = new AtomicInteger();
+    private final AtomicInteger mNotModifiedCount = new AtomicInteger();
+
+    /**
+     * Constructs a new {@link MovieResponseCache}.
+     *
+     * @param directory where the responses are stored
+     * @param maxSize   maximum number of bytes the cache may use
+     */
+    public MovieResponseCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Installs the response cache used by {@link QueryUtils#fetchMovieData(String)}.
+     */
+    public static MovieResponseCache install(File directory, long maxSize) {
+        sInstance = new MovieResponseCache(directory, maxSize);
+        return sInstance;
+    }
+
+    /**
+     * Installs the given response cache, or none.
+     */
+    static void install(MovieResponseCache cache) {
+        sInstance = cache;
+    }
+
+    /**
+     * Returns the installed response cache, or null if there is none.
+     */
+    public static MovieResponseCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the URL in a canonical form: scheme and host in lower case, no fragment,
+     * no api_key parameter and the remaining query parameters sorted by name.
+     */
+    public static String normalizeUrl(String url) {
+        String normalized = url;
+        int fragment = normalized.indexOf('#');
+        if (fragment != -1) {
+            normalized = normalized.substring(0, fragment);
+        }
+
+        String query = null;
+        int queryStart = normalized.indexOf('?');
+        if (queryStart != -1) {
+            query = normalized.substring(queryStart + 1);
+            normalized = normalized.substring(0, queryStart);
+        }
+
+        // Lower case everything up to the path
+        int hostStart = normalized.indexOf("://");
+        int pathStart = hostStart == -1 ? -1 : normalized.indexOf('/', hostStart + 3);
+        if (pathStart == -1) {
+            normalized = normalized.toLowerCase(Locale.US);
+        } else {
+            normalized = normalized.substring(0, pathStart).toLowerCase(Locale.US)
+                    + normalized.substring(pathStart);
+        }
+
+        if (query == null || query.isEmpty()) {
+            return normalized;
+        }
+
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty()
+                    || parameter.equals(API_KEY_PARAMETER)
+                    || parameter.startsWith(API_KEY_PARAMETER + "=")) {
+                continue;
+            }
+            parameters.add(parameter);
+        }
+        if (parameters.isEmpty()) {
+            return normalized;
+        }
+        Collections.sort(parameters);
+
+        StringBuilder builder = new StringBuilder(normalized).append('?');
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                builder.append('&');
+            }
+            builder.append(parameters.get(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the cache entry for the given request URL, or null if there is none.
+     * The returned entry may be stale, see {@link Entry#isFresh()}.
+     */
+    public synchronized Entry get(String url) {
+        Entry entry = peek(url);
+        if (entry == null) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+        if (entry.isFresh()) {
+            mHitCount.incrementAndGet();
+        } else {
+            mStaleHitCount.incrementAndGet();
+        }
+        // Persist the access order across launches
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, entry.mKey + META_SUFFIX).setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * Returns the cache entry for the given request URL like {@link #get(String)}, without
+     * counting a hit or a miss, e.g. to show a stale response before the request is made.
+     */
+    public synchronized Entry peek(String url) {
+        Entry entry = entries().get(keyFor(url));
+        if (entry != null && !new File(mDirectory, entry.mKey + BODY_SUFFIX).exists()) {
+            // The body has been removed behind our back, e.g. by the system clearing the cache
+            remove(entry.mKey);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Opens the cached response body of the given entry.
+     */
+    public InputStream openBody(Entry entry) throws FileNotFoundException {
+        return new FileInputStream(new File(mDirectory, entry.mKey + BODY_SUFFIX));
+    }
+
+    /**
+     * Records that a conditional request was sent for a stale entry, which has
+     * {@link Entry#hasValidators() validators}.
+     */
+    public void recordRevalidation() {
+        mRevalidateCount.incrementAndGet();
+    }
+
+    /**
+     * Updates the validators and the freshness of an entry after the server
+     * answered a conditional request with 304 Not Modified.
+     */
+    public synchronized Entry update(Entry entry, String etag, String lastModified, String cacheControl) {
+        mNotModifiedCount.incrementAndGet();
+        Entry updated = new Entry(entry.mKey, entry.mUrl,
+                etag != null ? etag : entry.mEtag,
+                lastModified != null ? lastModified : entry.mLastModified,
+                System.currentTimeMillis(),
+                cacheControl != null ? parseMaxAge(cacheControl) : entry.mMaxAgeSeconds,
+                entry.mBodyLength);
+        try {
+            File temp = writeMeta(updated);
+            if (!temp.renameTo(new File(mDirectory, updated.mKey + META_SUFFIX))) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw new IOException("Cannot rename " + temp);
+            }
+            replace(updated);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem updating the cache entry.", e);
+        }
+        return updated;
+    }
+
+    /**
+     * Starts writing a new response body for the given request URL.
+     * The body only becomes visible once {@link Editor#commit} is called.
+     */
+    public Editor edit(String url) throws IOException {
+        synchronized (this) {
+            // Load the index first, loading it deletes the temporary files of aborted writes
+            entries();
+        }
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + mDirectory);
+        }
+        return new Editor(keyFor(url), normalizeUrl(url));
+    }
+
+    /**
+     * Number of requests served from a fresh entry
+     */
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Number of requests for which only a stale entry was found
+     */
+    public int getStaleHitCount() {
+        return mStaleHitCount.get();
+    }
+
+    /**
+     * Number of requests that had no entry at all
+     */
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Number of conditional requests sent to revalidate a stale entry
+     */
+    public int getRevalidateCount() {
+        return mRevalidateCount.get();
+    }
+
+    /**
+     * Number of conditional requests answered with 304 Not Modified
+     */
+    public int getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    /**
+     * Returns the number of bytes currently used by the cache.
+     */
+    public synchronized long size() {
+        entries();
+        return mSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "MovieResponseCache[hits=%d, staleHits=%d, misses=%d, revalidations=%d, notModified=%d]",
+                getHitCount(), getStaleHitCount(), getMissCount(),
+                getRevalidateCount(), getNotModifiedCount());
+    }
+
+    /**
+     * Returns the max-age of a Cache-Control header value in seconds,
+     * or 0 if the response must always be revalidated.
+     */
+    static long parseMaxAge(String cacheControl) {
+        if (cacheControl == null) {
+            return 0;
+        }
+        String value = cacheControl.toLowerCase(Locale.US);
+        if (value.contains("no-cache")) {
+            return 0;
+        }
+        int start = value.indexOf("max-age=");
+        if (start == -1) {
+            return 0;
+        }
+        start += "max-age=".length();
+        int end = start;
+        while (end < value.length() && Character.isDigit(value.charAt(end))) {
+            end++;
+        }
+        try {
+            return Long.parseLong(value.substring(start, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the name of the files of the given request URL.
+     */
+    static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(normalizeUrl(url).getBytes(Charset.forName("UTF-8")));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns the index of the cache, reading it from disk the first time.
+     */
+    private LinkedHashMap<String, Entry> entries() {
+        if (mEntries != null) {
+            return mEntries;
+        }
+        mEntries = new LinkedHashMap<>(16, 0.75f, true);
+        mSize = 0;
+
+        File[] metaFiles = mDirectory.listFiles();
+        if (metaFiles == null) {
+            return mEntries;
+        }
+        // Oldest access first, so the LinkedHashMap ends up in access order
+        Arrays.sort(metaFiles, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : metaFiles) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // Leftover of an aborted write
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+            if (name.endsWith(BODY_SUFFIX)) {
+                String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+                if (!new File(mDirectory, key + META_SUFFIX).exists()) {
+                    // The write stopped between the two renames
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+                continue;
+            }
+            if (!name.endsWith(META_SUFFIX)) {
+                continue;
+            }
+            String key = name.substring(0, name.length() - META_SUFFIX.length());
+            Entry entry = readMeta(key, file);
+            if (entry == null || !new File(mDirectory, key + BODY_SUFFIX).exists()) {
+                deleteFiles(key);
+                continue;
+            }
+            mEntries.put(key, entry);
+            mSize += entry.mBodyLength;
+        }
+        trimToSize();
+        return mEntries;
+    }
+
+    private Entry readMeta(String key, File file) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != META_VERSION) {
+                return null;
+            }
+            String url = in.readUTF();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            long storedAt = in.readLong();
+            long maxAge = in.readLong();
+            long bodyLength = in.readLong();
+            return new Entry(key, url,
+                    etag.isEmpty() ? null : etag,
+                    lastModified.isEmpty() ? null : lastModified,
+                    storedAt, maxAge, bodyLength);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cache entry " + key, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the metadata of the entry to a temporary file, renamed into place by
+     * {@link #store}.
+     */
+    private File writeMeta(Entry entry) throws IOException {
+        File temp = new File(mDirectory, entry.mKey + META_SUFFIX + TEMP_SUFFIX);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(META_VERSION);
+            out.writeUTF(entry.mUrl);
+            out.writeUTF(entry.mEtag != null ? entry.mEtag : "");
+            out.writeUTF(entry.mLastModified != null ? entry.mLastModified : "");
+            out.writeLong(entry.mStoredAtMillis);
+            out.writeLong(entry.mMaxAgeSeconds);
+            out.writeLong(entry.mBodyLength);
+        } finally {
+            out.close();
+        }
+        return temp;
+    }
+
+    /**
+     * Moves the body and the metadata of the entry into place, the metadata last so that a
+     * meta file on disk always has its body. On failure the entry is removed altogether.
+     */
+    private synchronized void store(Entry entry, File tempBody) throws IOException {
+        entries();
+        File tempMeta = null;
+        boolean stored = false;
+        try {
+            tempMeta = writeMeta(entry);
+            if (!tempBody.renameTo(new File(mDirectory, entry.mKey + BODY_SUFFIX))) {
+                throw new IOException("Cannot rename " + tempBody);
+            }
+            if (!tempMeta.renameTo(new File(mDirectory, entry.mKey + META_SUFFIX))) {
+                throw new IOException("Cannot rename " + tempMeta);
+            }
+            stored = true;
+        } finally {
+            if (!stored) {
+                if (tempMeta != null) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tempMeta.delete();
+                }
+                remove(entry.mKey);
+            }
+        }
+        replace(entry);
+        trimToSize();
+    }
+
+    private void replace(Entry entry) {
+        Entry previous = entries().put(entry.mKey, entry);
+        if (previous != null) {
+            mSize -= previous.mBodyLength;
+        }
+        mSize += entry.mBodyLength;
+    }
+
+    private void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mSize -= entry.mBodyLength;
+        }
+        deleteFiles(key);
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits in its maximum size.
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            mSize -= eldest.mBodyLength;
+            deleteFiles(eldest.mKey);
+        }
+    }
+
+    private void deleteFiles(String key) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, key + META_SUFFIX).delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, key + BODY_SUFFIX).delete();
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do here
+            }
+        }
+    }
+
+    /**
+     * Metadata of a cached response.
+     */
+    public static class Entry {
+        private final String mKey;
+        private final String mUrl;
+        private final String mEtag;
+        private final String mLastModified;
+        private final long mStoredAtMillis;
+        private final long mMaxAgeSeconds;
+        private final long mBodyLength;
+
+        Entry(String key, String url, String etag, String lastModified,
+              long storedAtMillis, long maxAgeSeconds, long bodyLength) {
+            mKey = key;
+            mUrl = url;
+            mEtag = etag;
+            mLastModified = lastModified;
+            mStoredAtMillis = storedAtMillis;
+            mMaxAgeSeconds = maxAgeSeconds;
+            mBodyLength = bodyLength;
+        }
+
+        /**
+         * Returns the ETag of the response, or null if the server didn't send one
+         */
+        public String getEtag() {
+            return mEtag;
+        }
+
+        /**
+         * Returns the Last-Modified date of the response, or null if the server didn't send one
+         */
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * Returns true if the server sent an ETag or a Last-Modified date, so that the entry
+         * can be revalidated with a conditional request.
+         */
+        public boolean hasValidators() {
+            return mEtag != null || mLastModified != null;
+        }
+
+        /**
+         * Returns true if the entry can be used without asking the server.
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() < mStoredAtMillis + mMaxAgeSeconds * 1000;
+        }
+    }
+
+    /**
+     * Writes a response body to the cache while it is being read from the network.
+     * Every editor writes its own temporary file, so two responses of the same URL can be
+     * written at the same time, the last one committed wins.
+     */
+    public class Editor {
+        private final String mKey;
+        private final String mUrl;
+        private final File mTempBody;
+        private OutputStream mOut;
+        private long mLength;
+        private IOException mFailure;
+
+        private Editor(String key, String url) throws IOException {
+            mKey = key;
+            mUrl = url;
+            mTempBody = File.createTempFile(key + BODY_SUFFIX, TEMP_SUFFIX, mDirectory);
+            mOut = new BufferedOutputStream(new FileOutputStream(mTempBody));
+        }
+
+        /**
+         * Returns a stream that copies everything read from the given stream into the cache.
+         * A failure to write the copy doesn't affect the reads, it only marks the editor
+         * failed so that {@link #commit} throws instead of storing a truncated body.
+         */
+        public InputStream tee(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1 && mOut != null) {
+                        try {
+                            mOut.write(b);
+                            mLength++;
+                        } catch (IOException e) {
+                            fail(e);
+                        }
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int read = super.read(buffer, offset, count);
+                    if (read > 0 && mOut != null) {
+                        try {
+                            mOut.write(buffer, offset, read);
+                            mLength += read;
+                        } catch (IOException e) {
+                            fail(e);
+                        }
+                    }
+                    return read;
+                }
+            };
+        }
+
+        /**
+         * Stops copying the body, the editor can only be aborted from now on.
+         */
+        private void fail(IOException e) {
+            mFailure = e;
+            closeOut();
+        }
+
+        /**
+         * Stores the body written so far, together with the response validators.
+         * A response with Cache-Control: no-store is dropped instead.
+         *
+         * @throws IOException if the body couldn't be written, the editor must then be aborted
+         */
+        public void commit(InputStream teeStream, String etag, String lastModified,
+                           String cacheControl) throws IOException {
+            // Read whatever the parser left behind so that the whole body is stored
+            byte[] buffer = new byte[1024];
+            //noinspection StatementWithEmptyBody
+            while (mFailure == null && teeStream.read(buffer) != -1) {
+            }
+            if (mFailure != null) {
+                throw mFailure;
+            }
+            mOut.close();
+            mOut = null;
+
+            if (cacheControl != null && cacheControl.toLowerCase(Locale.US).contains("no-store")) {
+                abort();
+                return;
+            }
+            store(new Entry(mKey, mUrl, etag, lastModified, System.currentTimeMillis(),
+                    parseMaxAge(cacheControl), mLength), mTempBody);
+        }
+
+        /**
+         * Discards the body written so far.
+         */
+        public void abort() {
+            closeOut();
+            //noinspection ResultOfMethodCallIgnored
+            mTempBody.delete();
+        }
+
+        private void closeOut() {
+            if (mOut != null) {
+                try {
+                    mOut.close();
+                } catch (IOException ignored) {
+                    // The file is deleted anyway
+                }
+                mOut = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.popularmovies.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency histograms of the requests to The Movie Database, by endpoint and by phase, kept
+ * in memory for the life of the process. They can be read in the network stats debug screen
+ * and exported as CSV, to compare the percentiles of two builds.
+ */
+public class NetworkStats {
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private static final NetworkStats sInstance = new NetworkStats();
+
+    /**
+     * Statistics by endpoint, sorted so that the reports are stable
+     */
+    private final Map<String, EndpointStats> mEndpoints = new TreeMap<>();
+
+    /**
+     * Returns the statistics of every request made by {@link QueryUtils}.
+     */
+    public static NetworkStats getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Adds the phases of a finished request to the histograms of its endpoint.
+     */
+    public synchronized void record(RequestTiming timing) {
+        EndpointStats stats = statsFor(timing.getEndpoint());
+        stats.mRequests++;
+        if (timing.getResponseCode() == 0 || timing.getResponseCode() >= 400) {
+            stats.mFailures++;
+        }
+        stats.mWireBytes += timing.getWireBytes();
+        stats.mBodyBytes += timing.getBodyBytes();
+        for (RequestTiming.Phase phase : RequestTiming.Phase.values()) {
+            long nanos = timing.getNanos(phase);
+            if (nanos >= 0) {
+                stats.mPhases[phase.ordinal()].record(nanos / 1000);
+            }
+        }
+    }
+
+    /**
+     * Counts a request answered by a fresh cached response, without any network.
+     */
+    public synchronized void recordCacheHit(String endpoint) {
+        statsFor(endpoint).mCacheHits++;
+    }
+
+    /**
+     * Forgets every request recorded so far.
+     */
+    public synchronized void clear() {
+        mEndpoints.clear();
+    }
+
+    /**
+     * Returns a copy of the histogram of the given endpoint and phase, empty if nothing
+     * was recorded.
+     */
+    public synchronized LatencyHistogram getHistogram(String endpoint, RequestTiming.Phase phase) {
+        LatencyHistogram copy = new LatencyHistogram();
+        EndpointStats stats = mEndpoints.get(endpoint);
+        if (stats != null) {
+            copy.add(stats.mPhases[phase.ordinal()]);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the endpoints requested so far.
+     */
+    public synchronized List<String> getEndpoints() {
+        return new ArrayList<>(mEndpoints.keySet());
+    }
+
+    /**
+     * Returns a human readable report of every endpoint, in milliseconds.
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (EndpointStats stats : mEndpoints.values()) {
+            report.append(String.format(Locale.US,
+                    "%s\n  %d requests, %d from cache, %d failed\n  %d KB received, %d KB decompressed\n",
+                    stats.mEndpoint, stats.mRequests, stats.mCacheHits, stats.mFailures,
+                    stats.mWireBytes / 1024, stats.mBodyBytes / 1024));
+            report.append(String.format(Locale.US, "  %-10s %5s %8s %8s %8s %8s\n",
+                    "phase", "n", "p50", "p95", "p99", "max"));
+            for (RequestTiming.Phase phase : RequestTiming.Phase.values()) {
+                LatencyHistogram histogram = stats.mPhases[phase.ordinal()];
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                report.append(String.format(Locale.US, "  %-10s %5d", name(phase), histogram.getCount()));
+                for (double percentile : PERCENTILES) {
+                    report.append(String.format(Locale.US, " %8.1f", histogram.getPercentile(percentile) / 1000.0));
+                }
+                report.append(String.format(Locale.US, " %8.1f\n", histogram.getMax() / 1000.0));
+            }
+            report.append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes one CSV row per endpoint and phase, durations in microseconds.
+     *
+     * @param build identifies the build in the first column, e.g. the version name
+     */
+    public synchronized void exportCsv(Writer writer, String build) throws IOException {
+        writer.write("build,endpoint,requests,cache_hits,failures,wire_bytes,body_bytes,"
+                + "phase,count,p50_us,p95_us,p99_us,max_us,mean_us\n");
+        for (EndpointStats stats : mEndpoints.values()) {
+            for (RequestTiming.Phase phase : RequestTiming.Phase.values()) {
+                LatencyHistogram histogram = stats.mPhases[phase.ordinal()];
+                writer.write(String.format(Locale.US, "%s,%s,%d,%d,%d,%d,%d,%s,%d,%d,%d,%d,%d,%d\n",
+                        build, stats.mEndpoint, stats.mRequests, stats.mCacheHits, stats.mFailures,
+                        stats.mWireBytes, stats.mBodyBytes, name(phase), histogram.getCount(),
+                        histogram.getPercentile(0.5), histogram.getPercentile(0.95),
+                        histogram.getPercentile(0.99), histogram.getMax(), histogram.getMean()));
+            }
+        }
+        writer.flush();
+    }
+
+    private EndpointStats statsFor(String endpoint) {
+        EndpointStats stats = mEndpoints.get(endpoint);
+        if (stats == null) {
+            stats = new EndpointStats(endpoint);
+            mEndpoints.put(endpoint, stats);
+        }
+        return stats;
+    }
+
+    private static String name(RequestTiming.Phase phase) {
+        return phase.name().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Counters and histograms of a single endpoint.
+     */
+    private static class EndpointStats {
+        final String mEndpoint;
+        final LatencyHistogram[] mPhases = new LatencyHistogram[RequestTiming.Phase.values().length];
+        int mRequests;
+        int mCacheHits;
+        int mFailures;
+        long mWireBytes;
+        long mBodyBytes;
+
+        EndpointStats(String endpoint) {
+            mEndpoint = endpoint;
+            for (int i = 0; i < mPhases.length; i++) {
+                mPhases[i] = new LatencyHistogram();
+            }
+        }
+    }
+}
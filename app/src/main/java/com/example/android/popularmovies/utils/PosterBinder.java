@@ -0,0 +1,46 @@
+package com.example.android.popularmovies.utils;
+
+/**
+ * The work the movie grid does on every bind: looking the poster URL of the row up, and
+ * asking for the poster only if the row doesn't show it already, e.g. when a row is bound
+ * again for a change of its vote. It is kept apart from the views so that it can be run
+ * and measured on the JVM, binding a row must not allocate.
+ */
+public class PosterBinder {
+
+    /**
+     * A row of the grid showing a poster.
+     */
+    public interface Row {
+        /**
+         * Returns the URL of the poster shown or being loaded by the row, null if none.
+         */
+        String getPosterUrl();
+
+        /**
+         * Requests the given poster for the row.
+         */
+        void loadPoster(String posterPath, String posterUrl);
+    }
+
+    private final PosterUrlCache mUrlCache;
+
+    PosterBinder(PosterUrlCache urlCache) {
+        mUrlCache = urlCache;
+    }
+
+    /**
+     * Binds the given poster to the row, and records the bind time into the {@link GridStats}.
+     *
+     * @param size poster size, see {@link PosterUrlResolver#getPosterSize(int)}
+     */
+    public void bind(Row row, String posterPath, String size) {
+        long start = System.nanoTime();
+        // The URL is built once per movie, the same instance is returned on every bind
+        String posterUrl = mUrlCache.getPosterUrl(size, posterPath);
+        if (!posterUrl.equals(row.getPosterUrl())) {
+            row.loadPoster(posterPath, posterUrl);
+        }
+        GridStats.getInstance().recordBind(System.nanoTime() - start);
+    }
+}
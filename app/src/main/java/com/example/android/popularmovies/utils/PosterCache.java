@@ -0,0 +1,128 @@
+package com.example.android.popularmovies.utils;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.v4.graphics.BitmapCompat;
+import android.support.v4.util.LruCache;
+
+import com.squareup.picasso.Cache;
+
+/**
+ * The memory cache of the decoded posters shared by every Picasso request, sized from the
+ * memory class of the device.
+ * <p>
+ * When the system runs low on memory, {@link #trimMemory(int)} evicts the least recently
+ * used posters in steps: the harder the pressure, the less is kept, until the cache is
+ * cleared when the process is about to be killed.
+ */
+public class PosterCache implements Cache {
+
+    /**
+     * Share of the heap of the app given to the posters, Picasso uses about the same
+     */
+    private static final int HEAP_FRACTION = 7;
+
+    /**
+     * Share of the heap on low RAM devices, where the system kills background apps sooner
+     */
+    private static final int LOW_RAM_HEAP_FRACTION = 14;
+
+    /**
+     * Separates the URI from the options in the keys of Picasso
+     */
+    private static final char KEY_SEPARATOR = '\n';
+
+    private final LruCache<String, Bitmap> mCache;
+
+    public PosterCache(int maxSize) {
+        mCache = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return BitmapCompat.getAllocationByteCount(bitmap);
+            }
+        };
+    }
+
+    /**
+     * Returns a cache sized for the heap the system gives the app on this device.
+     */
+    public static PosterCache create(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean largeHeap = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+        int memoryClass = largeHeap ? activityManager.getLargeMemoryClass() : activityManager.getMemoryClass();
+        boolean lowRam = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && activityManager.isLowRamDevice();
+
+        int maxSize = memoryClass * 1024 * 1024 / (lowRam ? LOW_RAM_HEAP_FRACTION : HEAP_FRACTION);
+        return new PosterCache(maxSize);
+    }
+
+    /**
+     * Evicts posters according to the level given to
+     * {@link ComponentCallbacks2#onTrimMemory(int)}. The cache grows back to its maximum
+     * size as posters are loaded again.
+     */
+    public void trimMemory(int level) {
+        int maxSize = mCache.maxSize();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // In the middle of the background LRU list, the process is next in line to be killed
+            mCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCache.trimToSize(maxSize / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // No poster is on screen anymore, or the foreground app needs memory
+            mCache.trimToSize(maxSize / 2);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mCache.trimToSize(maxSize * 3 / 4);
+        }
+    }
+
+    @Override
+    public Bitmap get(String key) {
+        return mCache.get(key);
+    }
+
+    @Override
+    public void set(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null) {
+            throw new NullPointerException("key == null || bitmap == null");
+        }
+        mCache.put(key, bitmap);
+    }
+
+    @Override
+    public int size() {
+        return mCache.size();
+    }
+
+    @Override
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+
+    @Override
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    @Override
+    public void clearKeyUri(String uri) {
+        int length = uri.length();
+        for (String key : mCache.snapshot().keySet()) {
+            if (key.startsWith(uri) && key.length() > length && key.charAt(length) == KEY_SEPARATOR) {
+                mCache.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mCache.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.android.popularmovies.utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The poster URLs built so far, by size and poster path, so that binding a row of the grid
+ * looks its URL up instead of building a new string every time it scrolls into view.
+ * The URLs used the least recently are dropped first.
+ */
+class PosterUrlCache {
+
+    private final int mMaxUrlsPerSize;
+
+    private final Map<String, Map<String, String>> mUrlsBySize = new HashMap<>();
+
+    /**
+     * @param maxUrlsPerSize number of URLs kept for each poster size, more than the movies
+     *                       usually loaded in the grid
+     */
+    PosterUrlCache(int maxUrlsPerSize) {
+        mMaxUrlsPerSize = maxUrlsPerSize;
+    }
+
+    /**
+     * Returns the URL of the given poster in the given size, the same instance every time
+     * while it is kept.
+     */
+    synchronized String getPosterUrl(String size, String posterPath) {
+        Map<String, String> urls = mUrlsBySize.get(size);
+        if (urls == null) {
+            urls = new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > mMaxUrlsPerSize;
+                }
+            };
+            mUrlsBySize.put(size, urls);
+        }
+        String url = urls.get(posterPath);
+        if (url == null) {
+            url = PosterUrlResolver.IMAGE_BASE_URL + size + posterPath;
+            urls.put(posterPath, url);
+        }
+        return url;
+    }
+}
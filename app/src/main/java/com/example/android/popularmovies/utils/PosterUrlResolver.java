@@ -0,0 +1,175 @@
+package com.example.android.popularmovies.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.telephony.TelephonyManager;
+
+/**
+ * Builds the URLs of The Movie Database posters, picking the smallest size that covers
+ * the pixel width the poster is displayed at. On metered or slow connections a smaller
+ * size is picked, trading some sharpness for fewer bytes, and on slow connections the
+ * smallest size can be shown first as a preview.
+ */
+public class PosterUrlResolver {
+
+    /**
+     * Base URL for poster images, followed by the size and the poster path
+     */
+    public static final String IMAGE_BASE_URL = "https://image.tmdb.org/t/p/";
+
+    /**
+     * Poster sizes served by TMDB, from the smallest to the largest, and their pixel widths
+     */
+    private static final String[] SIZES = {"w92", "w154", "w185", "w342", "w500", "w780", "original"};
+    private static final int[] WIDTHS = {92, 154, 185, 342, 500, 780, Integer.MAX_VALUE};
+
+    /**
+     * Smallest size, shown first on slow connections until the poster is in
+     */
+    private static final String PREVIEW_SIZE = "w92";
+
+    /**
+     * Sizes stepped down on slow mobile networks, and on other metered networks
+     */
+    private static final int SLOW_STEPS_DOWN = 2;
+    private static final int METERED_STEPS_DOWN = 1;
+
+    /**
+     * Size used when the display width isn't known yet
+     */
+    private static final String DEFAULT_SIZE = "w185";
+
+    /**
+     * How long the connection quality is trusted before it is checked again
+     */
+    private static final long CONNECTION_CHECK_INTERVAL_MILLIS = 10000;
+
+    /**
+     * URLs kept for each size, a few times the pages of movies loaded in a session
+     */
+    private static final int MAX_URLS_PER_SIZE = 1000;
+
+    private static PosterUrlResolver sInstance;
+
+    private final ConnectivityManager mConnectivityManager;
+
+    private final PosterUrlCache mUrlCache = new PosterUrlCache(MAX_URLS_PER_SIZE);
+
+    private final PosterBinder mPosterBinder = new PosterBinder(mUrlCache);
+
+    /**
+     * Number of sizes to step down for the current connection, and when it was checked
+     */
+    private int mStepsDown;
+    private long mConnectionCheckedAt = -CONNECTION_CHECK_INTERVAL_MILLIS;
+
+    private PosterUrlResolver(Context context) {
+        mConnectivityManager = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Returns the resolver shared by the whole application.
+     */
+    public static synchronized PosterUrlResolver getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PosterUrlResolver(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the URL of the given poster for an image view of the given pixel width.
+     * The URLs are built once and reused, binding a row doesn't allocate.
+     *
+     * @param posterPath as returned by the API, e.g. "/kqjL17yufvn9OVLyXYpvtyrFfak.jpg"
+     * @param widthPx    width of the image view in pixels, 0 if it isn't known yet
+     */
+    public String getPosterUrl(String posterPath, int widthPx) {
+        return mUrlCache.getPosterUrl(getPosterSize(widthPx), posterPath);
+    }
+
+    /**
+     * Returns the poster size for an image view of the given pixel width, 0 if it isn't
+     * known yet.
+     */
+    public String getPosterSize(int widthPx) {
+        return widthPx > 0 ? selectSize(widthPx, getStepsDown()) : DEFAULT_SIZE;
+    }
+
+    /**
+     * Returns the binder of the grid posters, sharing the URLs built by this resolver.
+     */
+    public PosterBinder getPosterBinder() {
+        return mPosterBinder;
+    }
+
+    /**
+     * Returns the URL of the given poster in the smallest size, a few KB.
+     */
+    public String getPreviewUrl(String posterPath) {
+        return mUrlCache.getPosterUrl(PREVIEW_SIZE, posterPath);
+    }
+
+    /**
+     * Returns true on slow mobile networks, where a poster takes seconds to download.
+     */
+    public boolean isSlowConnection() {
+        return getStepsDown() == SLOW_STEPS_DOWN;
+    }
+
+    /**
+     * Returns the smallest poster size at least as wide as the given width,
+     * then steps down the given number of sizes, never going below the smallest one.
+     */
+    public static String selectSize(int widthPx, int stepsDown) {
+        int index = 0;
+        while (WIDTHS[index] < widthPx) {
+            index++;
+        }
+        return SIZES[Math.max(0, index - stepsDown)];
+    }
+
+    /**
+     * Returns the number of sizes to step down for the active connection:
+     * two on slow mobile networks, one on other metered networks, none otherwise.
+     */
+    private synchronized int getStepsDown() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - mConnectionCheckedAt < CONNECTION_CHECK_INTERVAL_MILLIS) {
+            return mStepsDown;
+        }
+        mConnectionCheckedAt = now;
+
+        NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            // Posters can only come from the cache, keep the URLs they were cached with
+            mStepsDown = 0;
+        } else if (isSlowNetwork(networkInfo)) {
+            mStepsDown = SLOW_STEPS_DOWN;
+        } else if (mConnectivityManager.isActiveNetworkMetered()) {
+            mStepsDown = METERED_STEPS_DOWN;
+        } else {
+            mStepsDown = 0;
+        }
+        return mStepsDown;
+    }
+
+    private static boolean isSlowNetwork(NetworkInfo networkInfo) {
+        if (networkInfo.getType() != ConnectivityManager.TYPE_MOBILE) {
+            return false;
+        }
+        switch (networkInfo.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.android.popularmovies.utils;
+
+import java.util.Locale;
+
+/**
+ * Counters of the poster prefetch of the movie grid, kept in memory for the life of the
+ * process and shown in the network stats debug screen next to the {@link GridStats}.
+ * <p>
+ * Every poster bound while the grid scrolls is a hit if its prefetch completed before,
+ * late if it was still downloading, and a miss otherwise.
+ */
+public class PrefetchStats {
+
+    private static final PrefetchStats sInstance = new PrefetchStats();
+
+    private long mQueued;
+    private long mCancelled;
+    private long mCompleted;
+    private long mFailed;
+    private long mHits;
+    private long mLate;
+    private long mMisses;
+
+    /**
+     * Returns the statistics of the poster prefetch.
+     */
+    public static PrefetchStats getInstance() {
+        return sInstance;
+    }
+
+    public synchronized void recordQueued() {
+        mQueued++;
+    }
+
+    /**
+     * Adds posters dropped from the queue before their download started.
+     */
+    public synchronized void recordCancelled(int count) {
+        mCancelled += count;
+    }
+
+    public synchronized void recordCompleted() {
+        mCompleted++;
+    }
+
+    public synchronized void recordFailed() {
+        mFailed++;
+    }
+
+    public synchronized void recordHit() {
+        mHits++;
+    }
+
+    public synchronized void recordLate() {
+        mLate++;
+    }
+
+    public synchronized void recordMiss() {
+        mMisses++;
+    }
+
+    /**
+     * Forgets everything recorded so far, e.g. before a measure.
+     */
+    public synchronized void clear() {
+        mQueued = 0;
+        mCancelled = 0;
+        mCompleted = 0;
+        mFailed = 0;
+        mHits = 0;
+        mLate = 0;
+        mMisses = 0;
+    }
+
+    /**
+     * Ratio of the posters bound while scrolling that were already prefetched
+     */
+    public synchronized float getHitRate() {
+        long bound = mHits + mLate + mMisses;
+        return bound == 0 ? 0 : (float) mHits / bound;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getLateCount() {
+        return mLate;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Returns a human readable report.
+     */
+    public synchronized String getReport() {
+        return String.format(Locale.US, "poster prefetch\n"
+                        + "  hit rate %.2f: %d hits, %d late, %d misses\n"
+                        + "  %d queued, %d cancelled, %d completed, %d failed\n",
+                getHitRate(), mHits, mLate, mMisses, mQueued, mCancelled, mCompleted, mFailed);
+    }
+}
@@ -6,6 +6,9 @@ import android.util.Log;
 import com.example.android.popularmovies.BuildConfig;
 import com.example.android.popularmovies.model.Movie;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -19,6 +22,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -36,6 +40,11 @@ public class QueryUtils {
      */
     public static final String MOVIE_BASE_URL = "https://api.themoviedb.org/3/";
 
+    /**
+     * Version of the API, the first segment of the path of every request
+     */
+    private static final String API_VERSION = "3/";
+
     /**
      * Endpoint for popular movies
      */
@@ -51,11 +60,42 @@ public class QueryUtils {
      */
     public static final String API_KEY_VARIABLE = "?api_key=" + BuildConfig.API_KEY;
 
+    /**
+     * Page variable, appended after the API key
+     */
+    public static final String PAGE_VARIABLE = "&page=";
 
+    /**
+     * Number of the first page of results
+     */
+    public static final int FIRST_PAGE = 1;
 
+    /**
+     * Number of movies in every page of results, except the last one
+     */
+    public static final int RESULTS_PER_PAGE = 20;
 
+    /**
+     * List of JSON constants
+     */
+    private static final String JSON_RESULTS_ARRAY = "results";
+    private static final String JSON_ID = "id";
+    private static final String JSON_TITLE_KEY = "title";
+    private static final String JSON_RELEASE_DATE = "release_date";
+    private static final String JSON_POSTER_PATH = "poster_path";
+    private static final String JSON_VOTE_AVERAGE = "vote_average";
+    private static final String JSON_OVERVIEW = "overview";
 
+    /**
+     * Default values used when a field is missing from the JSON response
+     */
+    private static final String NO_POSTER = "No poster";
+    private static final String NO_PLOT = "No plot";
 
+    /**
+     * Requests in flight by normalized URL, shared by the callers asking for the same URL
+     */
+    private static final SingleFlight<List<Movie>> sRequests = new SingleFlight<>();
 
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
@@ -67,21 +107,142 @@ public class QueryUtils {
 
     /**
      * Query the Movie Database dataset and return a list of {@link Movie} objects.
+     * <p>
+     * When a {@link MovieResponseCache} is installed, a fresh cached response is used without
+     * touching the network, a stale one is revalidated with a conditional request and served
+     * again if the network fails.
+     * <p>
+     * Callers asking for the same URL at the same time share a single request: the first one
+     * makes it, the others wait for it and get the same list of movies, which therefore
+     * can't be modified.
+     * <p>
+     * The request is made for the screen the user is looking at, see
+     * {@link #fetchMovieData(String, RequestGate.Priority)}.
      */
     public static List<Movie> fetchMovieData(String requestUrl) {
+        return fetchMovieData(requestUrl, RequestGate.Priority.VISIBLE);
+    }
+
+    /**
+     * Query the Movie Database dataset and return a list of {@link Movie} objects, or null
+     * if the request failed or was dropped by the {@link RequestGate}. The list is empty if
+     * the server has no movies there, e.g. for a page past the end of the list.
+     * <p>
+     * Only the callers of the same priority share a request, so that the screen never waits
+     * behind a prefetch of the same page, or gets nothing when that prefetch is dropped.
+     *
+     * @param priority why the request is made, the less important ones wait or are dropped
+     *                 when there are too many requests
+     */
+    public static List<Movie> fetchMovieData(final String requestUrl, final RequestGate.Priority priority) {
+        return sRequests.execute(priority + " " + MovieResponseCache.normalizeUrl(requestUrl),
+                new SingleFlight.Call<List<Movie>>() {
+                    @Override
+                    public List<Movie> call() {
+                        List<Movie> movies = fetchMovieDataOnce(requestUrl, priority);
+                        return movies != null ? Collections.unmodifiableList(movies) : null;
+                    }
+                });
+    }
+
+    /**
+     * Returns the statistics of the requests shared by {@link #fetchMovieData(String)}.
+     */
+    public static SingleFlight<List<Movie>> getRequests() {
+        return sRequests;
+    }
+
+    private static List<Movie> fetchMovieDataOnce(String requestUrl, RequestGate.Priority priority) {
+        // Look for a cached response first
+        MovieResponseCache cache = MovieResponseCache.getInstance();
+        MovieResponseCache.Entry cached = cache != null ? cache.get(requestUrl) : null;
+        if (cached != null && cached.isFresh()) {
+            List<Movie> movies = readCachedMovies(cache, cached);
+            if (movies != null) {
+                NetworkStats.getInstance().recordCacheHit(getEndpoint(requestUrl));
+                return movies;
+            }
+        }
+
         // Create URL object
         URL url = createUrl(requestUrl);
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        // Perform HTTP request to the URL and parse the JSON response while it is downloaded
+        List<Movie> movies = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            movies = makeHttpRequest(url, priority, cache, cached);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem making the HTTP request.", e);
         }
 
+        // Fall back to the stale response if the server couldn't be reached
+        if (movies == null && cached != null) {
+            movies = readCachedMovies(cache, cached);
+        }
+
         // Return the list of {@link Movie}s
-        return extractMovieFromJson(jsonResponse);
+        return movies;
+    }
+
+    /**
+     * Return the list of {@link Movie} objects of a cached response that needs to be revalidated,
+     * without touching the network. Returns null if there is no such response, in which case
+     * {@link #fetchMovieData(String)} should be called straight away.
+     */
+    public static List<Movie> fetchStaleMovieData(String requestUrl) {
+        MovieResponseCache cache = MovieResponseCache.getInstance();
+        // Not counted, the request that follows looks the entry up again
+        MovieResponseCache.Entry cached = cache != null ? cache.peek(requestUrl) : null;
+        if (cached == null || cached.isFresh()) {
+            return null;
+        }
+        return readCachedMovies(cache, cached);
+    }
+
+    /**
+     * Parse the body of a cached response, or return null if it cannot be read.
+     */
+    private static List<Movie> readCachedMovies(MovieResponseCache cache, MovieResponseCache.Entry entry) {
+        InputStream inputStream = null;
+        try {
+            inputStream = cache.openBody(entry);
+            return extractMoviesFromStream(inputStream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cached JSON results.", e);
+            return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the cached JSON results.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the request URL of the given page of a movie list endpoint,
+     * e.g. {@link #MOVIE_POPULAR_ENDPOINT}.
+     */
+    public static String buildMoviesUrl(String endpoint, int page) {
+        return MOVIE_BASE_URL + endpoint + API_KEY_VARIABLE + PAGE_VARIABLE + page;
+    }
+
+    /**
+     * Returns the endpoint of the given request URL, e.g. "movie/popular", the requests
+     * are timed by endpoint in the {@link NetworkStats}.
+     */
+    static String getEndpoint(String requestUrl) {
+        // The path after the API version, whatever the host
+        int scheme = requestUrl.indexOf("://");
+        int start = requestUrl.indexOf('/', scheme != -1 ? scheme + 3 : 0);
+        if (start == -1) {
+            return requestUrl;
+        }
+        int end = requestUrl.indexOf('?', start);
+        String path = requestUrl.substring(start + 1, end != -1 ? end : requestUrl.length());
+        return path.startsWith(API_VERSION) ? path.substring(API_VERSION.length()) : path;
     }
 
     /**
@@ -98,57 +259,140 @@ public class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make an HTTP request to the given URL and return the list of movies
+     * streamed out of the response body. If a cached entry is given, the request is
+     * made conditional on it, and a 200 response is written to the cache as it is parsed.
+     * <p>
+     * The request is retried and hedged by the {@link FetchPolicy} until response headers
+     * arrive, and the phases of the request are timed into the {@link NetworkStats}.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static List<Movie> makeHttpRequest(final URL url, RequestGate.Priority priority,
+                                               MovieResponseCache cache,
+                                               final MovieResponseCache.Entry cached) throws IOException {
+        List<Movie> movies = null;
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return movies;
         }
 
-        HttpURLConnection urlConnection = null;
+        // The shared client pools the connections and asks for gzipped responses
+        final MovieHttpClient httpClient = MovieHttpClient.getInstance();
+        if (cached != null && cached.hasValidators()) {
+            cache.recordRevalidation();
+        }
+        FetchPolicy.Response response = FetchPolicy.getInstance().execute(httpClient,
+                getEndpoint(url.toString()), priority, new FetchPolicy.Request() {
+                    @Override
+                    public HttpURLConnection open() throws IOException {
+                        HttpURLConnection urlConnection = httpClient.open(url);
+                        if (cached != null) {
+                            // Ask the server to only send the response if it changed
+                            if (cached.getEtag() != null) {
+                                urlConnection.setRequestProperty("If-None-Match", cached.getEtag());
+                            }
+                            if (cached.getLastModified() != null) {
+                                urlConnection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+                            }
+                        }
+                        return urlConnection;
+                    }
+                });
+
+        HttpURLConnection urlConnection = response.getConnection();
+        RequestTiming timing = response.getTiming();
         InputStream inputStream = null;
-        int connectionReadTimeout = 10000; /* milliseconds */
-        int connectionTimeout = 15000; /* milliseconds */
-
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(connectionReadTimeout);
-            urlConnection.setConnectTimeout(connectionTimeout);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
             // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            // then parse the response straight from the input stream.
+            int responseCode = response.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                inputStream = httpClient.getInputStream(urlConnection, timing);
+                if (cache != null) {
+                    movies = parseAndCache(cache, url, urlConnection, inputStream);
+                } else {
+                    movies = extractMoviesFromStream(inputStream);
+                }
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                // The cached response is still valid, refresh its freshness and use it
+                MovieResponseCache.Entry updated = cache.update(cached,
+                        urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"),
+                        urlConnection.getHeaderField("Cache-Control"));
+                movies = readCachedMovies(cache, updated);
+            } else if (isNoSuchPage(responseCode)) {
+                // e.g. 422 past the last page TMDB serves: sending it again won't help,
+                // the list has no more movies
+                Log.w(LOG_TAG, "No movies at " + timing.getEndpoint() + ", response code: " + responseCode);
+                movies = Collections.emptyList();
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
             }
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem retrieving the JSON results.", e);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
-                // could be thrown.
-                inputStream.close();
-            }
+            timing.markFinished();
+            // Don't disconnect, releasing the connection lets the next request reuse its socket
+            httpClient.release(urlConnection, inputStream);
+            NetworkStats.getInstance().record(timing);
+        }
+        return movies;
+    }
+
+    /**
+     * Returns true for the client errors that aren't worth retrying, TMDB answers them when
+     * the page or the list asked for doesn't exist.
+     */
+    static boolean isNoSuchPage(int responseCode) {
+        return responseCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                && responseCode < HttpURLConnection.HTTP_INTERNAL_ERROR
+                && !FetchPolicy.isRetryable(responseCode);
+    }
+
+    /**
+     * Parse the response body and write it to the cache at the same time.
+     * The body is only committed to the cache if it could be parsed, and a failure to write
+     * the cache doesn't lose the parsed movies: only a parse error is thrown.
+     */
+    private static List<Movie> parseAndCache(MovieResponseCache cache, URL url,
+                                             HttpURLConnection urlConnection,
+                                             InputStream inputStream) throws IOException {
+        MovieResponseCache.Editor editor;
+        try {
+            editor = cache.edit(url.toString());
+        } catch (IOException e) {
+            // Not being able to cache the response shouldn't stop us from showing it
+            Log.e(LOG_TAG, "Problem writing the response to the cache.", e);
+            return extractMoviesFromStream(inputStream);
+        }
+        InputStream teeStream = editor.tee(inputStream);
+        List<Movie> movies;
+        try {
+            movies = extractMoviesFromStream(teeStream);
+        } catch (IOException e) {
+            editor.abort();
+            throw e;
+        }
+        try {
+            editor.commit(teeStream,
+                    urlConnection.getHeaderField("ETag"),
+                    urlConnection.getHeaderField("Last-Modified"),
+                    urlConnection.getHeaderField("Cache-Control"));
+        } catch (IOException e) {
+            editor.abort();
+            Log.e(LOG_TAG, "Problem writing the response to the cache.", e);
         }
-        return jsonResponse;
+        return movies;
     }
 
     /**
      * Convert the {@link InputStream} into a String which contains the
      * whole JSON response from the server.
+     * <p>
+     * This is only needed by the string based {@link #extractMovieFromJson(String)} path;
+     * network responses go through {@link #extractMoviesFromStream(InputStream)}.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
+    static String readFromStream(InputStream inputStream) throws IOException {
         StringBuilder output = new StringBuilder();
         if (inputStream != null) {
             InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
@@ -172,15 +416,6 @@ public class QueryUtils {
             return null;
         }
 
-        // List of JSON constants
-        final String JSON_RESULTS_ARRAY = "results";
-        final String JSON_TITLE_KEY = "title";
-        final String JSON_RELEASE_DATE = "release_date";
-        final String JSON_POSTER_PATH = "poster_path";
-        final String JSON_VOTE_AVERAGE = "vote_average";
-        final String JSON_OVERVIEW = "overview";
-
-
         // Create an empty ArrayList that we can start adding movies
         List<Movie> movies = new ArrayList<>();
 
@@ -200,6 +435,8 @@ public class QueryUtils {
             for (int i = 0; i < movieArray.length(); i++) {
                 //Get a single movie and position it within the list of movies
                 JSONObject currentMovie = movieArray.getJSONObject(i);
+                // Extract the value for the key called "id"
+                int id = currentMovie.optInt(JSON_ID);
                 // Extract the value for the key called "title"
                 String title = currentMovie.optString(JSON_TITLE_KEY);
                 // Extract the value for the key called "release_date" if it exists
@@ -207,17 +444,17 @@ public class QueryUtils {
                 if (currentMovie.has(JSON_RELEASE_DATE)) {
                     date = currentMovie.optString(JSON_RELEASE_DATE);
                 } else {
-                    date = "No date";
+                    date = null;
                 }
                 // Extract the value for the key called "poster_path" if it exists
                 String image;
                 if (currentMovie.has(JSON_POSTER_PATH)) {
                     image = currentMovie.optString(JSON_POSTER_PATH);
                 } else {
-                    image = "No poster";
+                    image = NO_POSTER;
                 }
                 // Extract the value for the key called "vote_average" if it exists
-                Double vote;
+                double vote;
                 if (currentMovie.has(JSON_VOTE_AVERAGE)) {
                     vote = currentMovie.optDouble(JSON_VOTE_AVERAGE);
                 } else {
@@ -228,12 +465,12 @@ public class QueryUtils {
                 if (currentMovie.has(JSON_OVERVIEW)) {
                     plot = currentMovie.optString(JSON_OVERVIEW);
                 } else {
-                    plot = "No plot";
+                    plot = NO_PLOT;
                 }
 
-                // Create a new {@link Movie} object with the title, date, image,
+                // Create a new {@link Movie} object with the id, title, date, image,
                 // vote and plot from the JSON response.
-                Movie movie = new Movie(title, date, image, vote, plot);
+                Movie movie = new Movie(id, title, date, image, vote, plot);
                 movies.add(movie);
             }
 
@@ -248,4 +485,89 @@ public class QueryUtils {
         return movies;
     }
 
+    /**
+     * Return a list of {@link Movie} objects parsed token by token from the given
+     * {@link InputStream}, without building the whole response String or a JSON tree.
+     * Only the "results" array is read, every other field of the response is skipped.
+     *
+     * @throws IOException if the response couldn't be read, or isn't a list of movies
+     */
+    public static List<Movie> extractMoviesFromStream(InputStream inputStream) throws IOException {
+        // Create an empty ArrayList that we can start adding movies
+        List<Movie> movies = new ArrayList<>();
+
+        // JsonReader keeps its own buffer, so the stream doesn't need to be wrapped in a BufferedReader
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (JSON_RESULTS_ARRAY.equals(reader.nextName())) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        movies.add(readMovie(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader throws these when the response doesn't have the expected
+            // structure, the movies parsed so far can't be trusted
+            throw new IOException("Problem parsing the JSON results", e);
+        }
+
+        // Return the list of movies
+        return movies;
+    }
+
+    /**
+     * Read a single movie object of the "results" array. Missing fields get the
+     * same default values used by {@link #extractMovieFromJson(String)}.
+     */
+    private static Movie readMovie(JsonReader reader) throws IOException {
+        int id = 0;
+        String title = "";
+        String date = null;
+        String image = NO_POSTER;
+        double vote = Double.NaN;
+        String plot = NO_PLOT;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case JSON_ID:
+                    id = reader.nextInt();
+                    break;
+                case JSON_TITLE_KEY:
+                    title = reader.nextString();
+                    break;
+                case JSON_RELEASE_DATE:
+                    date = reader.nextString();
+                    break;
+                case JSON_POSTER_PATH:
+                    image = reader.nextString();
+                    break;
+                case JSON_VOTE_AVERAGE:
+                    vote = reader.nextDouble();
+                    break;
+                case JSON_OVERVIEW:
+                    plot = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return new Movie(id, title, date, image, vote, plot);
+    }
+
 }
@@ -0,0 +1,144 @@
+package com.example.android.popularmovies.utils;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Converts the release dates of The Movie Database, e.g. "2018-02-13", to and from
+ * a number of days since 1970-01-01, so that a {@link com.example.android.popularmovies.model.Movie}
+ * stores a single int instead of a String, and formats them for display.
+ */
+public final class ReleaseDates {
+
+    /**
+     * Value of a release date that is missing or can't be parsed
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Display formatter and the locale it was created for, created again when the locale changes
+     */
+    private static DateFormat sFormatter;
+    private static Locale sFormatterLocale;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ReleaseDates} object.
+     */
+    private ReleaseDates() {
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to the given "yyyy-MM-dd" date,
+     * or {@link #UNKNOWN} if the date doesn't have that format or doesn't exist,
+     * e.g. "2019-02-29".
+     */
+    public static int parse(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return UNKNOWN;
+        }
+        int year = parseDigits(date, 0, 4);
+        int month = parseDigits(date, 5, 7);
+        int day = parseDigits(date, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return UNKNOWN;
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Returns the given day as a "yyyy-MM-dd" date, or null if it is {@link #UNKNOWN}.
+     */
+    public static String toIsoString(int epochDay) {
+        if (epochDay == UNKNOWN) {
+            return null;
+        }
+        // Days from 0000-03-01, so that the leap day is the last day of the year
+        long days = epochDay + 719468L;
+        long era = (days >= 0 ? days : days - 146096) / 146097;
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        char[] chars = new char[10];
+        writeDigits(chars, 0, 4, year);
+        chars[4] = '-';
+        writeDigits(chars, 5, 7, month);
+        chars[7] = '-';
+        writeDigits(chars, 8, 10, day);
+        return new String(chars);
+    }
+
+    /**
+     * Returns the given day in the long date format of the default locale,
+     * e.g. "February 13, 2018", or null if it is {@link #UNKNOWN}.
+     * The formatter is created once and reused until the locale changes.
+     */
+    public static synchronized String format(int epochDay) {
+        if (epochDay == UNKNOWN) {
+            return null;
+        }
+        Locale locale = Locale.getDefault();
+        if (sFormatter == null || !locale.equals(sFormatterLocale)) {
+            sFormatter = DateFormat.getDateInstance(DateFormat.LONG, locale);
+            // Days are counted in UTC, format them in UTC so the day never shifts
+            sFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+            sFormatterLocale = locale;
+        }
+        return sFormatter.format(new Date(epochDay * MILLIS_PER_DAY));
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int toEpochDay(int year, int month, int day) {
+        // Count the years from March, so that the leap day is the last day of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Returns the number written with the characters from start to end, or -1 if one isn't a digit.
+     */
+    private static int parseDigits(String string, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void writeDigits(char[] chars, int start, int end, int value) {
+        for (int i = end - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.android.popularmovies.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the requests to The Movie Database under its rate limit, so that paging, prefetches,
+ * detail screens and the background sync together never get the visible grid answered
+ * with 429s.
+ * <p>
+ * Every attempt takes a token from a bucket refilled at a steady rate. The requests waiting
+ * for a token are served by {@link Priority}, then in arrival order. The less important ones
+ * can't take the last tokens of the bucket, which are kept for the screen, and are dropped
+ * when they wait too long. When the server answers with a Retry-After header, no token is
+ * given before that time, and the prefetches and syncs arriving meanwhile are dropped.
+ * <p>
+ * The queue depths and the time waited by priority are shown in the network stats screen.
+ */
+public class RequestGate {
+
+    /**
+     * Why a request is made, from the most important to the least.
+     */
+    public enum Priority {
+        /**
+         * The grid the user is looking at and its next pages
+         */
+        VISIBLE,
+        /**
+         * The detail screen the user opened
+         */
+        DETAIL,
+        /**
+         * A list the user may switch to
+         */
+        PREFETCH,
+        /**
+         * A refresh of the lists while the device charges
+         */
+        SYNC
+    }
+
+    /**
+     * TMDB lets a client make about 40 requests per second, the app stays well under it
+     */
+    private static final double DEFAULT_PERMITS_PER_SECOND = 10;
+    private static final int DEFAULT_BURST = 20;
+
+    /**
+     * Share of the bucket each priority can't take, kept for the more important ones
+     */
+    private static final double[] RESERVED_SHARES = {0, 0.1, 0.25, 0.5};
+
+    /**
+     * How long each priority waits for a token before it is dropped. A prefetch that waits
+     * is already late, the sync runs in the background and can wait longer.
+     */
+    private static final long[] DEFAULT_MAX_WAIT_MILLIS = {Long.MAX_VALUE, Long.MAX_VALUE, 2000, 30000};
+
+    private static final int PRIORITIES = Priority.values().length;
+
+    private static volatile RequestGate sInstance;
+
+    private final double mPermitsPerNano;
+    private final int mBurst;
+    private final long[] mMaxWaitNanos = new long[PRIORITIES];
+    private final int[] mReserved = new int[PRIORITIES];
+
+    private double mTokens;
+    private long mRefilledAtNanos;
+
+    /**
+     * No token is given before this time, set by a Retry-After header
+     */
+    private long mBlockedUntilNanos;
+    private boolean mBlocked;
+
+    /**
+     * The requests waiting for a token, by priority in arrival order
+     */
+    private final List<ArrayDeque<Object>> mQueues = new ArrayList<>(PRIORITIES);
+
+    private final int[] mMaxQueueDepths = new int[PRIORITIES];
+    private final long[] mGranted = new long[PRIORITIES];
+    private final long[] mDropped = new long[PRIORITIES];
+    private final LatencyHistogram[] mWaitTimes = new LatencyHistogram[PRIORITIES];
+    private int mRetryAfterCount;
+
+    /**
+     * Constructs a new {@link RequestGate} with the default wait of each priority.
+     *
+     * @param permitsPerSecond rate at which the bucket is refilled
+     * @param burst            size of the bucket, the requests that can be made at once
+     */
+    public RequestGate(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param maxWaitMillis how long a request of each priority waits before it is dropped,
+     *                      by {@link Priority} ordinal
+     */
+    RequestGate(double permitsPerSecond, int burst, long[] maxWaitMillis) {
+        mPermitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        mBurst = burst;
+        mTokens = burst;
+        mRefilledAtNanos = System.nanoTime();
+        for (int i = 0; i < PRIORITIES; i++) {
+            mMaxWaitNanos[i] = maxWaitMillis[i] == Long.MAX_VALUE
+                    ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(maxWaitMillis[i]);
+            // A token is always left to every priority, however small the bucket
+            mReserved[i] = Math.min(burst - 1, (int) Math.ceil(RESERVED_SHARES[i] * burst));
+            mQueues.add(new ArrayDeque<Object>());
+            mWaitTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Installs the gate used by the {@link FetchPolicy}.
+     */
+    public static void install(RequestGate gate) {
+        sInstance = gate;
+    }
+
+    /**
+     * Returns the installed gate, creating one with the default rate if none was installed.
+     */
+    public static RequestGate getInstance() {
+        if (sInstance == null) {
+            synchronized (RequestGate.class) {
+                if (sInstance == null) {
+                    sInstance = new RequestGate(DEFAULT_PERMITS_PER_SECOND, DEFAULT_BURST);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Waits for a token for a request of the given priority. Returns false if the request
+     * must not be made: it waited longer than its priority allows, or it is a prefetch or
+     * a sync while the server asked to slow down.
+     *
+     * @throws InterruptedIOException if the caller was interrupted while waiting
+     */
+    public boolean acquire(Priority priority) throws InterruptedIOException {
+        int p = priority.ordinal();
+        long start = System.nanoTime();
+        long deadline = mMaxWaitNanos[p] == Long.MAX_VALUE ? Long.MAX_VALUE : start + mMaxWaitNanos[p];
+        Object waiter = new Object();
+        synchronized (this) {
+            if (p >= Priority.PREFETCH.ordinal() && isBlocked(start)) {
+                mDropped[p]++;
+                return false;
+            }
+            ArrayDeque<Object> queue = mQueues.get(p);
+            queue.addLast(waiter);
+            mMaxQueueDepths[p] = Math.max(mMaxQueueDepths[p], queue.size());
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    if (isTurn(p, waiter) && tryTake(p, now)) {
+                        mGranted[p]++;
+                        mWaitTimes[p].record((now - start) / 1000);
+                        return true;
+                    }
+                    if (deadline - now <= 0) {
+                        mDropped[p]++;
+                        return false;
+                    }
+                    long waitNanos = Math.min(deadline - now, getNanosToToken(p, now));
+                    TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request token");
+            } finally {
+                queue.remove(waiter);
+                // The next waiter may be able to go
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Takes a token for a request of the given priority only if one is free right now, and
+     * no request of the same or a higher priority is waiting. Used for the optional hedged
+     * attempts, which are better skipped than queued.
+     */
+    public synchronized boolean tryAcquire(Priority priority) {
+        int p = priority.ordinal();
+        long now = System.nanoTime();
+        refill(now);
+        for (int i = 0; i <= p; i++) {
+            if (!mQueues.get(i).isEmpty()) {
+                return false;
+            }
+        }
+        if (!tryTake(p, now)) {
+            return false;
+        }
+        mGranted[p]++;
+        mWaitTimes[p].record(0);
+        return true;
+    }
+
+    /**
+     * Stops giving tokens for the given time, as asked by the Retry-After header of a 429
+     * or 503 response. The bucket is emptied, so the requests resume at the steady rate.
+     */
+    public synchronized void onRetryAfter(long delayMillis) {
+        long now = System.nanoTime();
+        long until = now + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        if (!isBlocked(now) || until - mBlockedUntilNanos > 0) {
+            mBlockedUntilNanos = until;
+            mBlocked = true;
+        }
+        mTokens = 0;
+        mRefilledAtNanos = now;
+        mRetryAfterCount++;
+        notifyAll();
+    }
+
+    /**
+     * Returns the delay asked by a Retry-After header in milliseconds, either a number of
+     * seconds or an HTTP date, or -1 if there is none or it can't be parsed.
+     *
+     * @param nowMillis current time, to turn a date into a delay
+     */
+    public static long parseRetryAfter(String header, long nowMillis) {
+        if (header == null) {
+            return -1;
+        }
+        String value = header.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : TimeUnit.SECONDS.toMillis(seconds);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, maybe a date
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(value).getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private boolean isBlocked(long now) {
+        if (mBlocked && now - mBlockedUntilNanos >= 0) {
+            mBlocked = false;
+        }
+        return mBlocked;
+    }
+
+    /**
+     * Returns true if no request of a higher priority waits, and the given waiter is the
+     * first of its priority.
+     */
+    private boolean isTurn(int p, Object waiter) {
+        for (int i = 0; i < p; i++) {
+            if (!mQueues.get(i).isEmpty()) {
+                return false;
+            }
+        }
+        return mQueues.get(p).peekFirst() == waiter;
+    }
+
+    /**
+     * Takes a token if the bucket isn't blocked and has more than the tokens reserved for
+     * the higher priorities.
+     */
+    private boolean tryTake(int p, long now) {
+        if (isBlocked(now) || mTokens < 1 + mReserved[p]) {
+            return false;
+        }
+        mTokens -= 1;
+        return true;
+    }
+
+    private void refill(long now) {
+        if (isBlocked(now)) {
+            mRefilledAtNanos = now;
+            return;
+        }
+        mTokens = Math.min(mBurst, mTokens + (now - mRefilledAtNanos) * mPermitsPerNano);
+        mRefilledAtNanos = now;
+    }
+
+    /**
+     * Returns how long until a request of the given priority could take a token, if it
+     * were its turn.
+     */
+    private long getNanosToToken(int p, long now) {
+        if (isBlocked(now)) {
+            return mBlockedUntilNanos - now;
+        }
+        double missing = 1 + mReserved[p] - mTokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / mPermitsPerNano);
+    }
+
+    /**
+     * Number of requests of the given priority waiting for a token right now
+     */
+    public synchronized int getQueueDepth(Priority priority) {
+        return mQueues.get(priority.ordinal()).size();
+    }
+
+    /**
+     * Largest number of requests of the given priority that waited at the same time
+     */
+    public synchronized int getMaxQueueDepth(Priority priority) {
+        return mMaxQueueDepths[priority.ordinal()];
+    }
+
+    public synchronized long getGrantedCount(Priority priority) {
+        return mGranted[priority.ordinal()];
+    }
+
+    public synchronized long getDroppedCount(Priority priority) {
+        return mDropped[priority.ordinal()];
+    }
+
+    /**
+     * Returns a copy of the histogram of the time waited for a token, in microseconds.
+     */
+    public synchronized LatencyHistogram getWaitHistogram(Priority priority) {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(mWaitTimes[priority.ordinal()]);
+        return copy;
+    }
+
+    /**
+     * Number of Retry-After headers received
+     */
+    public synchronized int getRetryAfterCount() {
+        return mRetryAfterCount;
+    }
+
+    /**
+     * Returns a human readable report by priority, waits in milliseconds.
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder(String.format(Locale.US,
+                "request gate, %d retry-after\n  %-9s %5s %5s %7s %7s %8s %8s\n",
+                mRetryAfterCount, "priority", "queue", "max", "granted", "dropped", "p50", "p95"));
+        for (Priority priority : Priority.values()) {
+            int p = priority.ordinal();
+            report.append(String.format(Locale.US, "  %-9s %5d %5d %7d %7d %8.1f %8.1f\n",
+                    name(priority), mQueues.get(p).size(), mMaxQueueDepths[p], mGranted[p], mDropped[p],
+                    mWaitTimes[p].getPercentile(0.5) / 1000.0, mWaitTimes[p].getPercentile(0.95) / 1000.0));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes one CSV row per priority, waits in microseconds.
+     *
+     * @param build identifies the build in the first column, e.g. the version name
+     */
+    public synchronized void exportCsv(Writer writer, String build) throws IOException {
+        writer.write("build,priority,queue_depth,max_queue_depth,granted,dropped,retry_after,"
+                + "wait_p50_us,wait_p95_us,wait_p99_us,wait_max_us\n");
+        for (Priority priority : Priority.values()) {
+            int p = priority.ordinal();
+            LatencyHistogram waits = mWaitTimes[p];
+            writer.write(String.format(Locale.US, "%s,%s,%d,%d,%d,%d,%d,%d,%d,%d,%d\n",
+                    build, name(priority), mQueues.get(p).size(), mMaxQueueDepths[p], mGranted[p],
+                    mDropped[p], mRetryAfterCount, waits.getPercentile(0.5), waits.getPercentile(0.95),
+                    waits.getPercentile(0.99), waits.getMax()));
+        }
+        writer.flush();
+    }
+
+    private static String name(Priority priority) {
+        return priority.name().toLowerCase(Locale.US);
+    }
+}
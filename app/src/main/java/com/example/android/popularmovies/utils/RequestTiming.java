@@ -0,0 +1,210 @@
+package com.example.android.popularmovies.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * The phases of a single request to The Movie Database, filled in by {@link QueryUtils} and
+ * {@link MovieHttpClient} as the request goes, then recorded into the {@link NetworkStats}.
+ * <p>
+ * The body is parsed while it is downloaded, so the time spent blocked reading the response
+ * counts as download, and the rest of the time spent on the body counts as parsing.
+ */
+public class RequestTiming {
+
+    /**
+     * The phases of a request, the ones that didn't happen are left at -1
+     */
+    public enum Phase {
+        /**
+         * DNS lookup and TCP connection, close to 0 when a pooled connection is reused
+         */
+        CONNECT,
+        /**
+         * TLS handshake, only for new connections
+         */
+        TLS,
+        /**
+         * From the request sent to the response headers received
+         */
+        FIRST_BYTE,
+        /**
+         * Reading and decompressing the body
+         */
+        DOWNLOAD,
+        /**
+         * Parsing the body into movies
+         */
+        PARSE,
+        /**
+         * The whole request, from opening the connection to the last movie parsed
+         */
+        TOTAL
+    }
+
+    private final String mEndpoint;
+    private final long mStartNanos;
+    private final long[] mPhaseNanos = new long[Phase.values().length];
+
+    private long mMarkNanos;
+    private int mResponseCode;
+    private CountingInputStream mWireStream;
+    private CountingInputStream mBodyStream;
+
+    /**
+     * Starts timing a request.
+     *
+     * @param endpoint the histograms the request is recorded into, e.g. "movie/popular"
+     */
+    public RequestTiming(String endpoint) {
+        mEndpoint = endpoint;
+        mStartNanos = System.nanoTime();
+        mMarkNanos = mStartNanos;
+        for (int i = 0; i < mPhaseNanos.length; i++) {
+            mPhaseNanos[i] = -1;
+        }
+    }
+
+    public String getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Returns the duration of the given phase in nanoseconds, or -1 if it didn't happen.
+     */
+    public long getNanos(Phase phase) {
+        return mPhaseNanos[phase.ordinal()];
+    }
+
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    /**
+     * Returns the bytes received for the body, compressed, or 0 if it wasn't read.
+     */
+    public long getWireBytes() {
+        return mWireStream != null ? mWireStream.mBytes : 0;
+    }
+
+    /**
+     * Returns the bytes of the body after decompression, or 0 if it wasn't read.
+     */
+    public long getBodyBytes() {
+        return mBodyStream != null ? mBodyStream.mBytes : 0;
+    }
+
+    /**
+     * Called once connected.
+     *
+     * @param handshakeStartNanos when the TLS handshake started, or 0 if the connection was
+     *                            reused and there was no handshake
+     */
+    void markConnected(long handshakeStartNanos) {
+        long now = System.nanoTime();
+        if (handshakeStartNanos > mMarkNanos) {
+            mPhaseNanos[Phase.CONNECT.ordinal()] = handshakeStartNanos - mMarkNanos;
+            mPhaseNanos[Phase.TLS.ordinal()] = now - handshakeStartNanos;
+        } else {
+            mPhaseNanos[Phase.CONNECT.ordinal()] = now - mMarkNanos;
+        }
+        mMarkNanos = now;
+    }
+
+    /**
+     * Called once the status line and the headers of the response have been received.
+     */
+    void markFirstByte(int responseCode) {
+        long now = System.nanoTime();
+        mResponseCode = responseCode;
+        mPhaseNanos[Phase.FIRST_BYTE.ordinal()] = now - mMarkNanos;
+        mMarkNanos = now;
+    }
+
+    /**
+     * Wraps the raw response body, to count the bytes received.
+     */
+    InputStream wrapWire(InputStream inputStream) {
+        mWireStream = new CountingInputStream(inputStream);
+        return mWireStream;
+    }
+
+    /**
+     * Wraps the decompressed response body, to count its bytes and time its reads.
+     */
+    InputStream wrapBody(InputStream inputStream) {
+        mBodyStream = new CountingInputStream(inputStream);
+        return mBodyStream;
+    }
+
+    /**
+     * Called once the request is over, successful or not.
+     */
+    void markFinished() {
+        long now = System.nanoTime();
+        if (mBodyStream != null) {
+            long bodyNanos = now - mMarkNanos;
+            mPhaseNanos[Phase.DOWNLOAD.ordinal()] = mBodyStream.mReadNanos;
+            mPhaseNanos[Phase.PARSE.ordinal()] = Math.max(0, bodyNanos - mBodyStream.mReadNanos);
+        }
+        mPhaseNanos[Phase.TOTAL.ordinal()] = now - mStartNanos;
+        mMarkNanos = now;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(mEndpoint).append(' ').append(mResponseCode);
+        for (Phase phase : Phase.values()) {
+            long nanos = getNanos(phase);
+            if (nanos >= 0) {
+                builder.append(String.format(Locale.US, " %s=%.1fms",
+                        phase.name().toLowerCase(Locale.US), nanos / 1e6));
+            }
+        }
+        return builder.append(String.format(Locale.US, " wire=%dB body=%dB",
+                getWireBytes(), getBodyBytes())).toString();
+    }
+
+    /**
+     * Counts the bytes read through it, and the time spent blocked reading them.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long mBytes;
+        long mReadNanos;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            mReadNanos += System.nanoTime() - start;
+            if (b != -1) {
+                mBytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, length);
+            mReadNanos += System.nanoTime() - start;
+            if (read > 0) {
+                mBytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mBytes += skipped;
+            return skipped;
+        }
+    }
+}
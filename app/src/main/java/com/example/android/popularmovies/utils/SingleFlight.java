@@ -0,0 +1,116 @@
+package com.example.android.popularmovies.utils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces identical calls made at the same time: the first caller for a key runs the call,
+ * the callers that arrive while it runs wait for it and get the same result.
+ * Once the call has returned, the next caller for the key runs it again.
+ *
+ * @param <T> type of the result of the calls
+ */
+public class SingleFlight<T> {
+
+    /**
+     * A call whose result can be shared between the callers of the same key.
+     */
+    public interface Call<T> {
+        T call();
+    }
+
+    /**
+     * Calls in flight by key
+     */
+    private final Map<String, Flight<T>> mFlights = new HashMap<>();
+
+    private final AtomicInteger mCallCount = new AtomicInteger();
+    private final AtomicInteger mSharedCount = new AtomicInteger();
+
+    /**
+     * Runs the given call, unless a call with the same key is already running,
+     * in which case waits for it and returns its result.
+     * <p>
+     * Returns null if the thread is interrupted while waiting. A RuntimeException thrown
+     * by the call is thrown to every caller.
+     *
+     * @param key  identifying identical calls, e.g. a normalized URL
+     * @param call run if no call with the same key is in flight
+     */
+    public T execute(String key, Call<T> call) {
+        Flight<T> flight;
+        boolean leader = false;
+        synchronized (mFlights) {
+            flight = mFlights.get(key);
+            if (flight == null) {
+                flight = new Flight<>();
+                mFlights.put(key, flight);
+                leader = true;
+            }
+        }
+
+        if (!leader) {
+            mSharedCount.incrementAndGet();
+            return flight.await();
+        }
+
+        mCallCount.incrementAndGet();
+        try {
+            flight.mResult = call.call();
+        } catch (RuntimeException e) {
+            flight.mError = e;
+            throw e;
+        } finally {
+            synchronized (mFlights) {
+                mFlights.remove(key);
+            }
+            flight.mDone.countDown();
+        }
+        return flight.mResult;
+    }
+
+    /**
+     * Returns the number of calls that were run.
+     */
+    public int getCallCount() {
+        return mCallCount.get();
+    }
+
+    /**
+     * Returns the number of calls that weren't run because an identical one was in flight.
+     */
+    public int getSharedCount() {
+        return mSharedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "SingleFlight[calls=%d, shared=%d]",
+                getCallCount(), getSharedCount());
+    }
+
+    /**
+     * A call in flight, and its outcome once it has returned.
+     */
+    private static class Flight<T> {
+        final CountDownLatch mDone = new CountDownLatch(1);
+        volatile T mResult;
+        volatile RuntimeException mError;
+
+        T await() {
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (mError != null) {
+                throw mError;
+            }
+            return mResult;
+        }
+    }
+}
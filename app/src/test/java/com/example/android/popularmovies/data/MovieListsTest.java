@@ -0,0 +1,54 @@
+package com.example.android.popularmovies.data;
+
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.android.popularmovies.model.TestMovies.movies;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how a refreshed first page is merged into a list stored with more pages.
+ */
+public class MovieListsTest {
+
+    @Test
+    public void getFollowingPages_keepsThePagesAfterTheFirst() {
+        List<Movie> stored = movies(0, 3 * QueryUtils.RESULTS_PER_PAGE);
+        List<Movie> firstPage = movies(0, QueryUtils.RESULTS_PER_PAGE);
+
+        List<Movie> following = MovieLists.getFollowingPages(firstPage, stored);
+
+        assertEquals(2 * QueryUtils.RESULTS_PER_PAGE, following.size());
+        assertEquals(QueryUtils.RESULTS_PER_PAGE, following.get(0).getId());
+        assertEquals(stored.get(stored.size() - 1).getId(), following.get(following.size() - 1).getId());
+    }
+
+    @Test
+    public void getFollowingPages_dropsTheMoviesMovedToTheFirstPage() {
+        List<Movie> stored = movies(0, 2 * QueryUtils.RESULTS_PER_PAGE);
+        // A movie of the second page climbed to the first one
+        List<Movie> firstPage = movies(1, QueryUtils.RESULTS_PER_PAGE - 1);
+        firstPage.add(0, stored.get(QueryUtils.RESULTS_PER_PAGE + 5));
+
+        List<Movie> following = MovieLists.getFollowingPages(firstPage, stored);
+
+        assertEquals(QueryUtils.RESULTS_PER_PAGE - 1, following.size());
+        for (Movie movie : following) {
+            assertTrue(movie.getId() != QueryUtils.RESULTS_PER_PAGE + 5);
+        }
+    }
+
+    @Test
+    public void getFollowingPages_withOnlyTheFirstPageStored_isEmpty() {
+        List<Movie> firstPage = movies(0, QueryUtils.RESULTS_PER_PAGE);
+
+        assertTrue(MovieLists.getFollowingPages(firstPage, movies(0, 5)).isEmpty());
+        assertTrue(MovieLists.getFollowingPages(firstPage, new ArrayList<Movie>()).isEmpty());
+    }
+}
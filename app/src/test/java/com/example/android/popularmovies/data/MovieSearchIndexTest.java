@@ -0,0 +1,119 @@
+package com.example.android.popularmovies.data;
+
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the matching and the ranking of {@link MovieSearchIndex}. Its build time and query
+ * latency are measured by the MovieSearchBenchmark of the benchmark module.
+ */
+public class MovieSearchIndexTest {
+
+    private static List<Movie> sPage;
+
+    @BeforeClass
+    public static void loadFixture() throws IOException {
+        sPage = QueryUtils.extractMoviesFromStream(
+                MovieSearchIndexTest.class.getClassLoader()
+                        .getResourceAsStream("fixtures/movie_popular_page_20.json"));
+    }
+
+    @Test
+    public void search_matchesEveryTermAndThePrefixOfTheLast() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.addAll(sPage);
+
+        assertEquals(new HashSet<>(Arrays.asList("The Maze Runner", "Maze Runner: The Death Cure")),
+                new HashSet<>(titles(index.search("maze runner"))));
+        assertEquals(Arrays.asList("Black Panther"), titles(index.search("BLACK pan")));
+        // "pan" is a whole term once followed by a space
+        assertEquals(Collections.<String>emptyList(), titles(index.search("black pan ")));
+        assertEquals(Collections.<String>emptyList(), titles(index.search("maze jedi")));
+        assertEquals(Collections.<String>emptyList(), titles(index.search("the of")));
+    }
+
+    @Test
+    public void search_ranksTitlesAboveThePlots() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(new Movie(1, "A quiet place", "2018-04-03", "/1.jpg", 7, "A family hides from monsters."));
+        index.add(new Movie(2, "Monsters, Inc.", "2001-11-01", "/2.jpg", 7, "A scarer befriends a girl."));
+
+        assertEquals(Arrays.asList("Monsters, Inc.", "A quiet place"), titles(index.search("monster")));
+    }
+
+    @Test
+    public void add_reindexesChangedMoviesOnly() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(new Movie(1, "Am\u00e9lie", "2001-04-25", "/1.jpg", 8, "Paris."));
+        index.add(new Movie(1, "Am\u00e9lie", "2001-04-25", "/1.jpg", 8.1, "Paris."));
+        assertEquals(1, index.size());
+        assertEquals(8.1, index.search("amelie").get(0).getVote(), 0);
+
+        index.add(new Movie(1, "Le fabuleux destin d'Am\u00e9lie Poulain", "2001-04-25", "/1.jpg", 8, "Paris."));
+        assertEquals(1, index.size());
+        assertEquals(1, index.search("amelie").size());
+        assertEquals(1, index.search("fabuleux").size());
+
+        // An older copy doesn't replace the indexed movie
+        index.addAbsent(Arrays.asList(new Movie(1, "Am\u00e9lie", "2001-04-25", "/1.jpg", 8, "Paris.")));
+        assertEquals(1, index.search("fabuleux").size());
+    }
+
+    @Test
+    public void add_changedMovie_removesTheOldTerms() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(new Movie(1, "Alien", "1979-05-25", "/1.jpg", 8, "Nostromo."));
+        index.add(new Movie(2, "Aliens", "1986-07-18", "/2.jpg", 8, "Nostromo."));
+        assertEquals(3, index.getTermCount());
+
+        index.add(new Movie(1, "Alien: Director's Cut", "1979-05-25", "/1.jpg", 8, "Ripley."));
+
+        assertEquals(Arrays.asList("Aliens"), titles(index.search("nostromo")));
+        assertEquals(Arrays.asList("Alien: Director's Cut"), titles(index.search("ripley")));
+        // alien, aliens, nostromo, director, s, cut, ripley
+        assertEquals(7, index.getTermCount());
+
+        index.add(new Movie(2, "Aliens", "1986-07-18", "/2.jpg", 8, "Hadley's Hope."));
+        assertEquals(Collections.<String>emptyList(), titles(index.search("nostromo")));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void search_ranksRareTermsAmongTheLiveMoviesOnly() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(new Movie(1, "Heat", "1995-12-15", "/1.jpg", 8, "Crew."));
+        index.add(new Movie(2, "Crew", "2000-01-01", "/2.jpg", 6, "Heat."));
+        for (int id = 3; id < 10; id++) {
+            index.add(new Movie(id, "Crew " + id, "2000-01-01", "/" + id + ".jpg", 6, "Crew."));
+        }
+        // "crew" is in every movie and "heat" in two, a title match of "heat" wins
+        assertEquals("Heat", index.search("heat crew").get(0).getTitle());
+
+        // Once the other movies contain "heat" instead, "crew" is the rare term
+        for (int id = 3; id < 10; id++) {
+            index.add(new Movie(id, "Heat " + id, "2000-01-01", "/" + id + ".jpg", 6, "Heat."));
+        }
+        assertEquals("Crew", index.search("heat crew").get(0).getTitle());
+    }
+
+    private static List<String> titles(List<Movie> movies) {
+        List<String> titles = new ArrayList<>();
+        for (Movie movie : movies) {
+            titles.add(movie.getTitle());
+        }
+        return titles;
+    }
+
+}
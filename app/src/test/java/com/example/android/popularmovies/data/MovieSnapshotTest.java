@@ -0,0 +1,146 @@
+package com.example.android.popularmovies.data;
+
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a {@link MovieSnapshot} gives back the movies it was written with, decoded
+ * once each, and that a missing or damaged snapshot is ignored instead of failing the launch.
+ */
+public class MovieSnapshotTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void open_returnsTheFirstMoviesWritten() throws IOException {
+        List<Movie> page = QueryUtils.extractMoviesFromStream(
+                getClass().getClassLoader().getResourceAsStream("fixtures/movie_popular_page_20.json"));
+        List<Movie> movies = new ArrayList<>(page);
+        movies.add(new Movie(42, null, 0, null, 0, null));
+        File file = mFolder.newFile("snapshot");
+
+        MovieSnapshot.write(file, movies, movies.size());
+        MovieSnapshot snapshot = MovieSnapshot.open(file);
+        assertEquals(movies.size(), snapshot.size());
+        for (int i = movies.size() - 1; i >= 0; i--) {
+            assertEquals(movies.get(i).getId(), snapshot.getId(i));
+            assertTrue(movies.get(i).getTitle(), movies.get(i).hasSameContent(snapshot.get(i)));
+            assertSame(snapshot.get(i), snapshot.get(i));
+        }
+
+        // The mapped snapshot keeps reading the file it was opened on
+        MovieSnapshot.write(file, movies, 6);
+        assertEquals(movies.size(), snapshot.size());
+        assertEquals(movies.get(9).getTitle(), snapshot.get(9).getTitle());
+        assertEquals(6, MovieSnapshot.open(file).size());
+        assertEquals(page.get(5).getId(), MovieSnapshot.open(file).get(5).getId());
+    }
+
+    @Test
+    public void write_storesRepeatedStringsOnce() throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            movies.add(new Movie(i, "Title " + i, 17000, "No poster", 5, "No plot"));
+        }
+        File file = mFolder.newFile("snapshot");
+        MovieSnapshot.write(file, movies, movies.size());
+
+        // 28 bytes of columns per movie, and short strings
+        assertTrue(file.length() + " bytes", file.length() < 100 * (28 + 4 + 8) + 100);
+        assertEquals("No plot", MovieSnapshot.open(file).get(99).getPlot());
+    }
+
+    @Test
+    public void open_ignoresMissingAndDamagedSnapshots() throws IOException {
+        File file = new File(mFolder.getRoot(), "snapshot");
+        assertNull(MovieSnapshot.open(file));
+
+        List<Movie> movies = new ArrayList<>();
+        movies.add(new Movie(1, "Title", 17000, "/poster.jpg", 7.5, "Plot"));
+        MovieSnapshot.write(file, movies, 20);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // Cut short, as if the device was turned off while writing without the rename
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes, 0, bytes.length - 3);
+        out.close();
+        assertNull(MovieSnapshot.open(file));
+
+        // Written by another version of the format
+        bytes[7]++;
+        out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        assertNull(MovieSnapshot.open(file));
+    }
+
+    @Test
+    public void open_ignoresSnapshotsWithDamagedTables() throws IOException {
+        File file = new File(mFolder.getRoot(), "snapshot");
+        List<Movie> movies = new ArrayList<>();
+        movies.add(new Movie(1, "Title", 17000, "/poster.jpg", 7.5, "Plot"));
+        movies.add(new Movie(2, "Other title", 17000, "/other.jpg", 6.5, "Other plot"));
+        MovieSnapshot.write(file, movies, 20);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals(2, MovieSnapshot.open(file).size());
+
+        // Header, 2 ids, 2 release days, 2 votes, then the title of the first movie
+        int firstTitle = 16 + 2 * 4 + 2 * 4 + 2 * 8;
+        // Then the image and plot columns, then the offsets of the 6 strings
+        int firstOffset = firstTitle + 3 * 2 * 4;
+
+        write(file, bytes, firstTitle, 6);
+        assertNull(MovieSnapshot.open(file));
+
+        write(file, bytes, firstOffset + 4, 1000);
+        assertNull(MovieSnapshot.open(file));
+
+        // The second id the same as the first one
+        write(file, bytes, 16 + 4, 1);
+        assertNull(MovieSnapshot.open(file));
+    }
+
+    @Test
+    public void write_keepsTheFirstOfTheRepeatedMovies() throws IOException {
+        File file = new File(mFolder.getRoot(), "snapshot");
+        List<Movie> movies = new ArrayList<>();
+        movies.add(new Movie(1, "Title", 17000, "/poster.jpg", 7.5, "Plot"));
+        movies.add(new Movie(1, "Title", 17000, "/poster.jpg", 7.6, "Plot"));
+        movies.add(new Movie(2, "Other title", 17000, "/other.jpg", 6.5, "Other plot"));
+        MovieSnapshot.write(file, movies, 2);
+
+        MovieSnapshot snapshot = MovieSnapshot.open(file);
+        assertEquals(2, snapshot.size());
+        assertEquals(7.5, snapshot.get(0).getVote(), 0);
+        assertEquals(2, snapshot.getId(1));
+    }
+
+    /**
+     * Writes the given snapshot with one of its ints replaced.
+     */
+    private static void write(File file, byte[] bytes, int position, int value) throws IOException {
+        byte[] damaged = bytes.clone();
+        ByteBuffer.wrap(damaged).putInt(position, value);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(damaged);
+        out.close();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.android.popularmovies.data;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link PosterColors} batches the colors waiting to be stored.
+ */
+public class PosterColorsTest {
+
+    private final PosterColors mColors = new PosterColors();
+
+    @Test
+    public void put_schedulesOneWritePerBatch() {
+        assertTrue(mColors.put("/a.jpg", 0xff112233));
+        assertFalse(mColors.put("/b.jpg", 0xff445566));
+        // The same color again isn't written again
+        assertFalse(mColors.put("/a.jpg", 0xff112233));
+        assertEquals(0xff445566, mColors.get("/b.jpg"));
+        assertEquals(PosterColors.NO_COLOR, mColors.get("/c.jpg"));
+
+        Map<String, Integer> unsaved = mColors.takeUnsaved();
+        assertEquals(2, unsaved.size());
+
+        // The next color starts a new batch
+        assertTrue(mColors.put("/c.jpg", 0xff778899));
+        assertEquals(1, mColors.takeUnsaved().size());
+    }
+
+    @Test
+    public void putAbsent_keepsTheColorsFoundMeanwhile() {
+        mColors.put("/a.jpg", 0xff112233);
+        Map<String, Integer> stored = new HashMap<>();
+        stored.put("/a.jpg", 0xff000000);
+        stored.put("/b.jpg", 0xff445566);
+        mColors.putAbsent(stored);
+
+        assertEquals(0xff112233, mColors.get("/a.jpg"));
+        assertEquals(0xff445566, mColors.get("/b.jpg"));
+        assertEquals(2, mColors.size());
+    }
+}
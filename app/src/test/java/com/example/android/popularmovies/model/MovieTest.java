@@ -0,0 +1,67 @@
+package com.example.android.popularmovies.model;
+
+import com.example.android.popularmovies.utils.ReleaseDates;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the compact fields of {@link Movie} give back the values it was built with.
+ * The heap it retains is measured by the MovieMemoryBenchmark of the benchmark module.
+ */
+public class MovieTest {
+
+    private static final String TITLE = "Black Panther";
+    private static final String PLOT = "King T'Challa returns home from America to the reclusive, "
+            + "technologically advanced African nation of Wakanda to serve as his country's new leader.";
+
+    @Test
+    public void compactMovie_keepsTheSameValues() {
+        for (int i = 0; i < 5000; i++) {
+            String date = date(i);
+            Movie movie = new Movie(i, copy(TITLE), date, posterPath(i), vote(i), copy(PLOT));
+            assertEquals(date, movie.getDate());
+            assertEquals(posterPath(i), movie.getImage());
+            assertEquals(vote(i), movie.getVote(), 0);
+        }
+        assertEquals(ReleaseDates.UNKNOWN, new Movie(0, TITLE, "No date", null, 0, PLOT).getReleaseDay());
+        assertEquals(null, new Movie(0, TITLE, (String) null, null, 0, PLOT).getDate());
+    }
+
+    @Test
+    public void releaseDay_ofADayPastTheEndOfItsMonth_isUnknown() {
+        assertEquals(ReleaseDates.UNKNOWN, ReleaseDates.parse("2019-02-31"));
+        assertEquals(ReleaseDates.UNKNOWN, ReleaseDates.parse("2019-04-31"));
+        assertEquals(ReleaseDates.UNKNOWN, ReleaseDates.parse("2019-02-29"));
+        assertEquals(ReleaseDates.UNKNOWN, ReleaseDates.parse("1900-02-29"));
+        assertEquals(ReleaseDates.UNKNOWN, new Movie(0, TITLE, "2018-06-31", null, 0, PLOT).getReleaseDay());
+
+        // Leap days
+        assertEquals("2020-02-29", new Movie(0, TITLE, "2020-02-29", null, 0, PLOT).getDate());
+        assertEquals("2000-02-29", ReleaseDates.toIsoString(ReleaseDates.parse("2000-02-29")));
+        assertEquals("2019-01-31", ReleaseDates.toIsoString(ReleaseDates.parse("2019-01-31")));
+        assertEquals("2019-04-30", ReleaseDates.toIsoString(ReleaseDates.parse("2019-04-30")));
+    }
+
+    /**
+     * Returns a new instance of the given string, as the parser would.
+     */
+    private static String copy(String string) {
+        return new String(string.toCharArray());
+    }
+
+    private static String posterPath(int i) {
+        return String.format(Locale.US, "/%027d.jpg", i);
+    }
+
+    private static String date(int i) {
+        return String.format(Locale.US, "%04d-%02d-%02d", 1950 + i % 70, 1 + i % 12, 1 + i % 28);
+    }
+
+    private static double vote(int i) {
+        return (i % 100) / 10.0;
+    }
+}
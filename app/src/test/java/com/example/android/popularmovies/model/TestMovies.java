@@ -0,0 +1,27 @@
+package com.example.android.popularmovies.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the lists of made up movies used by the tests, every field derived from the id.
+ */
+public final class TestMovies {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link TestMovies} object.
+     */
+    private TestMovies() {
+    }
+
+    /**
+     * Returns count movies with consecutive ids, starting at firstId.
+     */
+    public static List<Movie> movies(int firstId, int count) {
+        List<Movie> movies = new ArrayList<>(count);
+        for (int id = firstId; id < firstId + count; id++) {
+            movies.add(new Movie(id, "Movie " + id, 17000 + id, "/poster" + id + ".jpg", 7.5, "Plot " + id));
+        }
+        return movies;
+    }
+}
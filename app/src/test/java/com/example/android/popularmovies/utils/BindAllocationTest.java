@@ -0,0 +1,141 @@
+package com.example.android.popularmovies.utils;
+
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.model.TestMovies;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counts the bytes allocated by the {@link PosterBinder} the movie grid binds its rows with:
+ * looking the poster URL up and recording the bind time. Scrolling back and forth over
+ * movies already shown must not allocate, so that it doesn't trigger collections.
+ * <p>
+ * The rows are stand-ins recording the poster asked for, Picasso's request can't be run on
+ * the JVM. The counts come from the HotSpot thread allocation counters, the test is
+ * skipped on a JVM without them.
+ */
+public class BindAllocationTest {
+
+    private static final int MOVIES = 200;
+    private static final int BINDS = 10000;
+
+    /**
+     * Rows recycled by the grid, a screen and a half of a phone in portrait
+     */
+    private static final int ROWS = 12;
+
+    /**
+     * Grid cell width of a phone in portrait, in pixels
+     */
+    private static final int CELL_WIDTH_PX = 540;
+
+    /**
+     * Average bytes allocated per bind over which the test fails, well under a single string
+     */
+    private static final double MAX_BYTES_PER_BIND = 1;
+
+    private final List<Movie> mMovies = new ArrayList<>();
+    private final FakeRow[] mRows = new FakeRow[ROWS];
+
+    private com.sun.management.ThreadMXBean mThreads;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        mThreads = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+
+        mMovies.addAll(TestMovies.movies(0, MOVIES));
+        for (int i = 0; i < ROWS; i++) {
+            mRows[i] = new FakeRow();
+        }
+    }
+
+    @Test
+    public void bind_withCachedUrls_allocatesNothing() {
+        PosterBinder binder = new PosterBinder(new PosterUrlCache(1000));
+        // The first scroll builds the URLs
+        bind(binder, 0);
+        String first = mRows[0].mPosterUrl;
+        for (int i = 1; i < MOVIES; i++) {
+            bind(binder, i);
+        }
+        bind(binder, 0);
+        assertSame(first, mRows[0].mPosterUrl);
+
+        long bytes = allocatedDuring(binder);
+        assertTrue(bytes + " bytes allocated over " + BINDS + " binds",
+                bytes <= MAX_BYTES_PER_BIND * BINDS);
+    }
+
+    @Test
+    public void bind_sameMovieAgain_doesNotLoadThePosterAgain() {
+        PosterBinder binder = new PosterBinder(new PosterUrlCache(1000));
+        bind(binder, 0);
+        bind(binder, 0);
+        assertEquals(1, mRows[0].mLoads);
+    }
+
+    @Test
+    public void bind_buildingUrls_isCaught() {
+        // With too small a cache every bind builds its URL again, as before the cache
+        PosterBinder binder = new PosterBinder(new PosterUrlCache(1));
+        long bytes = allocatedDuring(binder);
+        assertTrue(bytes + " bytes allocated over " + BINDS + " binds",
+                bytes > MAX_BYTES_PER_BIND * BINDS);
+    }
+
+    /**
+     * Returns the bytes allocated by the given number of binds, scrolling over the movies.
+     */
+    private long allocatedDuring(PosterBinder binder) {
+        long threadId = Thread.currentThread().getId();
+        // Warm up the counter itself
+        mThreads.getThreadAllocatedBytes(threadId);
+        long before = mThreads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < BINDS; i++) {
+            bind(binder, i % MOVIES);
+        }
+        return mThreads.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    /**
+     * Binds the movie at the given position (modulo the movies) to the row the grid would
+     * recycle for it, as MovieAdapter.onBindViewHolder does.
+     */
+    private void bind(PosterBinder binder, int position) {
+        binder.bind(mRows[position % ROWS], mMovies.get(position % MOVIES).getImage(),
+                PosterUrlResolver.selectSize(CELL_WIDTH_PX, 0));
+    }
+
+    /**
+     * Records the poster asked for instead of requesting it.
+     */
+    private static class FakeRow implements PosterBinder.Row {
+        String mPosterUrl;
+        int mLoads;
+
+        @Override
+        public String getPosterUrl() {
+            return mPosterUrl;
+        }
+
+        @Override
+        public void loadPoster(String posterPath, String posterUrl) {
+            mPosterUrl = posterUrl;
+            mLoads++;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.android.popularmovies.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link DominantColor} picks the color covering most of a poster.
+ */
+public class DominantColorTest {
+
+    private final int[] mCounts = new int[1 << 12];
+
+    @Test
+    public void of_picksTheLargestGroupNotTheAverage() {
+        int[] pixels = new int[64];
+        // A dark red poster with a white title across a quarter of it
+        Arrays.fill(pixels, 0, 48, 0xff801010);
+        Arrays.fill(pixels, 48, 64, 0xffffffff);
+
+        assertEquals(0xff801010, DominantColor.of(pixels, pixels.length, mCounts));
+    }
+
+    @Test
+    public void of_averagesTheShadesOfTheGroup() {
+        int[] pixels = {0xff102030, 0xff122232, 0xff0000ff};
+
+        assertEquals(0xff112131, DominantColor.of(pixels, pixels.length, mCounts));
+    }
+
+    @Test
+    public void of_leavesTheScratchArrayZeroed() {
+        int[] pixels = {0xff102030, 0xffa0b0c0, 0xff102030};
+        DominantColor.of(pixels, pixels.length, mCounts);
+
+        assertArrayEquals(new int[mCounts.length], mCounts);
+        assertEquals(0xff000000, DominantColor.of(pixels, 0, mCounts));
+    }
+}
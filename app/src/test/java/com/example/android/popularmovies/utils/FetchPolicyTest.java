@@ -0,0 +1,305 @@
+package com.example.android.popularmovies.utils;
+
+import com.example.android.popularmovies.model.Movie;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link QueryUtils#fetchMovieData} through the {@link FetchPolicy} against a local
+ * stand-in for api.themoviedb.org that delays or fails the requests it is told to.
+ */
+public class FetchPolicyTest {
+
+    /**
+     * What the server does with a request
+     */
+    private static final String OK = "ok";
+    private static final String UNAVAILABLE = "503";
+    private static final String NOT_FOUND = "404";
+    private static final String UNPROCESSABLE = "422";
+    private static final String TOO_MANY_REQUESTS = "429";
+    private static final String RESET = "reset";
+    private static final String SLOW = "slow";
+
+    private static final long SLOW_MILLIS = 3000;
+
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private FetchPolicy mPolicy;
+    private RequestGate mGate;
+    private byte[] mPage;
+
+    /**
+     * What the server does with each request, in the order they arrive, then OK
+     */
+    private volatile String[] mScript = {};
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        mPage = readResource("fixtures/movie_popular_page_20.json");
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/3/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int request = mRequests.getAndIncrement();
+                String action = request < mScript.length ? mScript[request] : OK;
+                switch (action) {
+                    case RESET:
+                        // The server closes the connection without any response
+                        throw new IOException("Connection reset by the test");
+                    case TOO_MANY_REQUESTS:
+                        exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+                        exchange.sendResponseHeaders(429, -1);
+                        exchange.close();
+                        return;
+                    case UNAVAILABLE:
+                    case NOT_FOUND:
+                    case UNPROCESSABLE:
+                        exchange.sendResponseHeaders(Integer.parseInt(action), -1);
+                        exchange.close();
+                        return;
+                    case SLOW:
+                        try {
+                            Thread.sleep(SLOW_MILLIS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        // Then answer like the others
+                        sendPage(exchange);
+                        return;
+                    default:
+                        sendPage(exchange);
+                }
+            }
+        });
+        // The hedged requests arrive while the first one is still being answered
+        mServerExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mServerExecutor);
+        mServer.start();
+
+        mPolicy = new FetchPolicy(3, 20, 200, 5000);
+        FetchPolicy.install(mPolicy);
+        // Enough tokens that the gate never holds the requests of the tests back
+        mGate = new RequestGate(1000, 1000);
+        RequestGate.install(mGate);
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+        FetchPolicy.install(null);
+        RequestGate.install(null);
+    }
+
+    @Test
+    public void fetchMovieData_retriesUnavailableServer() {
+        mScript = new String[]{UNAVAILABLE, UNAVAILABLE};
+
+        List<Movie> movies = QueryUtils.fetchMovieData(url(1));
+
+        assertNotNull(movies);
+        assertEquals(20, movies.size());
+        assertEquals(3, mRequests.get());
+        assertEquals(2, mPolicy.getRetryCount());
+    }
+
+    @Test
+    public void fetchMovieData_retriesResetConnection() {
+        // HttpURLConnection silently sends a GET again once when the connection is closed
+        // before the response, the policy retries when that fails too
+        mScript = new String[]{RESET, RESET};
+
+        List<Movie> movies = QueryUtils.fetchMovieData(url(1));
+
+        assertNotNull(movies);
+        assertEquals(1, mPolicy.getRetryCount());
+    }
+
+    @Test
+    public void fetchMovieData_givesUpAfterTheLastAttempt() {
+        mScript = new String[]{UNAVAILABLE, UNAVAILABLE, UNAVAILABLE, UNAVAILABLE};
+
+        assertNull(QueryUtils.fetchMovieData(url(1)));
+        assertEquals(3, mRequests.get());
+    }
+
+    @Test
+    public void fetchMovieData_doesNotRetryClientErrors() {
+        mScript = new String[]{NOT_FOUND};
+
+        // There is nothing to show at that URL
+        assertTrue(QueryUtils.fetchMovieData(url(1)).isEmpty());
+        assertEquals(1, mRequests.get());
+        assertEquals(0, mPolicy.getRetryCount());
+    }
+
+    @Test
+    public void fetchMovieData_pastTheLastPage_isEmpty() {
+        // TMDB serves 500 pages at most
+        mScript = new String[]{UNPROCESSABLE};
+
+        List<Movie> movies = QueryUtils.fetchMovieData(url(501));
+
+        assertNotNull(movies);
+        assertTrue(movies.isEmpty());
+        assertEquals(1, mRequests.get());
+    }
+
+    @Test
+    public void fetchMovieData_waitsForRetryAfter() {
+        mScript = new String[]{TOO_MANY_REQUESTS};
+
+        long start = System.nanoTime();
+        List<Movie> movies = QueryUtils.fetchMovieData(url(1));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertNotNull(movies);
+        assertEquals(2, mRequests.get());
+        assertEquals(1, mGate.getRetryAfterCount());
+        // The retry waited for the server instead of the short backoff
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis >= RETRY_AFTER_SECONDS * 1000 - 50);
+    }
+
+    @Test
+    public void fetchMovieData_dropsPrefetchDuringRetryAfter() {
+        mGate.onRetryAfter(60000);
+
+        assertNull(QueryUtils.fetchMovieData(url(1), RequestGate.Priority.PREFETCH));
+        assertEquals(0, mRequests.get());
+        assertEquals(1, mGate.getDroppedCount(RequestGate.Priority.PREFETCH));
+    }
+
+    @Test
+    public void fetchMovieData_doesNotWaitBehindAPrefetch() throws InterruptedException {
+        mScript = new String[]{SLOW};
+        Thread prefetch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                QueryUtils.fetchMovieData(url(1), RequestGate.Priority.PREFETCH);
+            }
+        });
+        prefetch.start();
+        while (mRequests.get() == 0) {
+            Thread.sleep(1);
+        }
+
+        long start = System.nanoTime();
+        List<Movie> movies = QueryUtils.fetchMovieData(url(1), RequestGate.Priority.VISIBLE);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        prefetch.join();
+
+        assertNotNull(movies);
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < SLOW_MILLIS / 2);
+        assertEquals(2, mRequests.get());
+    }
+
+    @Test(timeout = 10000)
+    public void execute_reportsRuntimeExceptionAsFailure() {
+        try {
+            mPolicy.execute(MovieHttpClient.getInstance(), "movie/popular", new FetchPolicy.Request() {
+                @Override
+                public HttpURLConnection open() {
+                    throw new IllegalStateException("Broken request");
+                }
+            });
+            fail("The attempts didn't fail");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(2, mPolicy.getRetryCount());
+    }
+
+    @Test
+    public void fetchMovieData_hedgesSlowRequest() {
+        // Time enough fast requests for the policy to trust their percentile
+        int fastRequests = 25;
+        for (int i = 0; i < fastRequests; i++) {
+            assertNotNull(QueryUtils.fetchMovieData(url(i + 1)));
+        }
+        assertEquals(0, mPolicy.getHedgeCount());
+        long hedgeDelay = mPolicy.getHedgeDelayMillis("movie/popular");
+        assertTrue("Hedge delay " + hedgeDelay, hedgeDelay < SLOW_MILLIS / 4);
+
+        String[] script = new String[fastRequests + 1];
+        script[fastRequests] = SLOW;
+        mScript = script;
+        long start = System.nanoTime();
+        List<Movie> movies = QueryUtils.fetchMovieData(url(fastRequests + 1));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertNotNull(movies);
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < SLOW_MILLIS / 2);
+        assertEquals(1, mPolicy.getHedgeCount());
+        assertEquals(1, mPolicy.getHedgeWinCount());
+    }
+
+    @Test
+    public void backoff_isJitteredBelowTheExponentialBound() {
+        FetchPolicy policy = new FetchPolicy(10, 100, 1000, 5000);
+        for (int retry = 0; retry < 8; retry++) {
+            long bound = Math.min(1000, 100L << retry);
+            long max = 0;
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < 200; i++) {
+                long backoff = policy.getBackoffMillis(retry);
+                assertTrue(backoff >= 0 && backoff < bound);
+                max = Math.max(max, backoff);
+                min = Math.min(min, backoff);
+            }
+            // Spread over the whole range, not a fixed delay
+            assertTrue(max > bound / 2 && min < bound / 2);
+        }
+    }
+
+    private void sendPage(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, mPage.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(mPage);
+        out.close();
+    }
+
+    private String url(int page) {
+        return "http://localhost:" + mServer.getAddress().getPort()
+                + "/3/movie/popular?api_key=test&page=" + page;
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream in = FetchPolicyTest.class.getClassLoader().getResourceAsStream(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
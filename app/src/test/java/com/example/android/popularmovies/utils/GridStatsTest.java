@@ -0,0 +1,63 @@
+package com.example.android.popularmovies.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how {@link GridStats} counts slow and dropped frames.
+ */
+public class GridStatsTest {
+
+    private static final long VSYNC_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    private final GridStats mStats = GridStats.getInstance();
+
+    @Before
+    public void clear() {
+        mStats.clear();
+    }
+
+    @Test
+    public void recordFrame_onTime_isNotSlow() {
+        for (int i = 0; i < 10; i++) {
+            // The vsyncs jitter a little around their interval
+            mStats.recordFrame(VSYNC_NANOS + (i % 2 == 0 ? 1 : -1) * VSYNC_NANOS / 5, VSYNC_NANOS);
+        }
+        assertEquals(10, mStats.getFrameCount());
+        assertEquals(0, mStats.getSlowFrameCount());
+        assertEquals(0, mStats.getDroppedFrameCount());
+    }
+
+    @Test
+    public void recordFrame_missedVsyncs_areDroppedFrames() {
+        mStats.recordFrame(VSYNC_NANOS, VSYNC_NANOS);
+        // Two vsyncs went by without a frame
+        mStats.recordFrame(3 * VSYNC_NANOS, VSYNC_NANOS);
+        // One more, a little late
+        mStats.recordFrame(2 * VSYNC_NANOS + VSYNC_NANOS / 4, VSYNC_NANOS);
+
+        assertEquals(3, mStats.getFrameCount());
+        assertEquals(2, mStats.getSlowFrameCount());
+        assertEquals(3, mStats.getDroppedFrameCount());
+    }
+
+    @Test
+    public void clear_forgetsEverything() {
+        mStats.recordCreate(TimeUnit.MILLISECONDS.toNanos(3));
+        mStats.recordBind(TimeUnit.MILLISECONDS.toNanos(1));
+        mStats.recordFrame(4 * VSYNC_NANOS, VSYNC_NANOS);
+        assertEquals(3000, mStats.getCreateHistogram().getMax());
+        assertEquals(1000, mStats.getBindHistogram().getMax());
+
+        mStats.clear();
+        assertEquals(0, mStats.getCreateHistogram().getCount());
+        assertEquals(0, mStats.getBindHistogram().getCount());
+        assertEquals(0, mStats.getFrameHistogram().getCount());
+        assertEquals(0, mStats.getSlowFrameCount());
+        assertEquals(0, mStats.getDroppedFrameCount());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.popularmovies.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the percentiles of {@link LatencyHistogram} against the exact ones.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueOnce() {
+        int previous = -1;
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void percentiles_areWithinAnEighthOfTheExactOnes() {
+        Random random = new Random(7);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal like network latencies, from a few ms to a few seconds
+            values[i] = (long) Math.exp(9 + 1.2 * random.nextGaussian());
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{0.5, 0.95, 0.99}) {
+            long exact = values[(int) Math.ceil(percentile * values.length) - 1];
+            long estimate = histogram.getPercentile(percentile);
+            assertEquals("p" + percentile, exact, estimate, exact / 8.0);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertEquals(5, histogram.getPercentile(0.5));
+        assertEquals(10, histogram.getPercentile(0.99));
+        assertEquals(0, new LatencyHistogram().getPercentile(0.5));
+    }
+
+    @Test
+    public void add_mergesTheCounts() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(100);
+        second.record(300);
+        second.record(-5);
+        first.add(second);
+
+        assertEquals(3, first.getCount());
+        assertEquals(300, first.getMax());
+        assertEquals(0, first.getPercentile(0.1));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android.popularmovies.utils;
+
+import com.example.android.popularmovies.BuildConfig;
+import com.example.android.popularmovies.model.MovieDetails;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Parses a recorded movie response with its videos, reviews and credits appended, and runs
+ * {@link MovieDetailsFetcher} against a local stand-in for api.themoviedb.org.
+ */
+public class MovieDetailsFetcherTest {
+
+    private static final int MOVIE_ID = 284054;
+
+    private HttpServer mServer;
+    private byte[] mDetails;
+    private volatile boolean mUnavailable;
+    private final List<String> mQueries = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void startServer() throws IOException {
+        mDetails = readResource("fixtures/movie_details_284054.json");
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/3/movie/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mQueries.add(exchange.getRequestURI().getPath() + "?" + exchange.getRequestURI().getQuery());
+                if (mUnavailable) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, mDetails.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(mDetails);
+                out.close();
+            }
+        });
+        mServer.start();
+
+        // No waiting between the retries
+        FetchPolicy.install(new FetchPolicy(2, 1, 1, 5000));
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+        FetchPolicy.install(null);
+    }
+
+    @Test
+    public void extractDetailsFromStream_keepsTheShownFields() throws IOException {
+        MovieDetails details = MovieDetailsFetcher.extractDetailsFromStream(new ByteArrayInputStream(mDetails));
+
+        assertEquals(MOVIE_ID, details.getId());
+        assertEquals(134, details.getRuntime());
+        assertEquals(Arrays.asList("Action", "Adventure", "Fantasy", "Science Fiction"), details.getGenres());
+        assertEquals(Collections.singletonList("Ryan Coogler"), details.getDirectors());
+
+        // The top billed actors only
+        assertEquals(10, details.getCast().size());
+        assertEquals("Chadwick Boseman", details.getCast().get(0).getName());
+        assertEquals("T'Challa / Black Panther", details.getCast().get(0).getCharacter());
+
+        // The video that isn't on YouTube is left out
+        assertEquals(2, details.getVideos().size());
+        assertEquals("xjDjIWPwcPU", details.getVideos().get(0).getKey());
+        assertEquals("Trailer", details.getVideos().get(0).getType());
+
+        assertEquals(2, details.getReviews().size());
+        assertEquals("Gimly", details.getReviews().get(0).getAuthor());
+    }
+
+    @Test
+    public void fetchDetails_sendsOneRequestPerTtl() {
+        MovieDetailsFetcher fetcher = new MovieDetailsFetcher(baseUrl(), 60000);
+        assertNull(fetcher.getCachedDetails(MOVIE_ID));
+
+        MovieDetails details = fetcher.fetchDetails(MOVIE_ID);
+        assertNotNull(details);
+        assertEquals(1, mQueries.size());
+        assertEquals("/3/movie/" + MOVIE_ID + "?api_key=" + BuildConfig.API_KEY
+                + "&append_to_response=videos,reviews,credits", mQueries.get(0));
+
+        // Within the TTL the details come from memory
+        assertSame(details, fetcher.fetchDetails(MOVIE_ID));
+        assertSame(details, fetcher.getCachedDetails(MOVIE_ID));
+        assertEquals(1, mQueries.size());
+    }
+
+    @Test
+    public void fetchDetails_pastTheTtl_asksAgainAndFallsBackToOldDetails() {
+        MovieDetailsFetcher fetcher = new MovieDetailsFetcher(baseUrl(), 0);
+        MovieDetails details = fetcher.fetchDetails(MOVIE_ID);
+        assertNotNull(details);
+        assertNull(fetcher.getCachedDetails(MOVIE_ID));
+
+        mUnavailable = true;
+        assertSame(details, fetcher.fetchDetails(MOVIE_ID));
+        // The first request, then the two attempts of the second one
+        assertEquals(3, mQueries.size());
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + mServer.getAddress().getPort() + "/3/";
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream in = MovieDetailsFetcherTest.class.getClassLoader().getResourceAsStream(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
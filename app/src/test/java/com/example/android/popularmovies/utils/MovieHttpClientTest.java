@@ -0,0 +1,200 @@
+package com.example.android.popularmovies.utils;
+
+import com.example.android.popularmovies.model.Movie;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link QueryUtils#fetchMovieData} against a local HTTPS stand-in for
+ * api.themoviedb.org and checks that the {@link MovieHttpClient} reuses its socket.
+ */
+public class MovieHttpClientTest {
+
+    private static final char[] KEYSTORE_PASSWORD = "password".toCharArray();
+    private static final int REQUESTS = 3;
+
+    private HttpsServer mServer;
+    private MovieHttpClient mClient;
+    private byte[] mPage;
+
+    private final Set<Integer> mClientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private final Set<String> mAcceptEncodings = Collections.synchronizedSet(new HashSet<String>());
+
+    @Before
+    public void startServer() throws Exception {
+        mPage = readResource("fixtures/movie_popular_page_20.json");
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream in = readResourceStream("localhost.jks");
+        keyStore.load(in, KEYSTORE_PASSWORD);
+        in.close();
+
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, KEYSTORE_PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagers.getTrustManagers(), null);
+
+        mServer = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        mServer.createContext("/3/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mClientPorts.add(exchange.getRemoteAddress().getPort());
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                mAcceptEncodings.add(String.valueOf(acceptEncoding));
+
+                byte[] body = mPage;
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    body = gzip(mPage);
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+
+        mClient = new MovieHttpClient(clientContext.getSocketFactory());
+        MovieHttpClient.install(mClient);
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+        MovieHttpClient.install(null);
+    }
+
+    @Test
+    public void fetchMovieData_reusesTheSameSocket() throws Exception {
+        for (int i = 0; i < REQUESTS; i++) {
+            List<Movie> movies = QueryUtils.fetchMovieData(url(i + 1));
+            assertNotNull(movies);
+            assertEquals(20, movies.size());
+        }
+
+        // Every request arrived on the same client socket
+        assertEquals(mClientPorts.toString(), 1, mClientPorts.size());
+
+        MovieHttpClient.HostStats stats = awaitConnection("localhost");
+        assertEquals(REQUESTS, stats.getRequestCount());
+        assertEquals(1, stats.getConnectionCount());
+        assertEquals(REQUESTS - 1, stats.getReusedCount());
+    }
+
+    @Test
+    public void exportCsv_writesOneRowPerHost() throws Exception {
+        QueryUtils.fetchMovieData(url(1));
+        QueryUtils.fetchMovieData(url(2));
+        awaitConnection("localhost");
+
+        StringWriter csv = new StringWriter();
+        mClient.exportCsv(csv, "test");
+
+        assertEquals("build,host,requests,new_connections,reused_connections,resumed_tls_sessions\n"
+                + "test,localhost,2,1,1,0\n", csv.toString());
+        assertTrue(mClient.getReport(), mClient.getReport().contains("localhost"));
+    }
+
+    @Test
+    public void fetchMovieData_negotiatesGzip() {
+        List<Movie> movies = QueryUtils.fetchMovieData(url(1));
+
+        assertNotNull(movies);
+        assertEquals("Black Panther", movies.get(0).getTitle());
+        assertEquals(Collections.singleton("gzip"), mAcceptEncodings);
+    }
+
+    @Test
+    public void fetchMovieData_timesEveryPhase() {
+        NetworkStats.getInstance().clear();
+        QueryUtils.fetchMovieData(url(1));
+        QueryUtils.fetchMovieData(url(2));
+
+        NetworkStats stats = NetworkStats.getInstance();
+        assertEquals(Collections.singletonList("movie/popular"), stats.getEndpoints());
+        assertEquals(2, stats.getHistogram("movie/popular", RequestTiming.Phase.TOTAL).getCount());
+        assertEquals(2, stats.getHistogram("movie/popular", RequestTiming.Phase.PARSE).getCount());
+        // Only the first request opened a connection
+        assertEquals(1, stats.getHistogram("movie/popular", RequestTiming.Phase.TLS).getCount());
+        assertTrue(stats.getReport(), stats.getReport().contains("KB decompressed"));
+    }
+
+    private String url(int page) {
+        return "https://localhost:" + mServer.getAddress().getPort()
+                + "/3/movie/popular?api_key=test&page=" + page;
+    }
+
+    /**
+     * Handshake listeners may be notified on another thread, wait for the connection to show up.
+     */
+    private MovieHttpClient.HostStats awaitConnection(String host) throws InterruptedException {
+        MovieHttpClient.HostStats stats = mClient.getHostStats(host);
+        assertNotNull(stats);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stats.getConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(stats.getConnectionCount() > 0);
+        return stats;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static InputStream readResourceStream(String name) {
+        return MovieHttpClientTest.class.getClassLoader().getResourceAsStream(name);
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream in = readResourceStream(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
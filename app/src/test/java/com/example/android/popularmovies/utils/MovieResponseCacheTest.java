@@ -0,0 +1,309 @@
+package com.example.android.popularmovies.utils;
+
+import com.example.android.popularmovies.model.Movie;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link MovieResponseCache} on its own, then behind {@link QueryUtils#fetchMovieData}
+ * against a local stand-in for api.themoviedb.org.
+ */
+public class MovieResponseCacheTest {
+
+    private static final String URL = "http://localhost/3/movie/popular?api_key=test&page=1";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private byte[] mPage;
+
+    private HttpServer mServer;
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    /**
+     * What the server answers, 304 Not Modified or 200 with the body
+     */
+    private volatile int mResponseCode = 200;
+    private volatile byte[] mBody;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("responses");
+        mPage = readResource("fixtures/movie_popular_page_1.json");
+        mBody = mPage;
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/3/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.incrementAndGet();
+                exchange.getResponseHeaders().set("ETag", "\"v2\"");
+                if (mResponseCode == 304) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, mBody.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(mBody);
+                out.close();
+            }
+        });
+        mServer.start();
+        // No waiting between the retries
+        FetchPolicy.install(new FetchPolicy(1, 1, 1, 5000));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        MovieResponseCache.install(null);
+        FetchPolicy.install(null);
+    }
+
+    @Test
+    public void normalizeUrl_dropsTheKeyAndSortsTheQuery() {
+        assertEquals("https://api.themoviedb.org/3/movie/Popular?language=en&page=2",
+                MovieResponseCache.normalizeUrl(
+                        "HTTPS://API.TheMovieDB.org/3/movie/Popular?page=2&api_key=secret&language=en#top"));
+        assertEquals("https://api.themoviedb.org/3/movie/popular",
+                MovieResponseCache.normalizeUrl("https://api.themoviedb.org/3/movie/popular?api_key=secret"));
+        assertEquals(MovieResponseCache.normalizeUrl(URL),
+                MovieResponseCache.normalizeUrl(URL.replace("api_key=test", "api_key=rotated")));
+    }
+
+    @Test
+    public void get_evictsTheLeastRecentlyUsedEntry() throws IOException {
+        // Room for two bodies
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 2 * mPage.length);
+        store(cache, url(1), mPage, null, "max-age=60");
+        store(cache, url(2), mPage, null, "max-age=60");
+        assertNotNull(cache.get(url(1)));
+
+        store(cache, url(3), mPage, null, "max-age=60");
+
+        assertNotNull(cache.get(url(1)));
+        assertNull(cache.get(url(2)));
+        assertNotNull(cache.get(url(3)));
+        assertEquals(2 * mPage.length, cache.size());
+        // Only the files of the two entries left
+        assertEquals(4, mDirectory.list().length);
+    }
+
+    @Test
+    public void isFresh_followsTheMaxAge() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        store(cache, url(1), mPage, null, "public, max-age=60");
+        store(cache, url(2), mPage, null, "no-cache");
+        store(cache, url(3), mPage, null, null);
+
+        assertTrue(cache.get(url(1)).isFresh());
+        assertFalse(cache.get(url(2)).isFresh());
+        assertFalse(cache.get(url(3)).isFresh());
+        assertEquals(60, MovieResponseCache.parseMaxAge("max-age=60, must-revalidate"));
+        assertEquals(0, MovieResponseCache.parseMaxAge("no-cache, max-age=60"));
+    }
+
+    @Test
+    public void update_refreshesAStaleEntry() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        store(cache, URL, mPage, "\"v1\"", "max-age=0");
+        MovieResponseCache.Entry stale = cache.get(URL);
+        assertFalse(stale.isFresh());
+
+        MovieResponseCache.Entry updated = cache.update(stale, "\"v2\"", null, "max-age=60");
+
+        assertTrue(updated.isFresh());
+        assertEquals("\"v2\"", updated.getEtag());
+        assertEquals(1, cache.getNotModifiedCount());
+        // Persisted for the next launch
+        MovieResponseCache reopened = new MovieResponseCache(mDirectory, 1 << 20);
+        assertTrue(reopened.get(URL).isFresh());
+        assertEquals("\"v2\"", reopened.get(URL).getEtag());
+    }
+
+    @Test
+    public void get_withTheBodyRemoved_isAMiss() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        store(cache, url(1), mPage, null, "max-age=60");
+        store(cache, url(2), mPage, null, "max-age=60");
+        deleteBodies();
+
+        assertNull(cache.get(url(1)));
+        assertEquals(1, cache.getMissCount());
+        // Dropped from the index at the next launch too
+        MovieResponseCache reopened = new MovieResponseCache(mDirectory, 1 << 20);
+        assertEquals(0, reopened.size());
+        assertNull(reopened.get(url(2)));
+        assertEquals(0, mDirectory.list().length);
+    }
+
+    @Test
+    public void entries_withABodyWithoutMeta_deletesTheBody() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        store(cache, url(1), mPage, null, "max-age=60");
+        store(cache, url(2), mPage, null, "max-age=60");
+        // As if the app died between the body and the meta renames
+        assertTrue(new File(mDirectory, MovieResponseCache.keyFor(url(2)) + ".meta").delete());
+
+        MovieResponseCache reopened = new MovieResponseCache(mDirectory, 1 << 20);
+
+        assertEquals(mPage.length, reopened.size());
+        assertNull(reopened.peek(url(2)));
+        assertEquals(2, mDirectory.list().length);
+    }
+
+    @Test
+    public void edit_sameUrlTwiceAtOnce_keepsTheLastCommit() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        byte[] first = "{\"results\":[]}".getBytes(Charset.forName("UTF-8"));
+        MovieResponseCache.Editor firstEditor = cache.edit(URL);
+        MovieResponseCache.Editor secondEditor = cache.edit(URL);
+        InputStream firstTee = firstEditor.tee(new ByteArrayInputStream(first));
+        InputStream secondTee = secondEditor.tee(new ByteArrayInputStream(mPage));
+
+        firstEditor.commit(firstTee, "\"v1\"", null, "max-age=60");
+        secondEditor.commit(secondTee, "\"v2\"", null, "max-age=60");
+
+        MovieResponseCache.Entry entry = cache.get(URL);
+        assertEquals("\"v2\"", entry.getEtag());
+        assertEquals(mPage.length, readBody(cache, entry).length);
+    }
+
+    @Test
+    public void fetchMovieData_withMalformedBody_isNotCached() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        MovieResponseCache.install(cache);
+        mBody = "{\"page\":1,\"results\":{\"id\":1}}".getBytes(Charset.forName("UTF-8"));
+
+        assertNull(QueryUtils.fetchMovieData(serverUrl()));
+
+        assertNull(cache.peek(serverUrl()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void fetchMovieData_whenTheCacheCannotBeWritten_returnsTheMovies() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        MovieResponseCache.install(cache);
+        // A directory in the way of the body makes the commit fail
+        File body = new File(mDirectory, MovieResponseCache.keyFor(serverUrl()) + ".body");
+        assertTrue(new File(body, "in-the-way").mkdirs());
+
+        List<Movie> movies = QueryUtils.fetchMovieData(serverUrl());
+
+        assertNotNull(movies);
+        assertFalse(movies.isEmpty());
+        assertNull(cache.peek(serverUrl()));
+        assertEquals(1, mDirectory.list().length);
+    }
+
+    @Test
+    public void fetchStaleMovieData_thenFetch_countsOneStaleHit() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        MovieResponseCache.install(cache);
+        store(cache, serverUrl(), mPage, "\"v1\"", "max-age=0");
+        mResponseCode = 304;
+
+        List<Movie> stale = QueryUtils.fetchStaleMovieData(serverUrl());
+        List<Movie> movies = QueryUtils.fetchMovieData(serverUrl());
+
+        assertNotNull(stale);
+        assertEquals(stale.size(), movies.size());
+        assertEquals(1, cache.getStaleHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(1, cache.getRevalidateCount());
+        assertEquals(1, cache.getNotModifiedCount());
+    }
+
+    @Test
+    public void fetchMovieData_withoutValidators_isNotARevalidation() throws IOException {
+        MovieResponseCache cache = new MovieResponseCache(mDirectory, 1 << 20);
+        MovieResponseCache.install(cache);
+        store(cache, serverUrl(), mPage, null, "max-age=0");
+
+        assertNotNull(QueryUtils.fetchMovieData(serverUrl()));
+
+        assertEquals(1, mRequests.get());
+        assertEquals(0, cache.getRevalidateCount());
+        // The new response replaced the entry
+        assertEquals("\"v2\"", cache.peek(serverUrl()).getEtag());
+    }
+
+    private static void store(MovieResponseCache cache, String url, byte[] body, String etag,
+                              String cacheControl) throws IOException {
+        MovieResponseCache.Editor editor = cache.edit(url);
+        editor.commit(editor.tee(new ByteArrayInputStream(body)), etag, null, cacheControl);
+    }
+
+    private void deleteBodies() {
+        for (File file : mDirectory.listFiles()) {
+            if (file.getName().endsWith(".body")) {
+                assertTrue(file.delete());
+            }
+        }
+    }
+
+    private static byte[] readBody(MovieResponseCache cache, MovieResponseCache.Entry entry)
+            throws IOException {
+        InputStream in = cache.openBody(entry);
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String url(int page) {
+        return URL.replace("page=1", "page=" + page);
+    }
+
+    private String serverUrl() {
+        return URL.replace("localhost", "localhost:" + mServer.getAddress().getPort());
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream in = MovieResponseCacheTest.class.getClassLoader().getResourceAsStream(name);
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
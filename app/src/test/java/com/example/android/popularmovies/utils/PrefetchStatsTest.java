@@ -0,0 +1,46 @@
+package com.example.android.popularmovies.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the hit rate computed by {@link PrefetchStats}.
+ */
+public class PrefetchStatsTest {
+
+    private final PrefetchStats mStats = PrefetchStats.getInstance();
+
+    @Before
+    public void clear() {
+        mStats.clear();
+    }
+
+    @Test
+    public void getHitRate_nothingBound_isZero() {
+        mStats.recordQueued();
+        mStats.recordCompleted();
+
+        assertEquals(0, mStats.getHitRate(), 0);
+    }
+
+    @Test
+    public void getHitRate_countsLateBindsAsNotHits() {
+        mStats.recordHit();
+        mStats.recordHit();
+        mStats.recordHit();
+        mStats.recordLate();
+        mStats.recordMiss();
+
+        assertEquals(0.6, mStats.getHitRate(), 0.001);
+        assertEquals("poster prefetch\n"
+                + "  hit rate 0.60: 3 hits, 1 late, 1 misses\n"
+                + "  0 queued, 0 cancelled, 0 completed, 0 failed\n", mStats.getReport());
+
+        mStats.clear();
+        assertEquals(0, mStats.getHitCount());
+        assertEquals(0, mStats.getLateCount());
+        assertEquals(0, mStats.getMissCount());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.popularmovies.utils;
+
+import com.example.android.popularmovies.model.Movie;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the streaming {@link QueryUtils#extractMoviesFromStream} path returns the
+ * same movies as the String + org.json path ({@link QueryUtils#readFromStream} followed by
+ * {@link QueryUtils#extractMovieFromJson}) on recorded TMDB responses. Both paths are
+ * timed by the MovieParseBenchmark of the benchmark module.
+ */
+public class QueryUtilsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static byte[] sPage1;
+    private static byte[] sPage20;
+    private static byte[] sPage1000;
+
+    @BeforeClass
+    public static void loadFixtures() throws IOException {
+        sPage1 = readFixture("fixtures/movie_popular_page_1.json");
+        sPage20 = readFixture("fixtures/movie_popular_page_20.json");
+        sPage1000 = repeatResults(new String(sPage20, UTF_8), 50).getBytes(UTF_8);
+    }
+
+    @Test
+    public void streamingParser_returnsSameMoviesAsJsonParser() throws IOException {
+        assertSameMovies(parseWithJsonObject(sPage1), parseWithStream(sPage1));
+        assertEquals(1, parseWithStream(sPage1).size());
+        assertSameMovies(parseWithJsonObject(sPage20), parseWithStream(sPage20));
+        assertEquals(20, parseWithStream(sPage20).size());
+        assertEquals(1000, parseWithStream(sPage1000).size());
+    }
+
+    private static void assertSameMovies(List<Movie> expected, List<Movie> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getDate(), actual.get(i).getDate());
+            assertEquals(expected.get(i).getImage(), actual.get(i).getImage());
+            assertEquals(expected.get(i).getVote(), actual.get(i).getVote(), 0);
+            assertEquals(expected.get(i).getPlot(), actual.get(i).getPlot());
+        }
+    }
+
+    private static List<Movie> parseWithJsonObject(byte[] fixture) throws IOException {
+        return QueryUtils.extractMovieFromJson(
+                QueryUtils.readFromStream(new ByteArrayInputStream(fixture)));
+    }
+
+    private static List<Movie> parseWithStream(byte[] fixture) throws IOException {
+        return QueryUtils.extractMoviesFromStream(new ByteArrayInputStream(fixture));
+    }
+
+    private static byte[] readFixture(String name) throws IOException {
+        InputStream in = QueryUtilsTest.class.getClassLoader().getResourceAsStream(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds a bigger response by repeating the "results" array of a recorded page.
+     */
+    private static String repeatResults(String page, int times) {
+        int start = page.indexOf('[', page.indexOf("\"results\"")) + 1;
+        int end = page.lastIndexOf(']');
+        String results = page.substring(start, end);
+        StringBuilder builder = new StringBuilder(page.substring(0, start));
+        for (int i = 0; i < times; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(results);
+        }
+        return builder.append(page.substring(end)).toString();
+    }
+}
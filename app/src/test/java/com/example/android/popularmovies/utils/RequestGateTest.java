@@ -0,0 +1,156 @@
+package com.example.android.popularmovies.utils;
+
+import com.example.android.popularmovies.utils.RequestGate.Priority;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link RequestGate} lets the screen's requests through first, drops the
+ * prefetches that wait too long, and holds every request back after a Retry-After.
+ */
+public class RequestGateTest {
+
+    private static final long FOREVER = Long.MAX_VALUE;
+
+    @Test
+    public void tryAcquire_givesTheBurstAtOnce() {
+        RequestGate gate = new RequestGate(0.01, 5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(gate.tryAcquire(Priority.VISIBLE));
+        }
+        assertFalse(gate.tryAcquire(Priority.VISIBLE));
+        assertEquals(5, gate.getGrantedCount(Priority.VISIBLE));
+    }
+
+    @Test
+    public void tryAcquire_keepsTokensForTheScreen() {
+        RequestGate gate = new RequestGate(0.01, 10);
+        // Half of the bucket is kept from the sync, a quarter from the prefetches and a
+        // tenth from the detail screen
+        assertEquals(5, drain(gate, Priority.SYNC));
+        assertEquals(2, drain(gate, Priority.PREFETCH));
+        assertEquals(2, drain(gate, Priority.DETAIL));
+        assertEquals(1, drain(gate, Priority.VISIBLE));
+    }
+
+    /**
+     * Takes every token the given priority can get, and returns how many.
+     */
+    private static int drain(RequestGate gate, Priority priority) {
+        int count = 0;
+        while (gate.tryAcquire(priority)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void acquire_servesTheHigherPrioritiesFirst() throws Exception {
+        final RequestGate gate = new RequestGate(20, 10, new long[]{FOREVER, FOREVER, FOREVER, FOREVER});
+        while (gate.tryAcquire(Priority.VISIBLE)) {
+            // Empty the bucket
+        }
+
+        final List<Priority> granted = Collections.synchronizedList(new ArrayList<Priority>());
+        List<Thread> threads = new ArrayList<>();
+        // The least important ones arrive first
+        for (final Priority priority : new Priority[]{Priority.SYNC, Priority.PREFETCH,
+                Priority.DETAIL, Priority.VISIBLE}) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (gate.acquire(priority)) {
+                            granted.add(priority);
+                        }
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            while (gate.getQueueDepth(priority) == 0 && granted.isEmpty()) {
+                Thread.sleep(1);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(Arrays.asList(Priority.VISIBLE, Priority.DETAIL, Priority.PREFETCH, Priority.SYNC),
+                granted);
+        assertEquals(1, gate.getMaxQueueDepth(Priority.SYNC));
+        assertEquals(0, gate.getQueueDepth(Priority.SYNC));
+    }
+
+    @Test
+    public void acquire_dropsPrefetchWaitingTooLong() throws IOException {
+        RequestGate gate = new RequestGate(0.01, 1, new long[]{FOREVER, FOREVER, 100, 100});
+        assertTrue(gate.tryAcquire(Priority.VISIBLE));
+
+        long start = System.nanoTime();
+        assertFalse(gate.acquire(Priority.PREFETCH));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Waited " + elapsedMillis + " ms", elapsedMillis >= 90 && elapsedMillis < 2000);
+        assertEquals(1, gate.getDroppedCount(Priority.PREFETCH));
+        assertEquals(0, gate.getQueueDepth(Priority.PREFETCH));
+    }
+
+    @Test
+    public void onRetryAfter_holdsEveryRequestBack() throws IOException {
+        RequestGate gate = new RequestGate(1000, 10);
+        gate.onRetryAfter(200);
+
+        assertFalse(gate.tryAcquire(Priority.VISIBLE));
+        // The background requests aren't even queued
+        assertFalse(gate.acquire(Priority.SYNC));
+        assertEquals(1, gate.getDroppedCount(Priority.SYNC));
+
+        long start = System.nanoTime();
+        assertTrue(gate.acquire(Priority.VISIBLE));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Waited " + elapsedMillis + " ms", elapsedMillis >= 150);
+        assertEquals(1, gate.getRetryAfterCount());
+    }
+
+    @Test
+    public void parseRetryAfter_readsSecondsAndDates() {
+        long now = 1500000000000L;
+        assertEquals(120000, RequestGate.parseRetryAfter("120", now));
+        assertEquals(0, RequestGate.parseRetryAfter(" 0 ", now));
+        // Fri, 14 Jul 2017 02:40:00 GMT is 1500000000 seconds
+        assertEquals(30000, RequestGate.parseRetryAfter("Fri, 14 Jul 2017 02:40:30 GMT", now));
+        assertEquals(0, RequestGate.parseRetryAfter("Fri, 14 Jul 2017 02:39:00 GMT", now));
+        assertEquals(-1, RequestGate.parseRetryAfter(null, now));
+        assertEquals(-1, RequestGate.parseRetryAfter("-5", now));
+        assertEquals(-1, RequestGate.parseRetryAfter("soon", now));
+    }
+
+    @Test
+    public void exportCsv_writesOneRowPerPriority() throws IOException {
+        RequestGate gate = new RequestGate(10, 20);
+        gate.tryAcquire(Priority.DETAIL);
+
+        StringWriter writer = new StringWriter();
+        gate.exportCsv(writer, "test");
+        String[] lines = writer.toString().split("\n");
+
+        assertEquals(1 + Priority.values().length, lines.length);
+        assertTrue(lines[0].startsWith("build,priority,queue_depth,"));
+        assertTrue(lines[2], lines[2].startsWith("test,detail,0,0,1,0,0,"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.android.popularmovies.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link SingleFlight} runs identical concurrent calls once.
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    public void concurrentCalls_withSameKey_shareOneCall() throws Exception {
+        final SingleFlight<List<String>> singleFlight = new SingleFlight<>();
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> result = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    return singleFlight.execute("movie/popular?page=1", new SingleFlight.Call<List<String>>() {
+                        @Override
+                        public List<String> call() {
+                            runs.incrementAndGet();
+                            await(release);
+                            return result;
+                        }
+                    });
+                }
+            }));
+        }
+
+        // Wait until every caller either runs the call or waits for it
+        long deadline = System.currentTimeMillis() + 5000;
+        while (singleFlight.getCallCount() + singleFlight.getSharedCount() < CALLERS) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Callers didn't start: " + singleFlight);
+            }
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for (Future<List<String>> future : futures) {
+            assertSame(result, future.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, runs.get());
+        assertEquals(1, singleFlight.getCallCount());
+        assertEquals(CALLERS - 1, singleFlight.getSharedCount());
+    }
+
+    @Test
+    public void sequentialCalls_areAllRun() {
+        SingleFlight<Integer> singleFlight = new SingleFlight<>();
+        final AtomicInteger runs = new AtomicInteger();
+        SingleFlight.Call<Integer> call = new SingleFlight.Call<Integer>() {
+            @Override
+            public Integer call() {
+                return runs.incrementAndGet();
+            }
+        };
+
+        assertEquals(1, (int) singleFlight.execute("key", call));
+        assertEquals(2, (int) singleFlight.execute("key", call));
+        assertEquals(3, (int) singleFlight.execute("other", call));
+        assertEquals(3, singleFlight.getCallCount());
+        assertEquals(0, singleFlight.getSharedCount());
+    }
+
+    @Test
+    public void failedCall_isRunAgainByTheNextCaller() {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        try {
+            singleFlight.execute("key", new SingleFlight.Call<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException("boom");
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            // The failure is thrown to the caller
+        }
+
+        assertEquals("ok", singleFlight.execute("key", new SingleFlight.Call<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        }));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.popularmovies.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Loads the recorded TMDB responses shared with the unit tests of the app.
+ */
+final class Fixtures {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Fixtures} object.
+     */
+    private Fixtures() {
+    }
+
+    /**
+     * Returns a recorded page of popular movies with the given number of results:
+     * 1 and 20 are recorded pages, bigger sizes repeat the results of the 20 results page.
+     */
+    static byte[] moviePage(int results) throws IOException {
+        if (results == 1) {
+            return read("fixtures/movie_popular_page_1.json");
+        }
+        byte[] page = read("fixtures/movie_popular_page_20.json");
+        if (results == 20) {
+            return page;
+        }
+        if (results % 20 != 0) {
+            throw new IllegalArgumentException("No fixture with " + results + " results");
+        }
+        return repeatResults(new String(page, UTF_8), results / 20).getBytes(UTF_8);
+    }
+
+    static byte[] read(String name) throws IOException {
+        InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Builds a bigger response by repeating the "results" array of a recorded page.
+     */
+    private static String repeatResults(String page, int times) {
+        int start = page.indexOf('[', page.indexOf("\"results\"")) + 1;
+        int end = page.lastIndexOf(']');
+        String results = page.substring(start, end);
+        StringBuilder builder = new StringBuilder(page.substring(0, start));
+        for (int i = 0; i < times; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(results);
+        }
+        return builder.append(page.substring(end)).toString();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.popularmovies.benchmark;
+
+import com.example.android.popularmovies.model.Movie;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Heap retained by a list of {@link Movie} objects, compared with {@link LegacyMovie}, a copy
+ * of the class before it was made compact. The retained bytes per movie are reported as the
+ * "retainedBytesPerMovie" secondary result, the time is mostly the forced collections.
+ * <p>
+ * Every movie is built from freshly allocated strings, as the JSON parser does, and every
+ * list is loaded twice, like the stored movies and the network refresh of the same list.
+ */
+@State(Scope.Benchmark)
+public class MovieMemoryBenchmark {
+
+    private static final String TITLE = "Black Panther";
+    private static final String PLOT = "King T'Challa returns home from America to the reclusive, "
+            + "technologically advanced African nation of Wakanda to serve as his country's new leader.";
+
+    @Param({"10000", "100000"})
+    public int movies;
+
+    @Benchmark
+    public List<Object> compact(Footprint footprint) {
+        return load(footprint, true);
+    }
+
+    @Benchmark
+    public List<Object> legacy(Footprint footprint) {
+        return load(footprint, false);
+    }
+
+    /**
+     * The heap retained by the last list loaded
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long retainedBytesPerMovie;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytesPerMovie = 0;
+        }
+    }
+
+    private List<Object> load(Footprint footprint, boolean compact) {
+        long before = usedHeap();
+        List<Object> list = new ArrayList<>(2 * movies);
+        for (int load = 0; load < 2; load++) {
+            for (int i = 0; i < movies; i++) {
+                if (compact) {
+                    list.add(new Movie(i, copy(TITLE), copy(date(i)), posterPath(i), vote(i), PLOT));
+                } else {
+                    list.add(new LegacyMovie(copy(TITLE), copy(date(i)), posterPath(i), vote(i), PLOT));
+                }
+            }
+        }
+        footprint.retainedBytesPerMovie = (usedHeap() - before) / movies;
+        return list;
+    }
+
+    /**
+     * Returns the used heap after the unreachable objects have been collected.
+     */
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    /**
+     * Returns a new instance of the given string, as the parser would.
+     */
+    private static String copy(String string) {
+        return new String(string.toCharArray());
+    }
+
+    private static String posterPath(int i) {
+        return String.format(Locale.US, "/%027d.jpg", i);
+    }
+
+    private static String date(int i) {
+        return String.format(Locale.US, "%04d-%02d-%02d", 1950 + i % 70, 1 + i % 12, 1 + i % 28);
+    }
+
+    private static double vote(int i) {
+        return (i % 100) / 10.0;
+    }
+
+    /**
+     * Copy of {@link Movie} as it was before: a boxed vote and the raw date String.
+     */
+    private static class LegacyMovie {
+        String mTitle;
+        String mDate;
+        String mImage;
+        Double mVote;
+        String mPlot;
+
+        LegacyMovie(String title, String date, String image, Double vote, String plot) {
+            mTitle = title;
+            mDate = date;
+            mImage = image;
+            mVote = vote;
+            mPlot = plot;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.android.popularmovies.benchmark;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.model.Movie$$Parcelable;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.parceler.Parcels;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Parceler wrapping of a {@link Movie}, as done when a movie is passed to the detail screen,
+ * and a full round trip through a {@link Parcel}.
+ * <p>
+ * The benchmark module runs on the JVM, with a stand-in {@link Parcel} that copies
+ * the same number of bytes as the native one.
+ */
+@State(Scope.Benchmark)
+public class MovieParcelBenchmark {
+
+    private List<Movie> mMovies;
+    private Parcel mParcel;
+    private int mIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        mMovies = QueryUtils.extractMoviesFromStream(new ByteArrayInputStream(Fixtures.moviePage(20)));
+        mParcel = Parcel.obtain();
+    }
+
+    @Benchmark
+    public Parcelable wrap() {
+        return Parcels.wrap(nextMovie());
+    }
+
+    @Benchmark
+    public Movie writeAndRead() {
+        Parcelable parcelable = Parcels.wrap(nextMovie());
+        mParcel.setDataPosition(0);
+        parcelable.writeToParcel(mParcel, 0);
+        // Read it back the way the framework does, through the generated CREATOR
+        mParcel.setDataPosition(0);
+        return Parcels.unwrap(Movie$$Parcelable.CREATOR.createFromParcel(mParcel));
+    }
+
+    private Movie nextMovie() {
+        mIndex = (mIndex + 1) % mMovies.size();
+        return mMovies.get(mIndex);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.android.popularmovies.benchmark;
+
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Parsing of a TMDB page of results, from the JSON String with org.json
+ * ({@link QueryUtils#extractMovieFromJson}) and from the stream with Gson's JsonReader
+ * ({@link QueryUtils#extractMoviesFromStream}).
+ */
+@State(Scope.Benchmark)
+public class MovieParseBenchmark {
+
+    @Param({"1", "20", "1000"})
+    public int results;
+
+    private byte[] mPage;
+    private String mPageJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPage = Fixtures.moviePage(results);
+        mPageJson = new String(mPage, Fixtures.UTF_8);
+    }
+
+    @Benchmark
+    public List<Movie> extractMovieFromJson() {
+        return QueryUtils.extractMovieFromJson(mPageJson);
+    }
+
+    @Benchmark
+    public List<Movie> extractMoviesFromStream() throws IOException {
+        return QueryUtils.extractMoviesFromStream(new ByteArrayInputStream(mPage));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.android.popularmovies.benchmark;
+
+import com.example.android.popularmovies.utils.MovieResponseCache;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lookups and writes of the on-disk {@link MovieResponseCache}, with recorded pages of 20 results.
+ */
+@State(Scope.Benchmark)
+public class MovieResponseCacheBenchmark {
+
+    private static final int PAGES = 50;
+    private static final long MAX_SIZE = 4 * 1024 * 1024;
+
+    private File mDirectory;
+    private MovieResponseCache mCache;
+    private byte[] mPage;
+    private String[] mUrls;
+    private int mIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("movie-responses", "");
+        if (!mDirectory.delete() || !mDirectory.mkdir()) {
+            throw new IOException("Can't create " + mDirectory);
+        }
+        mCache = new MovieResponseCache(mDirectory, MAX_SIZE);
+        mPage = Fixtures.moviePage(20);
+        mUrls = new String[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            mUrls[i] = QueryUtils.buildMoviesUrl(QueryUtils.MOVIE_POPULAR_ENDPOINT, i + 1);
+            store(mUrls[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public MovieResponseCache.Entry get() {
+        return mCache.get(nextUrl());
+    }
+
+    @Benchmark
+    public void store() throws IOException {
+        store(nextUrl());
+    }
+
+    private void store(String url) throws IOException {
+        MovieResponseCache.Editor editor = mCache.edit(url);
+        InputStream in = editor.tee(new ByteArrayInputStream(mPage));
+        editor.commit(in, "\"etag\"", null, "max-age=3600");
+    }
+
+    private String nextUrl() {
+        mIndex = (mIndex + 1) % PAGES;
+        return mUrls[mIndex];
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.popularmovies.benchmark;
+
+import com.example.android.popularmovies.data.MovieSearchIndex;
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of a {@link MovieSearchIndex} a page at a time, and queries of an index of
+ * 50k movies: exact terms, several terms and prefixes being typed.
+ * <p>
+ * The movies repeat the titles and plots of a recorded page, each with a few words drawn
+ * from a generated vocabulary, so that the dictionary has a long tail of rare terms.
+ */
+@State(Scope.Benchmark)
+public class MovieSearchBenchmark {
+
+    private static final int VOCABULARY = 20000;
+
+    @Param({"1000", "50000"})
+    public int movies;
+
+    private List<Movie> mMovies;
+    private MovieSearchIndex mIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Movie> page = QueryUtils.extractMoviesFromStream(new ByteArrayInputStream(Fixtures.moviePage(20)));
+        Random random = new Random(42);
+        String[] vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            vocabulary[i] = word(random);
+        }
+        mMovies = new ArrayList<>(movies);
+        for (int i = 0; i < movies; i++) {
+            Movie movie = page.get(i % page.size());
+            mMovies.add(new Movie(i, movie.getTitle() + " " + pick(vocabulary, random),
+                    movie.getReleaseDay(), movie.getImage(), movie.getVote(),
+                    movie.getPlot() + " " + pick(vocabulary, random) + " " + pick(vocabulary, random)));
+        }
+        mIndex = build();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MovieSearchIndex build() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        for (int i = 0; i < mMovies.size(); i += QueryUtils.RESULTS_PER_PAGE) {
+            index.addAll(mMovies.subList(i, Math.min(mMovies.size(), i + QueryUtils.RESULTS_PER_PAGE)));
+        }
+        return index;
+    }
+
+    @Benchmark
+    public List<Movie> search(Query query) {
+        return mIndex.search(query.query);
+    }
+
+    /**
+     * The queries, in a state of their own so that the index isn't built again for each one
+     */
+    @State(Scope.Benchmark)
+    public static class Query {
+        @Param({"runner", "maze runner", "wa", "blade run"})
+        public String query;
+    }
+
+    /**
+     * Picks a word, the first words of the vocabulary much more often than the last ones.
+     */
+    private static String pick(String[] vocabulary, Random random) {
+        double uniform = random.nextDouble();
+        return vocabulary[(int) (uniform * uniform * uniform * vocabulary.length)];
+    }
+
+    private static String word(Random random) {
+        char[] letters = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.popularmovies.benchmark;
+
+import com.example.android.popularmovies.data.MovieSnapshot;
+import com.example.android.popularmovies.model.Movie;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Showing a list kept from the last launch: parsing its JSON response again, with the
+ * streaming parser and with the JSON tree, against opening a {@link MovieSnapshot} of it.
+ * <p>
+ * The snapshot is measured when opened and its first screen bound, which is what the grid
+ * does at launch, and when every movie is decoded. The JSON is parsed from memory and the
+ * snapshot mapped from a file in the page cache, which is how both are found at launch.
+ */
+@State(Scope.Benchmark)
+public class MovieSnapshotBenchmark {
+
+    /**
+     * Movies on the first screen of the grid
+     */
+    private static final int FIRST_SCREEN = 6;
+
+    @Param({"20", "1000", "100000"})
+    public int movies;
+
+    private byte[] mJson;
+    private String mJsonString;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJson = Fixtures.moviePage(movies);
+        mJsonString = new String(mJson, Fixtures.UTF_8);
+        List<Movie> list = QueryUtils.extractMoviesFromStream(new ByteArrayInputStream(mJson));
+        mFile = File.createTempFile("snapshot", null);
+        MovieSnapshot.write(mFile, list, list.size());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public List<Movie> parseJsonStream() throws IOException {
+        return QueryUtils.extractMoviesFromStream(new ByteArrayInputStream(mJson));
+    }
+
+    @Benchmark
+    public List<Movie> parseJsonTree() {
+        return QueryUtils.extractMovieFromJson(mJsonString);
+    }
+
+    @Benchmark
+    public void openSnapshotFirstScreen(Blackhole blackhole) {
+        MovieSnapshot snapshot = MovieSnapshot.open(mFile);
+        int rows = Math.min(FIRST_SCREEN, snapshot.size());
+        for (int i = 0; i < rows; i++) {
+            blackhole.consume(snapshot.get(i));
+        }
+    }
+
+    @Benchmark
+    public void openSnapshotAll(Blackhole blackhole) {
+        MovieSnapshot snapshot = MovieSnapshot.open(mFile);
+        for (int i = 0; i < snapshot.size(); i++) {
+            blackhole.consume(snapshot.get(i));
+        }
+    }
+}
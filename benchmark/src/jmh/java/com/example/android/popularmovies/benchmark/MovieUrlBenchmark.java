@@ -0,0 +1,35 @@
+package com.example.android.popularmovies.benchmark;
+
+import com.example.android.popularmovies.utils.MovieResponseCache;
+import com.example.android.popularmovies.utils.QueryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building the URL of a page of movies, as done by the loader and the page source for
+ * every request, and the normalization that turns it into a response cache key.
+ */
+@State(Scope.Benchmark)
+public class MovieUrlBenchmark {
+
+    @Param({QueryUtils.MOVIE_POPULAR_ENDPOINT, QueryUtils.MOVIE_TOP_RATED_ENDPOINT})
+    public String endpoint;
+
+    private int mPage;
+
+    @Benchmark
+    public String buildMoviesUrl() {
+        // Walk the pages so that the page number isn't a constant
+        mPage = mPage % 50 + 1;
+        return QueryUtils.buildMoviesUrl(endpoint, mPage);
+    }
+
+    @Benchmark
+    public String normalizeUrl() {
+        mPage = mPage % 50 + 1;
+        return MovieResponseCache.normalizeUrl(QueryUtils.buildMoviesUrl(endpoint, mPage));
+    }
+}
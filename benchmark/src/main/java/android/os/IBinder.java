@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * Empty JVM stand-in, Parceler registers a converter for it when it starts.
+ */
+public interface IBinder {
+}
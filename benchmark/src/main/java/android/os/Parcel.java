@@ -0,0 +1,123 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android Parcel, with the methods used by the Parceler wrappers.
+ * <p>
+ * Values are written to a growable byte array with the same layout as the native Parcel:
+ * 4 byte ints, 8 byte doubles, and strings as their length followed by their UTF-16 chars,
+ * padded to 4 bytes. It is not a faithful copy of the native code, but it copies the same
+ * number of bytes, so the relative cost of writing a movie is preserved.
+ */
+public final class Parcel {
+
+    private byte[] mData = new byte[256];
+    private int mDataSize;
+    private int mDataPosition;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        mDataSize = 0;
+        mDataPosition = 0;
+    }
+
+    public int dataSize() {
+        return mDataSize;
+    }
+
+    public int dataPosition() {
+        return mDataPosition;
+    }
+
+    public void setDataPosition(int pos) {
+        mDataPosition = pos;
+    }
+
+    public void writeInt(int val) {
+        ensureCapacity(4);
+        mData[mDataPosition++] = (byte) val;
+        mData[mDataPosition++] = (byte) (val >>> 8);
+        mData[mDataPosition++] = (byte) (val >>> 16);
+        mData[mDataPosition++] = (byte) (val >>> 24);
+        grow();
+    }
+
+    public int readInt() {
+        return (mData[mDataPosition++] & 0xff)
+                | (mData[mDataPosition++] & 0xff) << 8
+                | (mData[mDataPosition++] & 0xff) << 16
+                | (mData[mDataPosition++] & 0xff) << 24;
+    }
+
+    public void writeLong(long val) {
+        writeInt((int) val);
+        writeInt((int) (val >>> 32));
+    }
+
+    public long readLong() {
+        long low = readInt() & 0xffffffffL;
+        long high = readInt() & 0xffffffffL;
+        return low | high << 32;
+    }
+
+    public void writeDouble(double val) {
+        writeLong(Double.doubleToRawLongBits(val));
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int length = val.length();
+        writeInt(length);
+        // Chars and a null terminator, padded to 4 bytes
+        int size = ((length + 1) * 2 + 3) & ~3;
+        ensureCapacity(size);
+        for (int i = 0; i < length; i++) {
+            char c = val.charAt(i);
+            mData[mDataPosition + 2 * i] = (byte) c;
+            mData[mDataPosition + 2 * i + 1] = (byte) (c >>> 8);
+        }
+        for (int i = length * 2; i < size; i++) {
+            mData[mDataPosition + i] = 0;
+        }
+        mDataPosition += size;
+        grow();
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((mData[mDataPosition + 2 * i] & 0xff)
+                    | (mData[mDataPosition + 2 * i + 1] & 0xff) << 8);
+        }
+        mDataPosition += ((length + 1) * 2 + 3) & ~3;
+        return new String(chars);
+    }
+
+    private void ensureCapacity(int size) {
+        if (mDataPosition + size > mData.length) {
+            byte[] data = new byte[Math.max(mData.length * 2, mDataPosition + size)];
+            System.arraycopy(mData, 0, data, 0, mDataSize);
+            mData = data;
+        }
+    }
+
+    private void grow() {
+        mDataSize = Math.max(mDataSize, mDataPosition);
+    }
+}
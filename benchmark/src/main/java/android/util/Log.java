@@ -0,0 +1,41 @@
+package android.util;
+
+/**
+ * JVM stand-in for the Android log, so that the app sources can run in the benchmarks.
+ * Messages are dropped, errors are printed to the standard error.
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        System.err.println(tag + ": " + msg);
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        System.err.println(tag + ": " + msg + ": " + tr);
+        return 0;
+    }
+}
@@ -0,0 +1,7 @@
+package android.util;
+
+/**
+ * Empty JVM stand-in, Parceler registers a converter for it when it starts.
+ */
+public class SparseBooleanArray {
+}
@@ -0,0 +1,14 @@
+package com.example.android.popularmovies;
+
+/**
+ * Stand-in for the BuildConfig generated for the app. The benchmarks never reach the server.
+ */
+public final class BuildConfig {
+
+    public static final boolean DEBUG = false;
+    public static final String APPLICATION_ID = "com.example.android.popularmovies";
+    public static final String API_KEY = "benchmark";
+
+    private BuildConfig() {
+    }
+}